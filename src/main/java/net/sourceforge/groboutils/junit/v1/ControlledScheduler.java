@@ -0,0 +1,243 @@
+/*
+ * @(#)ControlledScheduler.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Lets exactly one runner of a run proceed at a time.  A runner gives up
+ * its turn at each <tt>TestRunnable.yieldPoint()</tt> call and when it
+ * ends; the scheduler then picks which waiting runner goes next.  Each
+ * pick is recorded, so that the schedule can be replayed.
+ * <p>
+ * Picks first follow the given prefix of runner indexes.  After that,
+ * they are random when a random source is given, or otherwise let the
+ * current runner continue for as long as it can, then pick the lowest
+ * waiting index.
+ *
+ * @since 5.0.0
+ */
+final class ControlledScheduler {
+    private final int prefix[];
+    private final Random random;
+    private final boolean waiting[];
+    private final boolean arrived[];
+    private int arrivedCount = 0;
+    private int turn = -1;
+    private int current = -1;
+    private String divergence;
+
+    // the trace of each pick: the runners waiting, the runner which had
+    // the turn, and the runner picked.
+    private final List traceWaiting = new ArrayList();
+    private final List traceCurrent = new ArrayList();
+    private final List tracePicked = new ArrayList();
+
+
+    ControlledScheduler(int runnerCount, int prefix[], Random random) {
+        this.prefix = prefix;
+        this.random = random;
+        this.waiting = new boolean[runnerCount];
+        this.arrived = new boolean[runnerCount];
+    }
+
+
+    /**
+     * Called by a runner before its first operation.  The first pick is
+     * made once every runner has arrived.
+     */
+    synchronized void begin(int index) throws InterruptedException {
+        this.waiting[index] = true;
+        arrive(index);
+        awaitTurn(index);
+    }
+
+
+    synchronized void yieldPoint(int index) throws InterruptedException {
+        this.waiting[index] = true;
+        pickNext();
+        awaitTurn(index);
+    }
+
+
+    /**
+     * Called by a runner when it ends, however it ends.
+     */
+    synchronized void end(int index) {
+        this.waiting[index] = false;
+        if (this.arrived[index]) {
+            if (this.turn == index) {
+                pickNext();
+            }
+        } else {
+            arrive(index);
+        }
+    }
+
+
+    /**
+     * @return the picks made so far, as a comma separated list of runner
+     * indexes.
+     */
+    synchronized String getSchedule() {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < this.tracePicked.size(); ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(this.tracePicked.get(i));
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * @return a description of where the run stopped following its
+     * prefix, or <tt>null</tt> if it never did.
+     */
+    synchronized String getDivergence() {
+        return this.divergence;
+    }
+
+
+    synchronized int getStepCount() {
+        return this.tracePicked.size();
+    }
+
+
+    synchronized boolean[] getWaiting(int step) {
+        return (boolean[]) this.traceWaiting.get(step);
+    }
+
+
+    synchronized int getCurrent(int step) {
+        return ((Integer) this.traceCurrent.get(step)).intValue();
+    }
+
+
+    synchronized int getPicked(int step) {
+        return ((Integer) this.tracePicked.get(step)).intValue();
+    }
+
+
+    /**
+     * @return the choices at a step, starting with the one made when not
+     * following a prefix, then the other waiting runners by index.
+     */
+    static int[] getChoices(boolean waiting[], int current) {
+        int count = 0;
+        for (int i = 0; i < waiting.length; ++i) {
+            if (waiting[i]) {
+                ++count;
+            }
+        }
+        int ret[] = new int[count];
+        int first = getDefaultChoice(waiting, current);
+        if (first < 0) {
+            return ret;
+        }
+        ret[0] = first;
+        int pos = 1;
+        for (int i = 0; i < waiting.length; ++i) {
+            if (waiting[i] && i != first) {
+                ret[pos++] = i;
+            }
+        }
+        return ret;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if picking the given runner takes the turn
+     * away from a runner which could have continued.
+     */
+    static boolean isPreemption(boolean waiting[], int current, int picked) {
+        return current >= 0 && waiting[current] && picked != current;
+    }
+
+
+    private static int getDefaultChoice(boolean waiting[], int current) {
+        if (current >= 0 && waiting[current]) {
+            return current;
+        }
+        for (int i = 0; i < waiting.length; ++i) {
+            if (waiting[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private void arrive(int index) {
+        this.arrived[index] = true;
+        if (++this.arrivedCount == this.arrived.length) {
+            pickNext();
+        }
+    }
+
+
+    private void pickNext() {
+        int step = this.tracePicked.size();
+        int next;
+        if (step < this.prefix.length) {
+            next = this.prefix[step];
+            if (next < 0 || next >= this.waiting.length ||
+                    !this.waiting[next]) {
+                if (this.divergence == null) {
+                    this.divergence = "runner " + next +
+                            " was not waiting at step " + step;
+                }
+                next = getDefaultChoice(this.waiting, this.current);
+            }
+        } else if (this.random != null) {
+            int choices[] = getChoices(this.waiting, this.current);
+            next = choices.length <= 0 ? -1 :
+                    choices[this.random.nextInt(choices.length)];
+        } else {
+            next = getDefaultChoice(this.waiting, this.current);
+        }
+        if (next >= 0) {
+            this.traceWaiting.add(this.waiting.clone());
+            this.traceCurrent.add(Integer.valueOf(this.current));
+            this.tracePicked.add(Integer.valueOf(next));
+            this.waiting[next] = false;
+            this.current = next;
+        }
+        this.turn = next;
+        notifyAll();
+    }
+
+
+    private void awaitTurn(int index) throws InterruptedException {
+        while (this.turn != index) {
+            wait();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * @(#)DeadlockMonitor.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+
+
+/**
+ * A monitor which fails the run as soon as any of its runner or monitor
+ * threads is part of a deadlock, rather than letting the run sit until
+ * its time limit expires.  The failure describes the lock cycle, along
+ * with the stack of each deadlocked thread and the locks it holds.
+ * <p>
+ * Deadlocks are found through <tt>ThreadMXBean.findDeadlockedThreads()</tt>,
+ * which covers both object monitors and <tt>java.util.concurrent</tt>
+ * locks.  Only deadlocks involving a thread of this monitor's own run are
+ * reported.  As deadlocked threads can never end on their own, the run
+ * kills them without first waiting out the usual grace period.
+ *
+ * @since 5.0.0
+ */
+public class DeadlockMonitor extends TestMonitorRunnable {
+    private static final ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean();
+    private static final long DEFAULT_CHECK_INTERVAL = 10l;
+
+    private final long checkInterval;
+
+
+    /**
+     * Checks for deadlocks every 10 milliseconds.
+     */
+    public DeadlockMonitor() {
+        this(DEFAULT_CHECK_INTERVAL);
+    }
+
+
+    /**
+     * @param checkIntervalMillis the time between deadlock checks.
+     */
+    public DeadlockMonitor(long checkIntervalMillis) {
+        if (checkIntervalMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "check interval must be positive");
+        }
+        this.checkInterval = checkIntervalMillis;
+    }
+
+
+    public void runMonitor() throws Throwable {
+        long ids[] = findDeadlockedThreads();
+        if (ids == null || !involvesThisRun(ids)) {
+            return;
+        }
+        getTestRunner().markThreadsUnresponsive();
+        fail(describeDeadlock(ids));
+    }
+
+
+    protected void yieldProcessing() throws InterruptedException {
+        delay(this.checkInterval);
+    }
+
+
+    private static long[] findDeadlockedThreads() {
+        if (THREADS.isSynchronizerUsageSupported()) {
+            return THREADS.findDeadlockedThreads();
+        }
+        return THREADS.findMonitorDeadlockedThreads();
+    }
+
+
+    private boolean involvesThisRun(long ids[]) {
+        Thread ours[] = getTestRunner().getRunningThreads();
+        for (int i = 0; i < ids.length; ++i) {
+            for (int j = 0; j < ours.length; ++j) {
+                if (ours[j].getId() == ids[i]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private static String describeDeadlock(long ids[]) {
+        ThreadInfo infos[] = THREADS.getThreadInfo(ids,
+                THREADS.isObjectMonitorUsageSupported(),
+                THREADS.isSynchronizerUsageSupported());
+        StringBuffer sb = new StringBuffer();
+        sb.append("Deadlock detected between ").append(ids.length).append(
+                " thread(s):");
+        for (int i = 0; i < infos.length; ++i) {
+            if (infos[i] != null) {
+                sb.append("\n\"").append(infos[i].getThreadName()).append(
+                        "\" waits for ").append(infos[i].getLockName()).append(
+                        " held by \"").append(
+                        infos[i].getLockOwnerName()).append('"');
+            }
+        }
+        for (int i = 0; i < infos.length; ++i) {
+            if (infos[i] != null) {
+                appendThread(sb, infos[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    private static void appendThread(StringBuffer sb, ThreadInfo info) {
+        sb.append("\n\n\"").append(info.getThreadName()).append("\" id=").append(
+                info.getThreadId()).append(' ').append(info.getThreadState());
+        StackTraceElement stack[] = info.getStackTrace();
+        MonitorInfo monitors[] = info.getLockedMonitors();
+        for (int i = 0; i < stack.length; ++i) {
+            sb.append("\n\tat ").append(stack[i]);
+            if (i == 0 && info.getLockInfo() != null) {
+                sb.append("\n\t- waiting on ").append(info.getLockInfo());
+            }
+            for (int j = 0; j < monitors.length; ++j) {
+                if (monitors[j].getLockedStackDepth() == i) {
+                    sb.append("\n\t- locked ").append(monitors[j]);
+                }
+            }
+        }
+        LockInfo synchronizers[] = info.getLockedSynchronizers();
+        for (int i = 0; i < synchronizers.length; ++i) {
+            sb.append("\n\t- holds ").append(synchronizers[i]);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * @(#)EventRing.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * A fixed-size ring of harness lifecycle events, written by a single
+ * thread.  Each event is a time stamp, an event type and one numeric
+ * argument, stored into preallocated arrays, so recording an event
+ * neither allocates nor locks nor builds a string.  Once full, the
+ * oldest events are overwritten.
+ * <p>
+ * The events are only turned into text when a run fails, or when asked
+ * to, and only after the writing thread handed off to the reader, such
+ * as through the run's done latch.
+ *
+ * @since 5.0.0
+ */
+final class EventRing {
+    static final int DEFAULT_CAPACITY = 64;
+
+    // runner events; the argument is the runner's operation count.
+    static final int STARTED = 0;
+    static final int PASSED_GATE = 1;
+    static final int INTERRUPTED = 2;
+    static final int ABORTED = 3;
+    static final int FAILED = 4;
+    static final int ENDED = 5;
+
+    // core thread events; the argument is a runnable's index, or a count.
+    static final int RUN_STARTED = 6;
+    static final int WAITING_FOR_START = 7;
+    static final int ASSUMED_FINISHED = 8;
+    static final int GATE_OPENED = 9;
+    static final int GATE_INCOMPLETE = 10;
+    static final int STILL_RUNNING = 11;
+    static final int RUNNERS_HALTED = 12;
+    static final int HALTING_RUNNERS = 13;
+    static final int STOPPING = 14;
+    static final int WAITING_FOR_STOP = 15;
+    static final int HALTING_MONITORS = 16;
+    static final int RUN_ENDED = 17;
+
+    // runner event in a run of rounds; the argument is the round index.
+    static final int ROUND_STARTED = 18;
+
+    private static final String NAMES[] = {
+            "started", "passed the start gate", "interrupted", "aborted",
+            "failed", "ended",
+            "run started", "waiting for start", "assumed finished",
+            "start gate opened", "start gate incomplete", "still running",
+            "runners already halted", "halting the runners", "stopping",
+            "waiting for stop", "halting the monitors", "run ended",
+            "round started"
+    };
+
+    private final String source;
+    private final int mask;
+    private final long times[];
+    private final int types[];
+    private final long values[];
+    private long count = 0l;
+
+
+    /**
+     * @param source   the name of the writer, shown with each event.
+     * @param capacity the number of events kept; rounded up to a power of
+     *                 two.
+     */
+    EventRing(String source, int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.source = source;
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.types = new int[size];
+        this.values = new long[size];
+    }
+
+
+    void record(int type, long value) {
+        int i = (int) this.count & this.mask;
+        this.times[i] = System.nanoTime();
+        this.types[i] = type;
+        this.values[i] = value;
+        ++this.count;
+    }
+
+
+    void clear() {
+        this.count = 0l;
+    }
+
+
+    /**
+     * Writes the events of all the given rings, merged in time order,
+     * with times relative to the earliest event.
+     */
+    static void write(EventRing rings[], Writer out) throws IOException {
+        long origin = getOrigin(rings);
+        Merge merge = new Merge(rings, true);
+        while (merge.hasNext()) {
+            int r = merge.next();
+            writeEvent(rings[r], merge.getSlot(), origin, out);
+        }
+    }
+
+
+    /**
+     * Writes the latest events of the given rings, merged in time order.
+     * Only the kept events are merged, backwards from the latest, so
+     * the cost depends on the limit, not on how many events there are.
+     *
+     * @param limit  the most events to write.
+     * @param origin the time which the written times are relative to.
+     */
+    static void writeLatest(EventRing rings[], int limit, long origin,
+                            Writer out) throws IOException {
+        long total = 0l;
+        for (int i = 0; i < rings.length; ++i) {
+            total += rings[i].getKeptCount();
+        }
+        int size = (int) Math.min(total, (long) limit);
+        int keptRings[] = new int[size];
+        int keptSlots[] = new int[size];
+        Merge merge = new Merge(rings, false);
+        for (int n = 0; n < size; ++n) {
+            keptRings[n] = merge.next();
+            keptSlots[n] = merge.getSlot();
+        }
+        for (int n = size - 1; n >= 0; --n) {
+            writeEvent(rings[keptRings[n]], keptSlots[n], origin, out);
+        }
+    }
+
+
+    /**
+     * @return the time of the earliest event kept in the given rings.
+     */
+    static long getOrigin(EventRing rings[]) {
+        boolean found = false;
+        long origin = 0l;
+        for (int i = 0; i < rings.length; ++i) {
+            long kept = rings[i].getKeptCount();
+            if (kept > 0) {
+                long t = rings[i].times[
+                        (int) (rings[i].count - kept) & rings[i].mask];
+                if (!found || t - origin < 0l) {
+                    origin = t;
+                    found = true;
+                }
+            }
+        }
+        return origin;
+    }
+
+
+    private long getKeptCount() {
+        return Math.min(this.count, this.times.length);
+    }
+
+
+    private static void writeEvent(EventRing ring, int slot, long origin,
+                                   Writer out) throws IOException {
+        out.write("  +" + ((ring.times[slot] - origin) / 1000l) + "us " +
+                ring.source + ": " + NAMES[ring.types[slot]] + " (" +
+                ring.values[slot] + ")\n");
+    }
+
+
+    /**
+     * Merges the kept events of several rings in time order, forwards or
+     * backwards, through a heap of the rings keyed by their next event,
+     * so that each event costs a logarithm of the number of rings.
+     */
+    private static final class Merge {
+        private final EventRing rings[];
+        private final boolean forward;
+        private final long next[];
+        private final long stop[];
+        private final int heap[];
+        private int size = 0;
+        private int slot;
+
+
+        Merge(EventRing rings[], boolean forward) {
+            this.rings = rings;
+            this.forward = forward;
+            this.next = new long[rings.length];
+            this.stop = new long[rings.length];
+            this.heap = new int[rings.length];
+            for (int i = 0; i < rings.length; ++i) {
+                long kept = rings[i].getKeptCount();
+                long first = rings[i].count - kept;
+                this.next[i] = forward ? first : rings[i].count - 1l;
+                this.stop[i] = forward ? rings[i].count : first - 1l;
+                if (kept > 0) {
+                    this.heap[this.size] = i;
+                    siftUp(this.size++);
+                }
+            }
+        }
+
+
+        boolean hasNext() {
+            return this.size > 0;
+        }
+
+
+        /**
+         * Takes the next event.
+         *
+         * @return the index of its ring; <tt>getSlot()</tt> tells where
+         * in the ring it is.
+         */
+        int next() {
+            int r = this.heap[0];
+            this.slot = (int) this.next[r] & this.rings[r].mask;
+            this.next[r] += this.forward ? 1l : -1l;
+            if (this.next[r] == this.stop[r]) {
+                this.heap[0] = this.heap[--this.size];
+            }
+            siftDown(0);
+            return r;
+        }
+
+
+        int getSlot() {
+            return this.slot;
+        }
+
+
+        private void siftUp(int pos) {
+            int ring = this.heap[pos];
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!before(ring, this.heap[parent])) {
+                    break;
+                }
+                this.heap[pos] = this.heap[parent];
+                pos = parent;
+            }
+            this.heap[pos] = ring;
+        }
+
+
+        private void siftDown(int pos) {
+            if (pos >= this.size) {
+                return;
+            }
+            int ring = this.heap[pos];
+            while (true) {
+                int child = pos * 2 + 1;
+                if (child >= this.size) {
+                    break;
+                }
+                if (child + 1 < this.size &&
+                        before(this.heap[child + 1], this.heap[child])) {
+                    ++child;
+                }
+                if (!before(this.heap[child], ring)) {
+                    break;
+                }
+                this.heap[pos] = this.heap[child];
+                pos = child;
+            }
+            this.heap[pos] = ring;
+        }
+
+
+        /**
+         * @return <tt>true</tt> if ring <tt>a</tt>'s next event comes
+         * before ring <tt>b</tt>'s; on a tie, the earlier ring first.
+         */
+        private boolean before(int a, int b) {
+            long diff = time(a) - time(b);
+            if (diff == 0l) {
+                return this.forward ? a < b : a > b;
+            }
+            return this.forward ? diff < 0l : diff > 0l;
+        }
+
+
+        private long time(int r) {
+            EventRing ring = this.rings[r];
+            return ring.times[(int) this.next[r] & ring.mask];
+        }
+    }
+}
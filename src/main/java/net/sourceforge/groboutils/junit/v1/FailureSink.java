@@ -0,0 +1,156 @@
+/*
+ * @(#)FailureSink.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Collects the failures of every runner in a run, grouped by exception
+ * type and throw site.  Any number of runners may add failures at the
+ * same time: only the first failure of a group inserts into the map, and
+ * the rest just bump the group's atomic counter, so the runners don't
+ * serialize on a shared lock, and memory stays bounded however often a
+ * failure repeats.
+ *
+ * @since 5.0.0
+ */
+final class FailureSink {
+    private final ConcurrentMap groups = new ConcurrentHashMap();
+    private final AtomicLong total = new AtomicLong();
+
+
+    void add(Throwable t) {
+        this.total.incrementAndGet();
+        String key = getGroupKey(t);
+        Group group = (Group) this.groups.get(key);
+        if (group == null) {
+            Group created = new Group(key, t);
+            group = (Group) this.groups.putIfAbsent(key, created);
+            if (group == null) {
+                return;
+            }
+        }
+        group.count.incrementAndGet();
+    }
+
+
+    long getFailureCount() {
+        return this.total.get();
+    }
+
+
+    /**
+     * @return the collected failures as a single exception, or
+     * <tt>null</tt> if none were collected.  A lone failure is returned
+     * as is.
+     */
+    Throwable createFailure() {
+        long count = this.total.get();
+        if (count <= 0l) {
+            return null;
+        }
+        List sorted = new ArrayList(this.groups.values());
+        if (count == 1l && sorted.size() == 1) {
+            return ((Group) sorted.get(0)).first;
+        }
+        Collections.sort(sorted, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long c1 = ((Group) o1).count.get();
+                long c2 = ((Group) o2).count.get();
+                return c1 > c2 ? -1 : (c1 < c2 ? 1 : 0);
+            }
+        });
+        String sites[] = new String[sorted.size()];
+        long counts[] = new long[sorted.size()];
+        Throwable firsts[] = new Throwable[sorted.size()];
+        for (int i = 0; i < sites.length; ++i) {
+            Group group = (Group) sorted.get(i);
+            sites[i] = group.key;
+            counts[i] = group.count.get();
+            firsts[i] = group.first;
+        }
+        return new MultipleFailuresError(sites, counts, firsts);
+    }
+
+
+    /**
+     * The group of a failure is its type plus the first frame outside of
+     * the JUnit 3 and 4 assertion methods and of the failure's own
+     * constructors, which is where the test threw it.  Other assertion
+     * libraries' methods still count as the throw site.
+     */
+    static String getGroupKey(Throwable t) {
+        StackTraceElement trace[] = t.getStackTrace();
+        String site = "(unknown)";
+        for (int i = 0; i < trace.length; ++i) {
+            if (!isAssertionFrame(trace[i], t.getClass())) {
+                site = trace[i].toString();
+                break;
+            }
+        }
+        return t.getClass().getName() + " at " + site;
+    }
+
+
+    private static boolean isAssertionFrame(StackTraceElement frame,
+                                            Class type) {
+        String name = frame.getClassName();
+        if (name.startsWith("org.junit.") ||
+                name.startsWith("junit.framework.")) {
+            return true;
+        }
+        if (!"<init>".equals(frame.getMethodName())) {
+            return false;
+        }
+        // such as an AssertionError made by an assertion library.
+        for (Class c = type; c != null; c = c.getSuperclass()) {
+            if (c.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static final class Group {
+        final String key;
+        final Throwable first;
+        final AtomicLong count = new AtomicLong(1l);
+
+
+        Group(String key, Throwable first) {
+            this.key = key;
+            this.first = first;
+        }
+    }
+}
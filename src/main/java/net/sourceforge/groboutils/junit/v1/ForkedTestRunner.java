@@ -0,0 +1,545 @@
+/*
+ * @(#)ForkedTestRunner.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import org.junit.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+
+/**
+ * Runs a scenario of <tt>TestRunnable</tt> classes through a
+ * <tt>MultiThreadedTestRunner</tt> inside a child JVM.  The child streams
+ * back the run's <tt>RunReport</tt>, or the exception which failed the
+ * run, over a loopback socket which this JVM opens for it.
+ * <p>
+ * Threads which ignore interrupts can no longer be <tt>Thread.stop()</tt>ed
+ * on current JVMs, so a hung runner inside the test's own JVM lives on and
+ * distorts everything that runs after it.  Inside a child JVM, a hung
+ * scenario is simply destroyed along with its JVM once the scenario's
+ * time limit plus a grace period passes.
+ * <p>
+ * Starting a JVM is slow, so a worker JVM whose scenario ended cleanly is
+ * kept and reused by the next scenario.  A worker is discarded if its
+ * scenario left threads running, or if it had to be destroyed.  Call
+ * <tt>close()</tt> to end the idle workers.
+ * <p>
+ * Each scenario class must be public, with a public no-argument
+ * constructor, and be on this JVM's class path.  The workers use the same
+ * class path and <tt>java</tt> executable as this JVM.  Anything the child
+ * writes to its standard output or error, including what the JVM itself
+ * prints for flags such as <tt>-verbose:gc</tt>, is copied to this JVM's
+ * standard error.
+ *
+ * @since 5.0.0
+ */
+public class ForkedTestRunner {
+    private static final Class THIS_CLASS = ForkedTestRunner.class;
+    private static final Logger LOG = LoggerFactory.getLogger(THIS_CLASS);
+
+    private static final long DEFAULT_KILL_GRACE_PERIOD = 10l * 1000l;
+    private static final int DEFAULT_MAX_IDLE_WORKERS = 2;
+    private static final int CONNECT_POLL_MILLIS = 100;
+
+    private final List command;
+    private final LinkedList idleWorkers = new LinkedList();
+    private final Timer killTimer = new Timer(THIS_CLASS.getName(), true);
+    private long killGracePeriod = DEFAULT_KILL_GRACE_PERIOD;
+    private int maxIdleWorkers = DEFAULT_MAX_IDLE_WORKERS;
+    private boolean closed = false;
+
+
+    /**
+     * Starts the worker JVMs without any extra JVM arguments.
+     */
+    public ForkedTestRunner() {
+        this(new String[0]);
+    }
+
+
+    /**
+     * @param jvmArgs the arguments to pass to each worker JVM, such as
+     *                heap sizes or system properties.
+     */
+    public ForkedTestRunner(String jvmArgs[]) {
+        if (jvmArgs == null) {
+            throw new IllegalArgumentException("no null arguments");
+        }
+        List cmd = new ArrayList();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" +
+                File.separator + "java");
+        for (int i = 0; i < jvmArgs.length; ++i) {
+            if (jvmArgs[i] == null) {
+                throw new IllegalArgumentException("no null arguments");
+            }
+            cmd.add(jvmArgs[i]);
+        }
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(THIS_CLASS.getName());
+        this.command = cmd;
+    }
+
+
+    /**
+     * Sets how long past a scenario's time limit the scenario's worker is
+     * given to report, before it is destroyed.  Defaults to 10 seconds.
+     */
+    public void setKillGracePeriod(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(
+                    "grace period must be non-negative");
+        }
+        this.killGracePeriod = millis;
+    }
+
+
+    /**
+     * Sets how many idle worker JVMs are kept for reuse.  Defaults to 2;
+     * 0 starts a fresh JVM for every scenario.
+     */
+    public synchronized void setMaxIdleWorkers(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException(
+                    "worker count must be non-negative");
+        }
+        this.maxIdleWorkers = count;
+        trimIdleWorkers();
+    }
+
+
+    /**
+     * Runs one instance of each runner class in a worker JVM.
+     *
+     * @param runners the <tt>TestRunnable</tt> classes to run.
+     * @param maxTime the maximum time in milliseconds the scenario may
+     *                run.
+     * @return the run's report.
+     * @throws Throwable the exception which failed the scenario, or a
+     *                   timeout failure if the worker had to be destroyed.
+     */
+    public RunReport runScenario(Class runners[], long maxTime)
+            throws Throwable {
+        return runScenario(runners, new Class[0], maxTime);
+    }
+
+
+    /**
+     * Runs one instance of each runner and monitor class in a worker JVM.
+     *
+     * @param runners  the <tt>TestRunnable</tt> classes to run.
+     * @param monitors the <tt>TestRunnable</tt> classes to run as
+     *                 monitors.
+     * @param maxTime  the maximum time in milliseconds the scenario may
+     *                 run.
+     * @return the run's report.
+     * @throws Throwable the exception which failed the scenario, or a
+     *                   timeout failure if the worker had to be destroyed.
+     */
+    public RunReport runScenario(Class runners[], Class monitors[],
+                                 long maxTime)
+            throws Throwable {
+        String runnerNames[] = getClassNames(runners);
+        String monitorNames[] = getClassNames(monitors);
+        if (runnerNames.length <= 0) {
+            throw new IllegalArgumentException("no runners given");
+        }
+        if (maxTime <= 0) {
+            throw new IllegalArgumentException(
+                    "time limit must be positive");
+        }
+
+        final Worker worker = acquireWorker();
+        TimerTask killer = new TimerTask() {
+            public void run() {
+                worker.kill();
+            }
+        };
+        this.killTimer.schedule(killer, maxTime + this.killGracePeriod);
+        boolean clean = false;
+        Object result;
+        try {
+            worker.send(runnerNames, monitorNames, maxTime);
+            ObjectInputStream in = worker.getInput();
+            clean = in.readBoolean();
+            result = in.readObject();
+        } catch (IOException e) {
+            if (!worker.killed) {
+                throw e;
+            }
+            // the worker was destroyed while it was running.
+            Assert.fail("Scenario did not finish within " + maxTime +
+                    " milliseconds; its JVM was destroyed.");
+            return null;
+        } finally {
+            killer.cancel();
+            if (clean && !worker.killed) {
+                releaseWorker(worker);
+            } else {
+                worker.kill();
+            }
+        }
+        if (result instanceof Throwable) {
+            throw (Throwable) result;
+        }
+        return (RunReport) result;
+    }
+
+
+    /**
+     * Ends every idle worker JVM.  Workers still running a scenario end
+     * once it finishes.
+     */
+    public synchronized void close() {
+        this.closed = true;
+        trimIdleWorkers();
+        this.killTimer.cancel();
+    }
+
+
+    private Worker acquireWorker() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("runner is closed");
+            }
+            while (!this.idleWorkers.isEmpty()) {
+                Worker worker = (Worker) this.idleWorkers.removeFirst();
+                if (worker.isAlive()) {
+                    LOG.debug("Reusing a warm worker JVM.");
+                    return worker;
+                }
+                worker.kill();
+            }
+        }
+        LOG.debug("Starting a worker JVM.");
+        return new Worker(this.command);
+    }
+
+
+    private synchronized void releaseWorker(Worker worker) {
+        this.idleWorkers.addLast(worker);
+        trimIdleWorkers();
+    }
+
+
+    private void trimIdleWorkers() {
+        int max = this.closed ? 0 : this.maxIdleWorkers;
+        while (this.idleWorkers.size() > max) {
+            ((Worker) this.idleWorkers.removeFirst()).kill();
+        }
+    }
+
+
+    private static String[] getClassNames(Class classes[]) {
+        if (classes == null) {
+            throw new IllegalArgumentException("no null classes");
+        }
+        String ret[] = new String[classes.length];
+        for (int i = 0; i < classes.length; ++i) {
+            if (classes[i] == null ||
+                    !TestRunnable.class.isAssignableFrom(classes[i])) {
+                throw new IllegalArgumentException("class at index " + i +
+                        " is not a TestRunnable");
+            }
+            ret[i] = classes[i].getName();
+        }
+        return ret;
+    }
+
+
+    /**
+     * The worker JVM's entry point.  Connects to the loopback port given
+     * as the only argument, then runs each scenario read from it and
+     * writes back its outcome, until the parent closes the connection.
+     * The JVM and the scenarios write to standard output as they please,
+     * as it carries no results.
+     */
+    public static void main(String args[]) throws Exception {
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"),
+                Integer.parseInt(args[0]));
+        socket.setTcpNoDelay(true);
+        ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+        while (true) {
+            String runnerNames[];
+            String monitorNames[];
+            long maxTime;
+            try {
+                runnerNames = readNames(in);
+                monitorNames = readNames(in);
+                maxTime = in.readLong();
+            } catch (IOException e) {
+                // the parent closed the connection.
+                break;
+            }
+
+            boolean clean = true;
+            Object result;
+            try {
+                TestRunnable runners[] = createInstances(runnerNames);
+                TestRunnable monitors[] = createInstances(monitorNames);
+                try {
+                    result = new MultiThreadedTestRunner(runners, monitors)
+                            .runTestRunnables(maxTime);
+                } catch (Throwable t) {
+                    result = t;
+                }
+                clean = haveEnded(runners) && haveEnded(monitors);
+            } catch (Throwable t) {
+                result = t;
+            }
+            out.writeBoolean(clean);
+            out.writeObject(toSerializable(result));
+            out.flush();
+            out.reset();
+            if (!clean) {
+                // leaked threads distort any later scenario.
+                break;
+            }
+        }
+        // never wait on leaked non-daemon threads.
+        System.exit(0);
+    }
+
+
+    private static String[] readNames(ObjectInputStream in)
+            throws IOException {
+        String ret[] = new String[in.readInt()];
+        for (int i = 0; i < ret.length; ++i) {
+            ret[i] = in.readUTF();
+        }
+        return ret;
+    }
+
+
+    private static TestRunnable[] createInstances(String names[])
+            throws Exception {
+        TestRunnable ret[] = new TestRunnable[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            ret[i] = (TestRunnable) Class.forName(names[i]).newInstance();
+        }
+        return ret;
+    }
+
+
+    private static boolean haveEnded(TestRunnable trs[]) {
+        for (int i = 0; i < trs.length; ++i) {
+            if (trs[i].getRunningThread() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Exceptions may hold state which can't be sent to the parent, so
+     * these are replaced by a failure with the same message and stack.
+     */
+    private static Object toSerializable(Object result) {
+        try {
+            new ObjectOutputStream(new ByteArrayOutputStream()).writeObject(
+                    result);
+            return result;
+        } catch (IOException e) {
+            Throwable t = (Throwable) result;
+            AssertionError ret = new AssertionError(t.toString());
+            ret.setStackTrace(t.getStackTrace());
+            return ret;
+        }
+    }
+
+
+    /**
+     * A running worker JVM, and the connection to it.  The worker's
+     * standard output and error are merged and copied through, so the
+     * JVM's own output can never corrupt the results.
+     */
+    private static class Worker {
+        final Process process;
+        private final ServerSocket server;
+        private volatile Socket socket;
+        private ObjectOutputStream out;
+        private ObjectInputStream in;
+        volatile boolean killed = false;
+
+
+        Worker(List command) throws IOException {
+            this.server = new ServerSocket(0, 1,
+                    InetAddress.getByName("127.0.0.1"));
+            List cmd = new ArrayList(command);
+            cmd.add(String.valueOf(this.server.getLocalPort()));
+            ProcessBuilder builder = new ProcessBuilder(cmd);
+            builder.redirectErrorStream(true);
+            try {
+                this.process = builder.start();
+            } catch (IOException e) {
+                this.server.close();
+                throw e;
+            }
+            copyInBackground(this.process.getInputStream(), System.err);
+        }
+
+
+        /**
+         * Accepts the worker's connection on first use.  This waits for
+         * the worker to start up and write its stream header, so it must
+         * only happen once the scenario's kill timer runs; otherwise a
+         * worker which hangs at startup would hang the caller.  A worker
+         * which exits before it connects fails right away.
+         */
+        private void connect() throws IOException {
+            if (this.socket != null) {
+                return;
+            }
+            this.server.setSoTimeout(CONNECT_POLL_MILLIS);
+            while (this.socket == null) {
+                try {
+                    this.socket = this.server.accept();
+                } catch (SocketTimeoutException e) {
+                    if (!isAlive()) {
+                        throw new IOException("worker JVM exited with " +
+                                this.process.exitValue() +
+                                " before it connected");
+                    }
+                }
+            }
+            this.server.close();
+            this.socket.setTcpNoDelay(true);
+            this.out = new ObjectOutputStream(new BufferedOutputStream(
+                    this.socket.getOutputStream()));
+            this.out.flush();
+            this.in = new ObjectInputStream(new BufferedInputStream(
+                    this.socket.getInputStream()));
+        }
+
+
+        ObjectInputStream getInput() throws IOException {
+            connect();
+            return this.in;
+        }
+
+
+        void send(String runnerNames[], String monitorNames[], long maxTime)
+                throws IOException {
+            connect();
+            writeNames(runnerNames);
+            writeNames(monitorNames);
+            this.out.writeLong(maxTime);
+            this.out.flush();
+        }
+
+
+        boolean isAlive() {
+            try {
+                this.process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
+
+        void kill() {
+            this.killed = true;
+            this.process.destroy();
+            // unblocks a wait for the worker to connect or report.
+            closeQuietly(this.server);
+            closeQuietly(this.socket);
+        }
+
+
+        private static void closeQuietly(ServerSocket s) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // already closed.
+            }
+        }
+
+
+        private static void closeQuietly(Socket s) {
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    // already closed.
+                }
+            }
+        }
+
+
+        private void writeNames(String names[]) throws IOException {
+            this.out.writeInt(names.length);
+            for (int i = 0; i < names.length; ++i) {
+                this.out.writeUTF(names[i]);
+            }
+        }
+
+
+        private static void copyInBackground(final InputStream in,
+                                             final OutputStream out) {
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    byte buff[] = new byte[4096];
+                    try {
+                        int len;
+                        while ((len = in.read(buff)) >= 0) {
+                            out.write(buff, 0, len);
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // the worker ended.
+                    }
+                }
+            }, THIS_CLASS.getName() + "-output");
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+}
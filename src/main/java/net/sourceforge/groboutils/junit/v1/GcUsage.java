@@ -0,0 +1,91 @@
+/*
+ * @(#)GcUsage.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * Reads the collection counts and times of all the JVM's garbage
+ * collectors, summed, so that a run can report how much of it the
+ * collectors took.  Collectors which don't report a value are left out;
+ * if none does, the value is -1.
+ *
+ * @since 5.0.0
+ */
+final class GcUsage {
+    private GcUsage() {
+        // static only
+    }
+
+
+    static long getCollectionCount() {
+        long total = -1l;
+        Iterator iter = getCollectors().iterator();
+        while (iter.hasNext()) {
+            long count = ((GarbageCollectorMXBean) iter.next())
+                    .getCollectionCount();
+            if (count >= 0l) {
+                total = Math.max(total, 0l) + count;
+            }
+        }
+        return total;
+    }
+
+
+    static long getCollectionMillis() {
+        long total = -1l;
+        Iterator iter = getCollectors().iterator();
+        while (iter.hasNext()) {
+            long time = ((GarbageCollectorMXBean) iter.next())
+                    .getCollectionTime();
+            if (time >= 0l) {
+                total = Math.max(total, 0l) + time;
+            }
+        }
+        return total;
+    }
+
+
+    /**
+     * @return the difference between two readings, or -1 if either is
+     * unknown.
+     */
+    static long delta(long before, long after) {
+        if (before < 0l || after < 0l) {
+            return -1l;
+        }
+        return after - before;
+    }
+
+
+    private static List getCollectors() {
+        return ManagementFactory.getGarbageCollectorMXBeans();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * @(#)HiccupMonitor.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * A monitor which detects pauses of the whole JVM, such as garbage
+ * collections and safepoints, by repeatedly sleeping for a short time and
+ * measuring how much longer than asked the sleep took.  Runner latencies
+ * which overlap such a pause are likely not the fault of the tested code;
+ * the <tt>RunReport</tt> of a run with this monitor flags them (see
+ * <tt>MultiThreadedTestRunner.setDetectPauses()</tt>).
+ * <p>
+ * The monitor needs a processor of its own to tell a JVM pause from
+ * simply not being scheduled, so on a machine with fewer processors than
+ * runners, busy runners show up as pauses too.  The monitor never fails
+ * the run.
+ *
+ * @since 5.0.0
+ */
+public class HiccupMonitor extends TestMonitorRunnable {
+    private static final long DEFAULT_RESOLUTION = 1l;
+    private static final long DEFAULT_THRESHOLD = 1l;
+    private static final int MAX_PAUSES = 4096;
+
+    private final long resolutionNanos;
+    private final long thresholdNanos;
+    private final long pauseStarts[] = new long[MAX_PAUSES];
+    private final long pauseSpans[] = new long[MAX_PAUSES];
+    private int pauseCount = 0;
+    private long droppedCount = 0l;
+    private long maxPauseNanos = 0l;
+    private long totalPauseNanos = 0l;
+
+
+    /**
+     * Sleeps for 1 millisecond at a time, and reports sleeps which took
+     * over 1 millisecond longer than that.
+     */
+    public HiccupMonitor() {
+        this(DEFAULT_RESOLUTION, DEFAULT_THRESHOLD);
+    }
+
+
+    /**
+     * @param resolutionMillis how long each sleep lasts.
+     * @param thresholdMillis  how much longer than asked a sleep must take
+     *                         to count as a pause.
+     */
+    public HiccupMonitor(long resolutionMillis, long thresholdMillis) {
+        if (resolutionMillis <= 0 || thresholdMillis < 0) {
+            throw new IllegalArgumentException(
+                    "resolution must be positive, threshold non-negative");
+        }
+        this.resolutionNanos = TimeUnit.MILLISECONDS.toNanos(
+                resolutionMillis);
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+
+    /**
+     * Forgets the pauses of any earlier run.
+     */
+    synchronized void beforeRun() {
+        this.pauseCount = 0;
+        this.droppedCount = 0l;
+        this.maxPauseNanos = 0l;
+        this.totalPauseNanos = 0l;
+    }
+
+
+    /**
+     * Sleeps in a loop until the runners are done.  A pause lasts as long
+     * as the sleep overran, but for <tt>isPaused()</tt> it spans the whole
+     * sleep, as the pause could have started at any point during it.
+     */
+    public void runTest() throws Throwable {
+        while (!isDone() && !Thread.interrupted()) {
+            long before = System.nanoTime();
+            LockSupport.parkNanos(this.resolutionNanos);
+            long after = System.nanoTime();
+            long overrun = after - before - this.resolutionNanos;
+            if (overrun >= this.thresholdNanos) {
+                recordPause(before, after - before, overrun);
+            }
+        }
+    }
+
+
+    public void runMonitor() {
+        // all the work happens in runTest().
+    }
+
+
+    /**
+     * @return the number of pauses detected in the current or last run.
+     */
+    public synchronized long getPauseCount() {
+        return this.pauseCount + this.droppedCount;
+    }
+
+
+    /**
+     * @return the longest pause detected in the current or last run, in
+     * nanoseconds: how much longer than asked the sleep took.
+     */
+    public synchronized long getMaxPauseNanos() {
+        return this.maxPauseNanos;
+    }
+
+
+    /**
+     * @return the time spent in all the pauses detected in the current or
+     * last run, in nanoseconds.
+     */
+    public synchronized long getTotalPauseNanos() {
+        return this.totalPauseNanos;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the given span of time overlaps a detected
+     * pause.  Only the first 4096 pauses of a run are kept for this, while
+     * the counts and totals cover all of them.
+     */
+    public synchronized boolean isPaused(long startNanos, long durationNanos) {
+        long end = startNanos + durationNanos;
+        for (int i = 0; i < this.pauseCount; ++i) {
+            if (this.pauseStarts[i] - end < 0l &&
+                    startNanos - (this.pauseStarts[i] +
+                            this.pauseSpans[i]) < 0l) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Counts a pause into the totals, and keeps the span it happened in
+     * for <tt>isPaused()</tt> while there is room.
+     */
+    private synchronized void recordPause(long start, long span,
+                                          long duration) {
+        this.maxPauseNanos = Math.max(this.maxPauseNanos, duration);
+        this.totalPauseNanos += duration;
+        if (this.pauseCount < MAX_PAUSES) {
+            this.pauseStarts[this.pauseCount] = start;
+            this.pauseSpans[this.pauseCount] = span;
+            ++this.pauseCount;
+        } else {
+            ++this.droppedCount;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * @(#)HistoryRecorder.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * Records the operations of one runner into an <tt>OperationHistory</tt>.
+ * Call <tt>invoke()</tt> just before calling the tested object, and
+ * <tt>complete()</tt> with the result just after it returns:
+ * <pre>
+ *     int slot = recorder.invoke( PUT, key );
+ *     Object previous = map.put( key, value );
+ *     recorder.complete( slot, previous );
+ * </pre>
+ * The recorder writes into arrays allocated up front, so recording costs
+ * two <tt>System.nanoTime()</tt> calls and a few stores.  Each recorder
+ * must only be used by a single runner.
+ *
+ * @since 5.0.0
+ */
+public final class HistoryRecorder {
+    private final int thread;
+    private final int operations[];
+    private final Object arguments[];
+    private final Object results[];
+    private final long invokeNanos[];
+    private final long returnNanos[];
+    private final boolean completed[];
+    private int size = 0;
+
+
+    HistoryRecorder(int thread, int capacity) {
+        this.thread = thread;
+        this.operations = new int[capacity];
+        this.arguments = new Object[capacity];
+        this.results = new Object[capacity];
+        this.invokeNanos = new long[capacity];
+        this.returnNanos = new long[capacity];
+        this.completed = new boolean[capacity];
+    }
+
+
+    /**
+     * Records the start of an operation.
+     *
+     * @param operation the operation's code, as known to the
+     *                  <tt>SequentialModel</tt>.
+     * @param argument  the operation's argument, which the model must
+     *                  not see change; for several arguments, pass an
+     *                  array or a small immutable holder.
+     * @return the slot to pass to <tt>complete()</tt>.
+     * @throws IllegalStateException if the recorder is full.
+     */
+    public int invoke(int operation, Object argument) {
+        int slot = this.size;
+        if (slot >= this.operations.length) {
+            throw new IllegalStateException("the history of thread " +
+                    this.thread + " is full at " + this.operations.length +
+                    " operations");
+        }
+        this.operations[slot] = operation;
+        this.arguments[slot] = argument;
+        this.results[slot] = null;
+        this.completed[slot] = false;
+        this.size = slot + 1;
+        this.invokeNanos[slot] = System.nanoTime();
+        return slot;
+    }
+
+
+    /**
+     * Records the end of an operation.  An operation which never
+     * completes, such as one that threw, may still have taken effect, so
+     * the check keeps it as pending, with an unknown result.
+     *
+     * @param slot   the value <tt>invoke()</tt> returned.
+     * @param result the operation's result.
+     */
+    public void complete(int slot, Object result) {
+        this.returnNanos[slot] = System.nanoTime();
+        this.results[slot] = result;
+        this.completed[slot] = true;
+    }
+
+
+    /**
+     * @return the number of operations recorded, completed or not.
+     */
+    public int size() {
+        return this.size;
+    }
+
+
+    /**
+     * Forgets the recorded operations.
+     */
+    public void clear() {
+        for (int i = 0; i < this.size; ++i) {
+            this.arguments[i] = null;
+            this.results[i] = null;
+        }
+        this.size = 0;
+    }
+
+
+    int getThread() {
+        return this.thread;
+    }
+
+
+    boolean isCompleted(int slot) {
+        return this.completed[slot];
+    }
+
+
+    int getOperation(int slot) {
+        return this.operations[slot];
+    }
+
+
+    Object getArgument(int slot) {
+        return this.arguments[slot];
+    }
+
+
+    Object getResult(int slot) {
+        return this.results[slot];
+    }
+
+
+    long getInvokeNanos(int slot) {
+        return this.invokeNanos[slot];
+    }
+
+
+    long getReturnNanos(int slot) {
+        return this.returnNanos[slot];
+    }
+}
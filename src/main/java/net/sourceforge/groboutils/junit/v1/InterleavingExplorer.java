@@ -0,0 +1,249 @@
+/*
+ * @(#)InterleavingExplorer.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.StringTokenizer;
+
+
+/**
+ * Runs a scenario over and over, each time under a different controlled
+ * interleaving of its runners, to find races deterministically rather
+ * than by luck.
+ * <p>
+ * Under a controlled schedule, only one runner proceeds at a time, and it
+ * only hands over to another runner at its
+ * <tt>TestRunnable.yieldPoint()</tt> calls, or when it ends.  The
+ * explorer decides who goes next at each of those points, either
+ * systematically, covering every interleaving with at most a given number
+ * of preemptions, or randomly from a seed.  Most concurrency bugs need
+ * only one or two preemptions to show up, so a small bound covers them in
+ * a modest number of runs.
+ * <p>
+ * The first failing run throws an <tt>AssertionError</tt>, caused by the
+ * run's failure, whose message holds the schedule as a string.  Pass that
+ * string to <tt>replay()</tt> to rerun the exact same interleaving, such
+ * as under a debugger.
+ * <p>
+ * Runners must not block on each other between yield points, since a
+ * runner waiting for its turn can't release anything; such a run ends
+ * with the usual timeout failure.  Each run needs fresh runners and
+ * shared state, which the <tt>TestScenario</tt> provides.
+ *
+ * @since 5.0.0
+ */
+public class InterleavingExplorer {
+    private static final Logger LOG = LoggerFactory.getLogger(
+            InterleavingExplorer.class);
+
+    private static final int DEFAULT_MAX_SCHEDULES = 10000;
+    private static final long DEFAULT_MAX_TIME = 10l * 1000l;
+
+    private final TestScenario scenario;
+    private int maxSchedules = DEFAULT_MAX_SCHEDULES;
+    private long maxTime = DEFAULT_MAX_TIME;
+
+
+    /**
+     * @param scenario creates the runners for each run.
+     */
+    public InterleavingExplorer(TestScenario scenario) {
+        if (scenario == null) {
+            throw new IllegalArgumentException("no null scenario");
+        }
+        this.scenario = scenario;
+    }
+
+
+    /**
+     * Sets the most runs a single exploration makes.  Defaults to 10000.
+     */
+    public void setMaxSchedules(int maxSchedules) {
+        if (maxSchedules <= 0) {
+            throw new IllegalArgumentException(
+                    "schedule count must be positive");
+        }
+        this.maxSchedules = maxSchedules;
+    }
+
+
+    /**
+     * Sets the time limit for each run.  Defaults to 10 seconds.
+     */
+    public void setMaxTime(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                    "time limit must be positive");
+        }
+        this.maxTime = millis;
+    }
+
+
+    /**
+     * Runs every interleaving which preempts a runner, that could have
+     * continued, at most the given number of times, depth first, until
+     * one fails or the maximum number of runs is reached.
+     *
+     * @param maxPreemptions the preemption bound; 0 runs each runner to
+     *                       its end, in turn.
+     * @return the number of runs made.
+     * @throws Throwable an <tt>AssertionError</tt> naming the failing
+     *                   schedule.
+     */
+    public int exploreBoundedPreemption(int maxPreemptions) throws Throwable {
+        if (maxPreemptions < 0) {
+            throw new IllegalArgumentException(
+                    "preemption bound must be non-negative");
+        }
+        int prefix[] = new int[0];
+        int runs = 0;
+        while (prefix != null && runs < this.maxSchedules) {
+            ControlledScheduler scheduler = runSchedule(prefix, null,
+                    "preemption bound " + maxPreemptions);
+            ++runs;
+            if (scheduler.getDivergence() != null) {
+                throw new IllegalStateException(
+                        "The scenario is not deterministic: " +
+                                scheduler.getDivergence());
+            }
+            prefix = nextPrefix(scheduler, maxPreemptions);
+        }
+        LOG.debug("Explored " + runs + " schedule(s)" +
+                (prefix == null ? "; none left." : "."));
+        return runs;
+    }
+
+
+    /**
+     * Runs the scenario under random interleavings, one per seed, starting
+     * with the given seed, until one fails or the maximum number of runs
+     * is reached.
+     *
+     * @param seed the first seed to use.
+     * @return the number of runs made.
+     * @throws Throwable an <tt>AssertionError</tt> naming the failing
+     *                   schedule and its seed.
+     */
+    public int exploreRandom(long seed) throws Throwable {
+        for (int i = 0; i < this.maxSchedules; ++i) {
+            runSchedule(new int[0], new Random(seed + i),
+                    "seed " + (seed + i));
+        }
+        return this.maxSchedules;
+    }
+
+
+    /**
+     * Reruns the scenario under the given schedule, as reported by a
+     * failed exploration.
+     *
+     * @param schedule the comma separated list of runner indexes.
+     * @throws Throwable the run's failure, as an <tt>AssertionError</tt>
+     *                   naming the schedule.
+     */
+    public void replay(String schedule) throws Throwable {
+        if (schedule == null) {
+            throw new IllegalArgumentException("no null schedule");
+        }
+        StringTokenizer st = new StringTokenizer(schedule, ", ");
+        int prefix[] = new int[st.countTokens()];
+        for (int i = 0; i < prefix.length; ++i) {
+            prefix[i] = Integer.parseInt(st.nextToken());
+        }
+        ControlledScheduler scheduler = runSchedule(prefix, null, "replay");
+        if (scheduler.getDivergence() != null) {
+            throw new IllegalStateException(
+                    "The replay did not follow the schedule: " +
+                            scheduler.getDivergence());
+        }
+    }
+
+
+    private ControlledScheduler runSchedule(int prefix[], Random random,
+                                            String description)
+            throws Throwable {
+        TestRunnable runners[] = this.scenario.createRunners();
+        ControlledScheduler scheduler = new ControlledScheduler(
+                runners.length, prefix, random);
+        MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(runners);
+        mttr.setControlledScheduler(scheduler);
+        try {
+            mttr.runTestRunnables(this.maxTime);
+            this.scenario.verify();
+        } catch (Throwable t) {
+            AssertionError ae = new AssertionError("Failed under schedule \"" +
+                    scheduler.getSchedule() + "\" (" + description +
+                    "): " + t);
+            ae.initCause(t);
+            throw ae;
+        }
+        return scheduler;
+    }
+
+
+    /**
+     * Backtracks to the latest pick which has an untried choice within
+     * the preemption bound, and returns the picks up to and including that
+     * choice; or <tt>null</tt> once every schedule was tried.
+     */
+    private static int[] nextPrefix(ControlledScheduler scheduler,
+                                    int maxPreemptions) {
+        int steps = scheduler.getStepCount();
+        int preemptions[] = new int[steps + 1];
+        for (int i = 0; i < steps; ++i) {
+            preemptions[i + 1] = preemptions[i] +
+                    (ControlledScheduler.isPreemption(
+                            scheduler.getWaiting(i), scheduler.getCurrent(i),
+                            scheduler.getPicked(i)) ? 1 : 0);
+        }
+        for (int i = steps; --i >= 0; ) {
+            boolean waiting[] = scheduler.getWaiting(i);
+            int current = scheduler.getCurrent(i);
+            int choices[] = ControlledScheduler.getChoices(waiting, current);
+            int picked = scheduler.getPicked(i);
+            int pos = 0;
+            while (choices[pos] != picked) {
+                ++pos;
+            }
+            for (int c = pos + 1; c < choices.length; ++c) {
+                int cost = ControlledScheduler.isPreemption(waiting, current,
+                        choices[c]) ? 1 : 0;
+                if (preemptions[i] + cost <= maxPreemptions) {
+                    int ret[] = new int[i + 1];
+                    for (int j = 0; j < i; ++j) {
+                        ret[j] = scheduler.getPicked(j);
+                    }
+                    ret[i] = choices[c];
+                    return ret;
+                }
+            }
+        }
+        return null;
+    }
+}
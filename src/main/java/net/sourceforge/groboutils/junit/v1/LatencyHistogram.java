@@ -0,0 +1,256 @@
+/*
+ * @(#)LatencyHistogram.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.io.Serializable;
+
+
+/**
+ * A log-linear bucketed histogram of latencies, in nanoseconds.  Values
+ * below 32 are counted exactly; above that, each power of two is split
+ * into 32 equal buckets, so any reported value is within about 3% of the
+ * recorded one.  Values of 2<sup>40</sup> ns (about 18 minutes) or more
+ * share the last bucket, though the maximum is always tracked exactly.
+ * <p>
+ * Recording takes no lock and allocates nothing, so each runner thread
+ * should own its own instance; instances are then combined with
+ * <tt>add()</tt> once the recording threads are done.  Instances are not
+ * safe for concurrent use.
+ *
+ * @since 5.0.0
+ */
+public final class LatencyHistogram implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 39;
+    private static final int BUCKET_COUNT =
+            (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final long counts[] = new long[BUCKET_COUNT];
+    private long totalCount = 0l;
+    private long totalValue = 0l;
+    private long minValue = Long.MAX_VALUE;
+    private long maxValue = 0l;
+
+
+    /**
+     * Records a single latency.  Negative values, which can only come from
+     * a misbehaving clock, are recorded as zero.
+     *
+     * @param nanos the latency to record.
+     */
+    public void record(long nanos) {
+        if (nanos < 0l) {
+            nanos = 0l;
+        }
+        ++this.counts[bucketIndex(nanos)];
+        ++this.totalCount;
+        this.totalValue += nanos;
+        if (nanos < this.minValue) {
+            this.minValue = nanos;
+        }
+        if (nanos > this.maxValue) {
+            this.maxValue = nanos;
+        }
+    }
+
+
+    /**
+     * Adds all the recorded values of another histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            this.counts[i] += other.counts[i];
+        }
+        this.totalCount += other.totalCount;
+        this.totalValue += other.totalValue;
+        this.minValue = Math.min(this.minValue, other.minValue);
+        this.maxValue = Math.max(this.maxValue, other.maxValue);
+    }
+
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            this.counts[i] = 0l;
+        }
+        this.totalCount = 0l;
+        this.totalValue = 0l;
+        this.minValue = Long.MAX_VALUE;
+        this.maxValue = 0l;
+    }
+
+
+    /**
+     * @return a new histogram with the same recorded values.
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram ret = new LatencyHistogram();
+        ret.add(this);
+        return ret;
+    }
+
+
+    /**
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return this.totalCount;
+    }
+
+
+    /**
+     * @return the smallest recorded value, or 0 if nothing was recorded.
+     */
+    public long getMin() {
+        return this.totalCount == 0l ? 0l : this.minValue;
+    }
+
+
+    /**
+     * @return the largest recorded value, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return this.maxValue;
+    }
+
+
+    /**
+     * @return the mean of the recorded values, or 0 if nothing was
+     * recorded.
+     */
+    public double getMean() {
+        return this.totalCount == 0l ? 0.0 :
+                (double) this.totalValue / this.totalCount;
+    }
+
+
+    /**
+     * Returns the value at or below which the given percentage of the
+     * recorded values fall.  The result is the highest value that shares
+     * a bucket with that recorded value, but never more than the recorded
+     * maximum.
+     *
+     * @param percentile a percentage, from 0 to 100.
+     * @return the value at the percentile, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException(
+                    "percentile must be between 0 and 100");
+        }
+        if (this.totalCount == 0l) {
+            return 0l;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * this.totalCount);
+        if (rank < 1l) {
+            rank = 1l;
+        }
+        long seen = 0l;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                if (i == BUCKET_COUNT - 1) {
+                    // the overflow bucket has no upper bound.
+                    return this.maxValue;
+                }
+                return Math.min(highestValueInBucket(i), this.maxValue);
+            }
+        }
+        return this.maxValue;
+    }
+
+
+    /**
+     * @return the median.
+     */
+    public long getP50() {
+        return getValueAtPercentile(50.0);
+    }
+
+
+    /**
+     * @return the 90th percentile.
+     */
+    public long getP90() {
+        return getValueAtPercentile(90.0);
+    }
+
+
+    /**
+     * @return the 99th percentile.
+     */
+    public long getP99() {
+        return getValueAtPercentile(99.0);
+    }
+
+
+    /**
+     * @return the 99.9th percentile.
+     */
+    public long getP999() {
+        return getValueAtPercentile(99.9);
+    }
+
+
+    public String toString() {
+        return "LatencyHistogram[count=" + getCount() +
+                ", p50=" + getP50() + "ns" +
+                ", p90=" + getP90() + "ns" +
+                ", p99=" + getP99() + "ns" +
+                ", p99.9=" + getP999() + "ns" +
+                ", max=" + getMax() + "ns]";
+    }
+
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+
+    static long highestValueInBucket(int index) {
+        int group = index >>> SUB_BUCKET_BITS;
+        if (group == 0) {
+            return index;
+        }
+        int shift = group - 1;
+        long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+        return ((subBucket + 1l) << shift) - 1l;
+    }
+}
@@ -0,0 +1,724 @@
+/*
+ * @(#)LinearizabilityChecker.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Checks that the operations recorded in an <tt>OperationHistory</tt>
+ * are linearizable: that each could have taken effect at a single point
+ * between its invocation and its return, in an order that the
+ * <tt>SequentialModel</tt> allows.  Not throwing an exception under
+ * concurrent load says little about a concurrent queue or map; this says
+ * whether every result it returned was one it could have returned.
+ * <p>
+ * The search is the Wing and Gong algorithm as improved by Lowe: it
+ * tries to linearize, in turn, each operation which was invoked before
+ * the earliest pending return, and backtracks when an operation's return
+ * is reached before it could be linearized.  Each combination of state
+ * and linearized operations is only searched once, and the model prunes
+ * any operation whose result is impossible from the current state.  A
+ * partitioned model checks each part on its own.
+ * <p>
+ * An operation which never completed, such as one that threw or was cut
+ * short by the end of the run, may or may not have taken effect.  As in
+ * the original algorithm, it counts as returning after every completed
+ * operation, with an unknown result: the search may linearize it
+ * anywhere after its invocation, or leave it out.  The search keeps every
+ * state on its current path, so a model of a large collection should
+ * share structure between its states rather than copy them.
+ * <p>
+ * The history is checked one segment at a time.  The operations up to a
+ * quiescent point, where every operation invoked so far has returned,
+ * are a prefix of every possible linearization, so the segment between
+ * two such points only depends on the state that the segments before it
+ * left.  The checker searches each segment from such a state, and goes
+ * on to the next with the state its first linearization ends in.  Only
+ * when a segment cannot be linearized from that state does it go back
+ * for another state the segments before may end in, and it never
+ * searches a segment twice from the same state.  A violation so fails
+ * within its own segment, once every state that can reach it is tried,
+ * rather than after backtracking through every interleaving of the whole
+ * history; the checker reports that segment's operations, focused on the
+ * operation which the search could not linearize.  A stretch of history
+ * with no quiescent point, such as while a runner is stalled inside an
+ * operation, is still searched as a whole.
+ *
+ * @since 5.0.0
+ */
+public class LinearizabilityChecker {
+    private static final Object TIMED_OUT = new Object();
+    private static final int DEADLINE_CHECK_MASK = 0x3ff;
+    private static final int MAX_REPORTED_OPERATIONS = 32;
+
+    private final SequentialModel model;
+    private long maxTimeNanos = 0l;
+
+
+    public LinearizabilityChecker(SequentialModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("no null model");
+        }
+        this.model = model;
+    }
+
+
+    /**
+     * Sets the time limit for a check, after which it gives up.  The
+     * search is exponential in the worst case, such as when many
+     * operations are concurrent with one that can't be linearized.  By
+     * default, there is no limit.
+     */
+    public void setMaxTime(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                    "time limit must be positive");
+        }
+        this.maxTimeNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+
+    /**
+     * Checks the operations of the history, completed or not.  Call this
+     * only once the runners which recorded them have ended.
+     */
+    public LinearizabilityResult check(OperationHistory history) {
+        long start = System.nanoTime();
+        long deadline = this.maxTimeNanos > 0l ?
+                start + this.maxTimeNanos : 0l;
+        Operations parts[] = partition(history);
+        long count = 0l;
+        for (int i = 0; i < parts.length; ++i) {
+            count += parts[i].size;
+        }
+        for (int i = 0; i < parts.length; ++i) {
+            Operations ops = parts[i];
+            int cuts[] = ops.getQuiescentCuts();
+            Segment segments[] = new Segment[cuts.length];
+            Set tried[] = new Set[cuts.length];
+            segments[0] = new Segment(ops, 0, cuts[0]);
+            segments[0].start(this.model.initialState());
+            int k = 0;
+            boolean linearizable = false;
+            while (true) {
+                Object end = segments[k].nextEnd(deadline);
+                if (end == TIMED_OUT) {
+                    return new LinearizabilityResult(count, parts.length,
+                            System.nanoTime() - start, true, null, 0);
+                }
+                if (end == null) {
+                    if (k == 0) {
+                        break;
+                    }
+                    // go back for another state to search this one from.
+                    --k;
+                    continue;
+                }
+                if (k + 1 == cuts.length) {
+                    linearizable = true;
+                    break;
+                }
+                if (segments[k + 1] == null) {
+                    segments[k + 1] = new Segment(ops, cuts[k], cuts[k + 1]);
+                    tried[k + 1] = new HashSet();
+                }
+                // a state the next segment was already searched from has
+                // led nowhere.
+                if (tried[k + 1].add(end)) {
+                    segments[k + 1].start(end);
+                    ++k;
+                }
+            }
+            if (!linearizable) {
+                // the furthest segment with no linearization, from a
+                // state the segments before it may have left, is where
+                // the history went wrong.
+                Segment failed = segments[0];
+                for (int s = segments.length; --s > 0; ) {
+                    if (segments[s] != null && segments[s].failed) {
+                        failed = segments[s];
+                        break;
+                    }
+                }
+                List violation = new ArrayList();
+                String report = describeViolation(history, ops,
+                        parts.length > 1, failed.begin, failed.end,
+                        failed.frontier.operation, violation);
+                return new LinearizabilityResult(count, parts.length,
+                        System.nanoTime() - start, false, report,
+                        violation.size());
+            }
+        }
+        return new LinearizabilityResult(count, parts.length,
+                System.nanoTime() - start, false, null, 0);
+    }
+
+
+    /**
+     * Splits the operations by the part they work on, each sorted by
+     * invocation time.
+     */
+    private Operations[] partition(OperationHistory history) {
+        List all = new ArrayList();
+        boolean partitioned = true;
+        for (int t = 0; t < history.getThreadCount(); ++t) {
+            HistoryRecorder recorder = history.getRecorder(t);
+            for (int slot = 0; slot < recorder.size(); ++slot) {
+                all.add(new Operation(recorder, slot));
+                partitioned = partitioned && this.model.partition(
+                        recorder.getOperation(slot),
+                        recorder.getArgument(slot)) != null;
+            }
+        }
+        if (!partitioned) {
+            return new Operations[]{new Operations(null, all)};
+        }
+        Map parts = new LinkedHashMap();
+        Iterator iter = all.iterator();
+        while (iter.hasNext()) {
+            Operation op = (Operation) iter.next();
+            Object key = this.model.partition(op.operation, op.argument);
+            List part = (List) parts.get(key);
+            if (part == null) {
+                part = new ArrayList();
+                parts.put(key, part);
+            }
+            part.add(op);
+        }
+        Operations ret[] = new Operations[parts.size()];
+        int pos = 0;
+        iter = parts.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            ret[pos++] = new Operations(entry.getKey(),
+                    (List) entry.getValue());
+        }
+        return ret;
+    }
+
+
+    /**
+     * Describes the operations of a segment which cannot follow the
+     * segments before it.
+     */
+    private String describeViolation(OperationHistory history,
+                                     Operations ops, boolean partitioned,
+                                     int begin, int end, int stuck,
+                                     List violation) {
+        // report the whole segment if it is small, otherwise the
+        // operations which overlapped the one that could not be
+        // linearized.
+        for (int i = begin; i < end; ++i) {
+            if (end - begin <= MAX_REPORTED_OPERATIONS || i == stuck ||
+                    (stuck >= 0 && ops.overlap(i, stuck))) {
+                violation.add(Integer.valueOf(i));
+            }
+        }
+        long origin = ops.invokeNanos[0];
+        StringBuffer sb = new StringBuffer();
+        sb.append(describeFailure(ops, partitioned));
+        sb.append(": operations ").append(begin + 1).append(" to ").append(
+                end).append(" of ").append(ops.size).append(
+                " (in invocation order) cannot follow the ").append(
+                begin).append(" before them");
+        if (violation.size() < end - begin) {
+            sb.append("; showing the ").append(violation.size()).append(
+                    " overlapping the operation which could not be" +
+                            " linearized");
+        }
+        sb.append(':');
+        Iterator iter = violation.iterator();
+        while (iter.hasNext()) {
+            int i = ((Integer) iter.next()).intValue();
+            sb.append("\n  ").append(i == stuck ? "* " : "  ").append(
+                    "thread ").append(ops.threads[i]).append(": ").append(
+                    history.getOperationName(ops.operations[i])).append(
+                    '(').append(format(ops.arguments[i])).append(
+                    ") -> ").append(ops.pending[i] ? "?" :
+                    format(ops.results[i])).append("  [+").append(
+                    (ops.invokeNanos[i] - origin) / 1000l).append("us, ");
+            if (ops.pending[i]) {
+                sb.append("pending]");
+            } else {
+                sb.append('+').append((ops.returnNanos[i] - origin) / 1000l)
+                        .append("us]");
+            }
+        }
+        return sb.toString();
+    }
+
+
+    private static String describeFailure(Operations ops,
+                                          boolean partitioned) {
+        return "History is not linearizable" +
+                (partitioned ? " for partition " + ops.key : "");
+    }
+
+
+    private static String format(Object value) {
+        if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value).toString();
+        }
+        return String.valueOf(value);
+    }
+
+
+    private static void unlink(int next[], int prev[], int node) {
+        int p = prev[node];
+        int n = next[node];
+        next[p] = n;
+        if (n != -1) {
+            prev[n] = p;
+        }
+    }
+
+
+    private static void relink(int next[], int prev[], int node) {
+        int p = prev[node];
+        int n = next[node];
+        next[p] = node;
+        if (n != -1) {
+            prev[n] = node;
+        }
+    }
+
+
+    /**
+     * One operation, while gathering the history.
+     */
+    private static final class Operation {
+        final int thread;
+        final int operation;
+        final Object argument;
+        final Object result;
+        final long invokeNanos;
+        final long returnNanos;
+        final boolean pending;
+
+
+        Operation(HistoryRecorder recorder, int slot) {
+            this.thread = recorder.getThread();
+            this.operation = recorder.getOperation(slot);
+            this.argument = recorder.getArgument(slot);
+            this.pending = !recorder.isCompleted(slot);
+            this.result = this.pending ? SequentialModel.UNKNOWN_RESULT :
+                    recorder.getResult(slot);
+            this.invokeNanos = recorder.getInvokeNanos(slot);
+            this.returnNanos = recorder.getReturnNanos(slot);
+        }
+    }
+
+
+    /**
+     * The operations of one partition, in invocation order, in arrays for
+     * the search.
+     */
+    private static final class Operations {
+        final Object key;
+        final int size;
+        final int threads[];
+        final int operations[];
+        final Object arguments[];
+        final Object results[];
+        final long invokeNanos[];
+        final long returnNanos[];
+        final boolean pending[];
+        private int returnOrder[];
+
+
+        Operations(Object key, List list) {
+            Operation sorted[] = (Operation[]) list.toArray(
+                    new Operation[list.size()]);
+            Arrays.sort(sorted, new Comparator() {
+                public int compare(Object a, Object b) {
+                    return compareNanos(((Operation) a).invokeNanos,
+                            ((Operation) b).invokeNanos);
+                }
+            });
+            this.key = key;
+            this.size = sorted.length;
+            this.threads = new int[this.size];
+            this.operations = new int[this.size];
+            this.arguments = new Object[this.size];
+            this.results = new Object[this.size];
+            this.invokeNanos = new long[this.size];
+            this.returnNanos = new long[this.size];
+            this.pending = new boolean[this.size];
+            for (int i = 0; i < this.size; ++i) {
+                this.threads[i] = sorted[i].thread;
+                this.operations[i] = sorted[i].operation;
+                this.arguments[i] = sorted[i].argument;
+                this.results[i] = sorted[i].result;
+                this.invokeNanos[i] = sorted[i].invokeNanos;
+                this.returnNanos[i] = sorted[i].returnNanos;
+                this.pending[i] = sorted[i].pending;
+            }
+        }
+
+
+        /**
+         * @return <tt>true</tt> if the two operations were in progress
+         * at the same time.
+         */
+        boolean overlap(int a, int b) {
+            return (this.pending[b] ||
+                    this.invokeNanos[a] - this.returnNanos[b] <= 0l) &&
+                    (this.pending[a] ||
+                            this.invokeNanos[b] - this.returnNanos[a] <= 0l);
+        }
+
+
+        /**
+         * @return the ends of the segments between quiescent points, at
+         * which every operation invoked so far has returned, in order;
+         * the last is the end of the history.
+         */
+        int[] getQuiescentCuts() {
+            int cuts[] = new int[this.size];
+            int cutCount = 0;
+            long lastReturn = Long.MIN_VALUE;
+            boolean open = false;
+            for (int k = 1; k <= this.size; ++k) {
+                // nothing after a pending operation is quiescent.
+                open = open || this.pending[k - 1];
+                if (!open) {
+                    lastReturn = Math.max(lastReturn,
+                            this.returnNanos[k - 1]);
+                }
+                if (k == this.size || (!open &&
+                        lastReturn - this.invokeNanos[k] < 0l)) {
+                    cuts[cutCount++] = k;
+                }
+            }
+            int ret[] = new int[cutCount];
+            System.arraycopy(cuts, 0, ret, 0, cutCount);
+            return ret;
+        }
+
+
+        /**
+         * @return the operation indexes in return order, with the
+         * pending operations last.
+         */
+        int[] getReturnOrder() {
+            if (this.returnOrder == null) {
+                Integer order[] = new Integer[this.size];
+                for (int i = 0; i < this.size; ++i) {
+                    order[i] = Integer.valueOf(i);
+                }
+                Arrays.sort(order, new Comparator() {
+                    public int compare(Object a, Object b) {
+                        int i = ((Integer) a).intValue();
+                        int j = ((Integer) b).intValue();
+                        if (pending[i] || pending[j]) {
+                            return pending[i] == pending[j] ? 0 :
+                                    (pending[i] ? 1 : -1);
+                        }
+                        return compareNanos(returnNanos[i], returnNanos[j]);
+                    }
+                });
+                this.returnOrder = new int[this.size];
+                for (int i = 0; i < this.size; ++i) {
+                    this.returnOrder[i] = order[i].intValue();
+                }
+            }
+            return this.returnOrder;
+        }
+
+
+        private static int compareNanos(long a, long b) {
+            long diff = a - b;
+            return diff < 0l ? -1 : (diff == 0l ? 0 : 1);
+        }
+    }
+
+
+    /**
+     * The search for linearizations of the operations between two
+     * quiescent points, from one state at a time.  The pending calls and
+     * returns are kept in a doubly linked list, in time order, from which
+     * linearized operations are unlinked, and relinked when backtracking.
+     * The returns of pending operations come last, so a linearization is
+     * found once every completed operation is linearized.  Each search
+     * stops at a linearization, and goes on from there for the next
+     * state it may end in; the states already reached stay known to it,
+     * whatever state it started from.
+     */
+    private final class Segment {
+        final int begin;
+        final int end;
+        final Frontier frontier = new Frontier();
+        boolean failed = false;
+        private final Operations ops;
+        private final int count;
+        private final int completed;
+        private final int head;
+        private final int nodeOp[];
+        private final boolean nodeCall[];
+        private final int callNode[];
+        private final int returnNode[];
+        private final int next[];
+        private final int prev[];
+        private final BitSet linearized;
+        private final Set seen = new HashSet();
+        private final int stackOp[];
+        private final Object stackState[];
+        private int depth;
+        private int remaining;
+        private Object state;
+        private int entry;
+        private boolean atEnd;
+        private boolean ended;
+        private long steps = 0l;
+
+
+        Segment(Operations ops, int begin, int end) {
+            this.ops = ops;
+            this.begin = begin;
+            this.end = end;
+            this.count = end - begin;
+            int nodes = this.count * 2;
+            this.head = nodes;
+            this.nodeOp = new int[nodes];
+            this.nodeCall = new boolean[nodes];
+            this.callNode = new int[this.count];
+            this.returnNode = new int[this.count];
+
+            // merge the calls, already in order, with the returns; a call
+            // at the same time as a return goes first, as the two may
+            // have overlapped.  Nothing in the segment returns before an
+            // earlier segment's operation, nor after a later one's, so
+            // its returns take the same places in the return order.
+            int c = begin;
+            int r = begin;
+            int done = 0;
+            int returnOrder[] = ops.getReturnOrder();
+            for (int n = 0; n < nodes; ++n) {
+                int ret = returnOrder[r];
+                if (c < end && (ops.pending[ret] ||
+                        ops.invokeNanos[c] - ops.returnNanos[ret] <= 0l)) {
+                    if (!ops.pending[c]) {
+                        ++done;
+                    }
+                    this.nodeOp[n] = c - begin;
+                    this.nodeCall[n] = true;
+                    this.callNode[c - begin] = n;
+                    ++c;
+                } else {
+                    this.nodeOp[n] = ret - begin;
+                    this.nodeCall[n] = false;
+                    this.returnNode[ret - begin] = n;
+                    ++r;
+                }
+            }
+            this.completed = done;
+            this.next = new int[nodes + 1];
+            this.prev = new int[nodes + 1];
+            for (int n = 0; n < nodes; ++n) {
+                this.prev[n] = n == 0 ? this.head : n - 1;
+                this.next[n] = n + 1 < nodes ? n + 1 : -1;
+            }
+            this.next[this.head] = nodes > 0 ? 0 : -1;
+            this.prev[this.head] = -1;
+            this.linearized = new BitSet(this.count);
+            this.stackOp = new int[this.count];
+            this.stackState = new Object[this.count];
+        }
+
+
+        /**
+         * Starts the search over from another state.  A search is only
+         * started over once it ran out of linearizations, which leaves
+         * the list and the stack as they were built.
+         */
+        void start(Object from) {
+            this.depth = 0;
+            this.remaining = this.completed;
+            this.state = from;
+            this.entry = this.next[this.head];
+            this.atEnd = false;
+            this.ended = false;
+        }
+
+
+        /**
+         * @return the state the next linearization ends in, <tt>null</tt>
+         * if there are no more, or <tt>TIMED_OUT</tt>.
+         */
+        Object nextEnd(long deadline) {
+            int next[] = this.next;
+            int prev[] = this.prev;
+            if (deadline != 0l && System.nanoTime() - deadline > 0l) {
+                return TIMED_OUT;
+            }
+            while (true) {
+                if (deadline != 0l &&
+                        (++this.steps & DEADLINE_CHECK_MASK) == 0l &&
+                        System.nanoTime() - deadline > 0l) {
+                    return TIMED_OUT;
+                }
+                if (this.remaining == 0 && !this.atEnd) {
+                    this.atEnd = true;
+                    this.ended = true;
+                    return this.state;
+                }
+                if (this.remaining == 0) {
+                    // go on past the linearization already returned.
+                    this.atEnd = false;
+                } else if (this.nodeCall[this.entry]) {
+                    int op = this.nodeOp[this.entry];
+                    int i = op + this.begin;
+                    Object after = model.step(this.state,
+                            this.ops.operations[i], this.ops.arguments[i],
+                            this.ops.results[i]);
+                    if (after != null) {
+                        // an operation which was the only one that could
+                        // go next leads to no other branch worth
+                        // remembering.
+                        boolean forced = this.entry == next[this.head] &&
+                                next[this.entry] == this.returnNode[op];
+                        this.linearized.set(op);
+                        unlink(next, prev, this.callNode[op]);
+                        unlink(next, prev, this.returnNode[op]);
+                        // with only returns left, every call is
+                        // linearized.
+                        int first = next[this.head];
+                        if (forced || this.seen.add(new SearchKey(after,
+                                first == -1 || !this.nodeCall[first] ?
+                                        this.count : this.nodeOp[first],
+                                this.linearized))) {
+                            this.stackOp[this.depth] = op;
+                            this.stackState[this.depth] = this.state;
+                            ++this.depth;
+                            this.state = after;
+                            this.entry = first;
+                            if (!this.ops.pending[i]) {
+                                --this.remaining;
+                            }
+                            continue;
+                        }
+                        relink(next, prev, this.returnNode[op]);
+                        relink(next, prev, this.callNode[op]);
+                        this.linearized.clear(op);
+                    }
+                    this.entry = next[this.entry];
+                    continue;
+                } else {
+                    // this operation returned before it could be
+                    // linearized, so an earlier choice was wrong.  The
+                    // returns of pending operations only come once every
+                    // completed one is done, so this is always a
+                    // completed operation.
+                    this.frontier.reached(this.depth,
+                            this.nodeOp[this.entry] + this.begin);
+                }
+                if (this.depth == 0) {
+                    this.failed = this.failed || !this.ended;
+                    return null;
+                }
+                --this.depth;
+                int op = this.stackOp[this.depth];
+                this.state = this.stackState[this.depth];
+                this.stackState[this.depth] = null;
+                if (!this.ops.pending[op + this.begin]) {
+                    ++this.remaining;
+                }
+                this.linearized.clear(op);
+                relink(next, prev, this.returnNode[op]);
+                relink(next, prev, this.callNode[op]);
+                this.entry = next[this.callNode[op]];
+            }
+        }
+    }
+
+
+    /**
+     * A state reached with a set of operations linearized.  All the
+     * operations invoked before the first pending one are linearized, so
+     * only the linearized operations after it need to be kept.
+     */
+    private static final class SearchKey {
+        private final Object state;
+        private final int firstPending;
+        private final BitSet later;
+        private final int hash;
+
+
+        SearchKey(Object state, int firstPending, BitSet linearized) {
+            this.state = state;
+            this.firstPending = firstPending;
+            this.later = linearized.get(firstPending + 1,
+                    Math.max(firstPending + 1, linearized.length()));
+            this.hash = (state.hashCode() * 31 + firstPending) * 31 +
+                    this.later.hashCode();
+        }
+
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+
+        public boolean equals(Object o) {
+            if (!(o instanceof SearchKey)) {
+                return false;
+            }
+            SearchKey k = (SearchKey) o;
+            return this.hash == k.hash &&
+                    this.firstPending == k.firstPending &&
+                    this.later.equals(k.later) && this.state.equals(k.state);
+        }
+    }
+
+
+    /**
+     * Tracks the operation which the search failed to linearize with the
+     * most operations already linearized.
+     */
+    private static final class Frontier {
+        int depth = -1;
+        int operation = -1;
+
+
+        void reached(int d, int op) {
+            if (d > this.depth) {
+                this.depth = d;
+                this.operation = op;
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * @(#)LinearizabilityResult.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import org.junit.Assert;
+
+
+/**
+ * The outcome of a <tt>LinearizabilityChecker</tt> check of an
+ * <tt>OperationHistory</tt>.
+ *
+ * @since 5.0.0
+ */
+public final class LinearizabilityResult {
+    private final long operationCount;
+    private final int partitionCount;
+    private final long checkNanos;
+    private final boolean timedOut;
+    private final String violation;
+    private final int violationSize;
+
+
+    LinearizabilityResult(long operationCount, int partitionCount,
+                          long checkNanos, boolean timedOut,
+                          String violation, int violationSize) {
+        this.operationCount = operationCount;
+        this.partitionCount = partitionCount;
+        this.checkNanos = checkNanos;
+        this.timedOut = timedOut;
+        this.violation = violation;
+        this.violationSize = violationSize;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the whole history was found linearizable.
+     */
+    public boolean isLinearizable() {
+        return !this.timedOut && this.violation == null;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the check ran out of time before it could
+     * decide.
+     */
+    public boolean isTimedOut() {
+        return this.timedOut;
+    }
+
+
+    /**
+     * @return the number of operations checked, completed or pending.
+     */
+    public long getOperationCount() {
+        return this.operationCount;
+    }
+
+
+    /**
+     * @return the number of parts the history was checked in, as
+     * given by <tt>SequentialModel.partition()</tt>.
+     */
+    public int getPartitionCount() {
+        return this.partitionCount;
+    }
+
+
+    public long getCheckNanos() {
+        return this.checkNanos;
+    }
+
+
+    /**
+     * @return a description of the segment between quiescent points
+     * which cannot follow the ones before it, or <tt>null</tt> if the
+     * history is linearizable or the check timed out.
+     */
+    public String getViolation() {
+        return this.violation;
+    }
+
+
+    /**
+     * @return the number of operations in the reported violation, or 0.
+     */
+    public int getViolationSize() {
+        return this.violationSize;
+    }
+
+
+    /**
+     * Fails unless the history was found linearizable.
+     */
+    public void assertLinearizable() {
+        if (this.violation != null) {
+            Assert.fail(this.violation);
+        }
+        if (this.timedOut) {
+            Assert.fail("Gave up checking " + this.operationCount +
+                    " operations for linearizability after " +
+                    (this.checkNanos / 1000000l) + " ms.");
+        }
+    }
+
+
+    public String toString() {
+        return "LinearizabilityResult[operations=" + this.operationCount +
+                ", partitions=" + this.partitionCount +
+                ", check=" + this.checkNanos + "ns" +
+                (this.timedOut ? ", timed out" : "") +
+                (this.violation == null ? "" : ", violation of " +
+                        this.violationSize + " operation(s)") + "]";
+    }
+}
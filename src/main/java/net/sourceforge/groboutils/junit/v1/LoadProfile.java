@@ -0,0 +1,236 @@
+/*
+ * @(#)LoadProfile.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * How many of a <tt>MultiThreadedTestRunner</tt>'s runners are active at
+ * each point of a run, so that the load can ramp up, step up, hold and
+ * drain within a single run (see
+ * <tt>MultiThreadedTestRunner.setLoadProfile()</tt>).  Together with
+ * per-window metrics, this shows at what load a component tips over, and
+ * how it recovers.
+ * <p>
+ * A profile is a sequence of phases, each starting at the number of
+ * runners the previous one ended with:
+ * <pre>
+ *     LoadProfile profile = new LoadProfile();
+ *     profile.rampTo( 4, 10000 );          // 0 to 4 runners over 10 s
+ *     profile.stepTo( 16, 4, 5000 );       // 4 more runners every 5 s
+ *     profile.hold( 10000 );
+ *     profile.rampTo( 0, 5000 );           // drain
+ * </pre>
+ * Runners are activated in index order, and deactivated in reverse
+ * order.  Levels above the number of runners use all of them.
+ *
+ * @since 5.0.0
+ */
+public final class LoadProfile {
+    private Phase phases[] = new Phase[0];
+    private int level;
+    private long durationNanos = 0l;
+
+
+    /**
+     * Starts with no active runner.
+     */
+    public LoadProfile() {
+        this(0);
+    }
+
+
+    /**
+     * @param initialRunners the number of runners active at the start.
+     */
+    public LoadProfile(int initialRunners) {
+        if (initialRunners < 0) {
+            throw new IllegalArgumentException(
+                    "runner count must be non-negative");
+        }
+        this.level = initialRunners;
+    }
+
+
+    /**
+     * Changes the number of active runners linearly over the given time.
+     */
+    public void rampTo(int runners, long millis) {
+        checkPhase(runners, millis);
+        addPhase(new Phase(this.durationNanos, toNanos(millis), this.level,
+                runners, 0, 0l));
+    }
+
+
+    /**
+     * Changes the number of active runners in steps of the given size,
+     * the first one right away, each held for the given time.
+     */
+    public void stepTo(int runners, int stepSize, long stepMillis) {
+        checkPhase(runners, stepMillis);
+        if (stepSize <= 0) {
+            throw new IllegalArgumentException(
+                    "step size must be positive");
+        }
+        int distance = Math.abs(runners - this.level);
+        int steps = (distance + stepSize - 1) / stepSize;
+        long stepNanos = toNanos(stepMillis);
+        addPhase(new Phase(this.durationNanos, steps * stepNanos,
+                this.level, runners, stepSize, stepNanos));
+    }
+
+
+    /**
+     * Keeps the number of active runners for the given time.
+     */
+    public void hold(long millis) {
+        checkPhase(this.level, millis);
+        addPhase(new Phase(this.durationNanos, toNanos(millis), this.level,
+                this.level, 0, 0l));
+    }
+
+
+    /**
+     * @return the length of the whole profile, in milliseconds.
+     */
+    public long getDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(this.durationNanos);
+    }
+
+
+    long getDurationNanos() {
+        return this.durationNanos;
+    }
+
+
+    /**
+     * @return the number of active runners at the given time since the
+     * start of the profile.
+     */
+    int getActiveRunners(long elapsedNanos) {
+        Phase all[] = this.phases;
+        for (int i = 0; i < all.length; ++i) {
+            if (elapsedNanos - (all[i].startNanos + all[i].lengthNanos) < 0l) {
+                return all[i].getLevel(elapsedNanos - all[i].startNanos);
+            }
+        }
+        return this.level;
+    }
+
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer("LoadProfile[");
+        for (int i = 0; i < this.phases.length; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(this.phases[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+
+    private void checkPhase(int runners, long millis) {
+        if (runners < 0) {
+            throw new IllegalArgumentException(
+                    "runner count must be non-negative");
+        }
+        if (millis <= 0) {
+            throw new IllegalArgumentException("time must be positive");
+        }
+    }
+
+
+    private void addPhase(Phase phase) {
+        Phase grown[] = new Phase[this.phases.length + 1];
+        System.arraycopy(this.phases, 0, grown, 0, this.phases.length);
+        grown[this.phases.length] = phase;
+        this.phases = grown;
+        this.level = phase.to;
+        this.durationNanos += phase.lengthNanos;
+    }
+
+
+    private static long toNanos(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+
+    /**
+     * One ramp, series of steps, or hold.
+     */
+    private static final class Phase {
+        final long startNanos;
+        final long lengthNanos;
+        final int from;
+        final int to;
+        final int stepSize;
+        final long stepNanos;
+
+
+        Phase(long startNanos, long lengthNanos, int from, int to,
+              int stepSize, long stepNanos) {
+            this.startNanos = startNanos;
+            this.lengthNanos = lengthNanos;
+            this.from = from;
+            this.to = to;
+            this.stepSize = stepSize;
+            this.stepNanos = stepNanos;
+        }
+
+
+        int getLevel(long offsetNanos) {
+            if (this.from == this.to) {
+                return this.to;
+            }
+            if (this.stepSize > 0) {
+                long step = offsetNanos / this.stepNanos + 1l;
+                int change = (int) Math.min(step * this.stepSize,
+                        Math.abs(this.to - this.from));
+                return this.to > this.from ? this.from + change :
+                        this.from - change;
+            }
+            return this.from + (int) Math.round((double) (this.to -
+                    this.from) * offsetNanos / this.lengthNanos);
+        }
+
+
+        public String toString() {
+            long millis = TimeUnit.NANOSECONDS.toMillis(this.lengthNanos);
+            if (this.from == this.to) {
+                return "hold " + this.to + " for " + millis + "ms";
+            }
+            if (this.stepSize > 0) {
+                return "step " + this.from + " to " + this.to + " by " +
+                        this.stepSize + " every " +
+                        TimeUnit.NANOSECONDS.toMillis(this.stepNanos) + "ms";
+            }
+            return "ramp " + this.from + " to " + this.to + " over " +
+                    millis + "ms";
+        }
+    }
+}
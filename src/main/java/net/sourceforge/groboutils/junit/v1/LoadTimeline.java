@@ -0,0 +1,158 @@
+/*
+ * @(#)LoadTimeline.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The shared clock of a run which follows a <tt>LoadProfile</tt> or
+ * records its metrics per time window.  The clock starts when the
+ * earliest runner started measuring, after any warmup.
+ * <p>
+ * Each runner times its calls into its own histogram for the current
+ * window, and adds it into the shared window when its next call falls
+ * into a later window, or when it stops.  So the runners only
+ * synchronize once per window, not once per call.
+ *
+ * @since 5.0.0
+ */
+final class LoadTimeline {
+    private final LoadProfile profile;
+    private final long windowNanos;
+    private final AtomicLong startNanos = new AtomicLong();
+    private final List windows = new ArrayList();
+
+
+    /**
+     * @param profile     the load to follow, or <tt>null</tt> to keep all
+     *                    runners active.
+     * @param windowNanos the length of a metrics window, or 0 to not
+     *                    record any.
+     */
+    LoadTimeline(LoadProfile profile, long windowNanos) {
+        this.profile = profile;
+        this.windowNanos = windowNanos;
+    }
+
+
+    /**
+     * Starts the clock at the given time, unless a runner already started
+     * it earlier.  The runners get here in no particular order, so the
+     * earliest start wins, and none of their calls precede the first
+     * window.
+     *
+     * @param now when the calling runner started measuring.
+     */
+    void start(long now) {
+        // 0 marks a clock which has not started; nanoTime() rarely
+        // returns it, and if it does the clock starts a nanosecond late.
+        long when = now == 0l ? 1l : now;
+        while (true) {
+            long current = this.startNanos.get();
+            if (current != 0l && current - when <= 0l) {
+                return;
+            }
+            if (this.startNanos.compareAndSet(current, when)) {
+                return;
+            }
+        }
+    }
+
+
+    long getStartNanos() {
+        return this.startNanos.get();
+    }
+
+
+    LoadProfile getProfile() {
+        return this.profile;
+    }
+
+
+    boolean hasWindows() {
+        return this.windowNanos > 0l;
+    }
+
+
+    int getWindowIndex(long now) {
+        return (int) Math.max(0l,
+                (now - this.startNanos.get()) / this.windowNanos);
+    }
+
+
+    long getWindowEndNanos(int index) {
+        return this.startNanos.get() + (index + 1l) * this.windowNanos;
+    }
+
+
+    /**
+     * Adds a runner's calls for one window into the shared window.
+     */
+    synchronized void addToWindow(int index, LatencyHistogram latency) {
+        while (this.windows.size() <= index) {
+            this.windows.add(new LatencyHistogram());
+        }
+        ((LatencyHistogram) this.windows.get(index)).add(latency);
+    }
+
+
+    /**
+     * Creates the windows from the start of the clock to the end of the
+     * run, including any in which nothing completed.
+     *
+     * @param endNanos    when the last runner stopped.
+     * @param runnerCount the number of runners in the run.
+     */
+    synchronized LoadWindow[] createWindows(long endNanos, int runnerCount) {
+        long start = this.startNanos.get();
+        if (this.windowNanos <= 0l || start == 0l) {
+            return new LoadWindow[0];
+        }
+        long elapsed = Math.max(0l, endNanos - start);
+        int count = (int) Math.max(this.windows.size(),
+                (elapsed + this.windowNanos - 1l) / this.windowNanos);
+        LoadWindow created[] = new LoadWindow[count];
+        for (int i = 0; i < count; ++i) {
+            long offset = i * this.windowNanos;
+            long length = Math.max(0l, Math.min(this.windowNanos,
+                    elapsed - offset));
+            LatencyHistogram latency = i < this.windows.size() ?
+                    (LatencyHistogram) this.windows.get(i) :
+                    new LatencyHistogram();
+            int active = runnerCount;
+            if (this.profile != null) {
+                active = Math.min(runnerCount,
+                        this.profile.getActiveRunners(offset + length / 2l));
+            }
+            created[i] = new LoadWindow(i, offset, length, active,
+                    latency.copy());
+        }
+        return created;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * @(#)LoadWindow.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.io.Serializable;
+
+
+/**
+ * What a run did during one fixed-length time window (see
+ * <tt>MultiThreadedTestRunner.setMetricsWindow()</tt>): how many calls
+ * completed, and how long they took.  Lined up, the windows of a run
+ * which follows a <tt>LoadProfile</tt> show where throughput stops
+ * growing with the load, where latency takes off, and how quickly both
+ * recover once the load drops.
+ * <p>
+ * A call belongs to the window in which it completed.
+ *
+ * @since 5.0.0
+ */
+public final class LoadWindow implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final int index;
+    private final long startNanos;
+    private final long lengthNanos;
+    private final int activeRunners;
+    private final LatencyHistogram latency;
+
+
+    LoadWindow(int index, long startNanos, long lengthNanos,
+               int activeRunners, LatencyHistogram latency) {
+        this.index = index;
+        this.startNanos = startNanos;
+        this.lengthNanos = lengthNanos;
+        this.activeRunners = activeRunners;
+        this.latency = latency;
+    }
+
+
+    /**
+     * @return the position of this window in the run, from 0.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+
+    /**
+     * @return when this window started, in nanoseconds since the start of
+     * the measurements.
+     */
+    public long getStartNanos() {
+        return this.startNanos;
+    }
+
+
+    /**
+     * @return the length of this window in nanoseconds; only the last
+     * window of a run may be shorter than the others.
+     */
+    public long getLengthNanos() {
+        return this.lengthNanos;
+    }
+
+
+    /**
+     * @return the number of runners the load profile had active in the
+     * middle of this window, or all runners if the run had no profile.
+     */
+    public int getActiveRunners() {
+        return this.activeRunners;
+    }
+
+
+    public long getOperationCount() {
+        return this.latency.getCount();
+    }
+
+
+    public double getOperationsPerSecond() {
+        if (this.lengthNanos <= 0l) {
+            return 0.0;
+        }
+        return getOperationCount() * NANOS_PER_SECOND / this.lengthNanos;
+    }
+
+
+    /**
+     * @return the latencies of the calls which completed in this window.
+     * With a target rate, each latency counts from when the call was
+     * scheduled to start.
+     */
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+
+    public String toString() {
+        return "window " + this.index + " @" +
+                (this.startNanos / 1000000l) + "ms: runners=" +
+                this.activeRunners + ", ops=" + getOperationCount() +
+                ", ops/sec=" + Math.round(getOperationsPerSecond()) +
+                ", " + this.latency;
+    }
+}
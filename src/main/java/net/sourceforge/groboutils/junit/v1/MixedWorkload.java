@@ -0,0 +1,224 @@
+/*
+ * @(#)MixedWorkload.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Declares a mixed load on shared state, such as 90% reads, 9% writes
+ * and 1% scans, as groups of runners with weighted operation mixes and
+ * think times, rather than as hand-written <tt>TestRunnable</tt>s:
+ * <pre>
+ *     MixedWorkload workload = new MixedWorkload();
+ *     WorkloadGroup clients = workload.addGroup( "clients", 8 );
+ *     clients.addOperation( "read", 90, read );
+ *     clients.addOperation( "write", 9, write );
+ *     clients.addOperation( "scan", 1, scan );
+ *     clients.setThinkTime( ThinkTime.exponential( 2,
+ *             TimeUnit.MILLISECONDS ) );
+ *
+ *     MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(
+ *             workload.createRunners() );
+ *     mttr.setDuration( 10000 );
+ *     mttr.runTestRunnables( 20000 );
+ *     WorkloadResult result = workload.getResult();
+ * </pre>
+ * Each <tt>runTest()</tt> call of a runner is one operation followed by
+ * its think time, so the usual runner options, such as the duration,
+ * warmup or target rate, apply to the workload.  Each runner picks its
+ * operations with its own <tt>SplitMix64</tt> generator, seeded from the
+ * workload's seed, and times each operation, without its think time,
+ * into its own histogram per operation.
+ *
+ * @since 5.0.0
+ */
+public class MixedWorkload {
+    private final List groups = new ArrayList();
+    private long seed = SplitMix64.createSeed();
+    private WorkloadRunner runners[];
+
+
+    /**
+     * Adds a group of runners.
+     *
+     * @param name        the group's name, which prefixes its operation
+     *                    names in the results.
+     * @param threadCount the number of runners in the group.
+     * @return the group, to add operations to.
+     */
+    public WorkloadGroup addGroup(String name, int threadCount) {
+        if (name == null) {
+            throw new IllegalArgumentException("no null name");
+        }
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException(
+                    "thread count must be positive");
+        }
+        WorkloadGroup group = new WorkloadGroup(name, threadCount);
+        this.groups.add(group);
+        return group;
+    }
+
+
+    /**
+     * Sets the seed from which each runner's generator is seeded, so that
+     * each runner picks the same operations in every run.  By default,
+     * the seed is picked at random.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+
+    /**
+     * Creates the runners of every group, in the order the groups were
+     * added, for a <tt>MultiThreadedTestRunner</tt>.  The results come from
+     * the last runners created.
+     */
+    public TestRunnable[] createRunners() {
+        if (this.groups.isEmpty()) {
+            throw new IllegalStateException("no groups");
+        }
+        List created = new ArrayList();
+        SplitMix64 seeds = new SplitMix64(this.seed);
+        for (int i = 0; i < this.groups.size(); ++i) {
+            WorkloadGroup group = (WorkloadGroup) this.groups.get(i);
+            group.freeze();
+            for (int j = 0; j < group.getThreadCount(); ++j) {
+                created.add(new WorkloadRunner(group, seeds.nextLong()));
+            }
+        }
+        this.runners = (WorkloadRunner[]) created.toArray(
+                new WorkloadRunner[created.size()]);
+        return (TestRunnable[]) this.runners.clone();
+    }
+
+
+    /**
+     * Gathers the operations of the last run, per operation of each
+     * group.  Call this only once the run has ended.
+     */
+    public WorkloadResult getResult() {
+        if (this.runners == null) {
+            throw new IllegalStateException("no runners created");
+        }
+        List names = new ArrayList();
+        List histograms = new ArrayList();
+        long firstStart = Long.MAX_VALUE;
+        long lastEnd = Long.MIN_VALUE;
+        for (int i = 0; i < this.groups.size(); ++i) {
+            WorkloadGroup group = (WorkloadGroup) this.groups.get(i);
+            for (int op = 0; op < group.getOperationCount(); ++op) {
+                LatencyHistogram merged = new LatencyHistogram();
+                for (int r = 0; r < this.runners.length; ++r) {
+                    if (this.runners[r].group == group) {
+                        merged.add(this.runners[r].latency[op]);
+                    }
+                }
+                names.add(group.getName() + '.' +
+                        group.getOperationName(op));
+                histograms.add(merged);
+            }
+        }
+        for (int r = 0; r < this.runners.length; ++r) {
+            firstStart = Math.min(firstStart, this.runners[r].getStartNanos());
+            lastEnd = Math.max(lastEnd, this.runners[r].getEndNanos());
+        }
+        return new WorkloadResult(
+                (String[]) names.toArray(new String[names.size()]),
+                (LatencyHistogram[]) histograms.toArray(
+                        new LatencyHistogram[histograms.size()]),
+                lastEnd - firstStart);
+    }
+
+
+    /**
+     * Runs one group's operation mix.
+     */
+    private static final class WorkloadRunner extends TestRunnable {
+        private final WorkloadGroup group;
+        private final long seed;
+        private final SplitMix64 random;
+        private final LatencyHistogram latency[];
+
+
+        WorkloadRunner(WorkloadGroup group, long seed) {
+            this.group = group;
+            this.seed = seed;
+            this.random = new SplitMix64(seed);
+            this.latency = new LatencyHistogram[group.getOperationCount()];
+            for (int i = 0; i < this.latency.length; ++i) {
+                this.latency[i] = new LatencyHistogram();
+            }
+        }
+
+
+        public void runTest() throws Throwable {
+            int op = this.group.chooseOperation(this.random);
+            long start = System.nanoTime();
+            this.group.getOperation(op).execute(this.random);
+            this.latency[op].record(System.nanoTime() - start);
+            long think = this.group.getThinkTime().nextNanos(this.random);
+            if (think > 0l) {
+                pause(think);
+            }
+        }
+
+
+        void beforeRun() {
+            this.random.setSeed(this.seed);
+            measurementsRestarted();
+        }
+
+
+        void measurementsRestarted() {
+            for (int i = 0; i < this.latency.length; ++i) {
+                this.latency[i].reset();
+            }
+        }
+
+
+        private static void pause(long nanos) throws InterruptedException {
+            long end = System.nanoTime() + nanos;
+            long left = nanos;
+            while (left > 0l) {
+                LockSupport.parkNanos(left);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                left = end - System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * @(#)MonitorScheduler.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+
+/**
+ * Paces the monitors of a single run from one shared timer thread.  Each
+ * monitor waits for the next tick between its checks, instead of spinning
+ * through <tt>Thread.yield()</tt> and taking a processor away from the
+ * runners it watches.
+ *
+ * @since 5.0.0
+ */
+final class MonitorScheduler {
+    private final long periodMillis;
+    private final Timer timer;
+    private long tick = 0l;
+    private boolean stopped = false;
+
+
+    MonitorScheduler(long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        this.periodMillis = periodMillis;
+        this.timer = new Timer(MonitorScheduler.class.getName(), true);
+    }
+
+
+    void start() {
+        this.timer.scheduleAtFixedRate(new TimerTask() {
+            public void run() {
+                nextTick();
+            }
+        }, this.periodMillis, this.periodMillis);
+    }
+
+
+    /**
+     * Ends the timer thread, and releases any waiting monitor.
+     */
+    void stop() {
+        this.timer.cancel();
+        synchronized (this) {
+            this.stopped = true;
+            notifyAll();
+        }
+    }
+
+
+    /**
+     * Waits until the next tick, or until the scheduler is stopped.
+     */
+    synchronized void awaitTick() throws InterruptedException {
+        long current = this.tick;
+        while (current == this.tick && !this.stopped) {
+            wait();
+        }
+    }
+
+
+    private synchronized void nextTick() {
+        ++this.tick;
+        notifyAll();
+    }
+}
@@ -34,6 +34,17 @@ import org.junit.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * A framework which allows for an array of tests to be
@@ -52,6 +63,28 @@ import org.slf4j.LoggerFactory;
  * All these changes have made this class rather fragile, as there are
  * many threaded timing issues to deal with.  Expect future refactoring
  * with backwards compatibility.
+ * <p>
+ * By default, each run creates a new daemon thread per runnable; see
+ * <tt>setThreadFactory()</tt> and <tt>setExecutor()</tt> for other
+ * sources of threads.  <tt>setSimultaneousStart()</tt> releases the
+ * runners together, and each run returns a <tt>RunReport</tt> of what it
+ * measured.
+ * <p>
+ * For load generation, see <tt>setIterations()</tt>,
+ * <tt>setDuration()</tt>, <tt>setWarmupIterations()</tt>,
+ * <tt>setTargetRate()</tt>, <tt>setLoadProfile()</tt> and
+ * <tt>setMetricsWindow()</tt>; for further measurements,
+ * <tt>setRecordLatency()</tt>, <tt>setContentionMonitoring()</tt> and
+ * <tt>setDetectPauses()</tt>.  To hunt for rare races, see
+ * <tt>setRounds()</tt> and <tt>setCollectAllFailures()</tt>.  Monitors
+ * are paced by <tt>setMonitorPeriod()</tt>, stalled runners are caught by
+ * <tt>setProgressTimeout()</tt>, and <tt>writeEvents()</tt> tells what
+ * each thread did during a failed run.
+ * <p>
+ * <tt>MixedWorkload</tt>, <tt>ScalabilitySweep</tt>,
+ * <tt>InterleavingExplorer</tt>, <tt>OutcomeStress</tt> and
+ * <tt>ForkedTestRunner</tt> build on this class, and a
+ * <tt>LinearizabilityChecker</tt> checks what its runners recorded.
  *
  * @author Matt Albrecht <a href="mailto:groboclown@users.sourceforge.net">groboclown@users.sourceforge.net</a>
  * @version $Date: 2003/10/03 14:26:45 $
@@ -64,18 +97,50 @@ public class MultiThreadedTestRunner {
 
     private static final long DEFAULT_MAX_FINAL_JOIN_TIME = 30l * 1000l;
     private static final long DEFAULT_MAX_WAIT_TIME = 24l * 60l * 60l * 1000l;
-    private static final long MIN_WAIT_TIME = 10l;
+    private static final long DEFAULT_MONITOR_PERIOD = 1l;
+    private static final int CORE_EVENT_CAPACITY = 256;
+    private static final int LOGGED_EVENT_COUNT = 64;
 
     private Object synch = new Object();
-    private boolean threadsFinished = false;
+    private volatile boolean threadsFinished = false;
+    private volatile boolean threadsUnresponsive = false;
     private ThreadGroup threadGroup;
     private Thread coreThread;
     private Throwable exception;
+    private TestRunnable failedRunnable;
     private TestRunnable runners[];
     private TestRunnable monitors[];
+    private TestRunnable runMonitors[];
+    private ProgressWatchdog progressWatchdog;
+    private HiccupMonitor hiccupMonitor;
     private long maxFinalJoinTime = DEFAULT_MAX_FINAL_JOIN_TIME;
     private long maxWaitTime = DEFAULT_MAX_WAIT_TIME;
     private boolean performKills = true;
+    private ThreadFactory threadFactory;
+    private Executor executor;
+    private boolean simultaneousStart = false;
+    private long iterations = 1l;
+    private long durationNanos = 0l;
+    private boolean recordLatency = false;
+    private boolean contentionMonitoring = false;
+    private long monitorPeriod = DEFAULT_MONITOR_PERIOD;
+    private boolean collectAllFailures = false;
+    private FailureSink failures;
+    private ControlledScheduler controlledScheduler;
+    private long warmupIterations = 0l;
+    private long warmupNanos = 0l;
+    private long warmupQuietWindowNanos = 0l;
+    private long warmupMaxNanos = 0l;
+    private double targetRate = 0.0;
+    private long roundCount = 1l;
+    private RoundReset roundReset;
+    private boolean roundSeedSet = false;
+    private long roundSeed;
+    private long firstRound = 0l;
+    private LoadProfile loadProfile;
+    private long metricsWindowNanos = 0l;
+    private final EventRing events = new EventRing("runner core",
+            CORE_EVENT_CAPACITY);
 
 
     /**
@@ -120,6 +185,429 @@ public class MultiThreadedTestRunner {
     }
 
 
+    /**
+     * Sets the factory which creates the threads for each run.  By default
+     * (or if set to <tt>null</tt>), each run creates its daemon threads in
+     * a new <tt>ThreadGroup</tt>.  Setting an executor overrides this
+     * factory.
+     *
+     * @param threadFactory the factory for new runner and monitor threads,
+     *                      or <tt>null</tt> to use the default.
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+
+    /**
+     * Sets the executor which runs the runners and monitors, in place of
+     * creating new threads on each run.  The executor must start every
+     * submitted runnable right away, without queueing it behind the
+     * others; a pool from <tt>TestThreadFactory.createPool()</tt> does this,
+     * and keeps its threads alive between runs.  Interrupts, kills and
+     * timeouts apply to whichever thread runs each runnable.  The caller
+     * remains responsible for shutting down the executor.
+     *
+     * @param executor the executor for the runnables, or <tt>null</tt> to
+     *                 create threads for each run.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+
+    /**
+     * Sets whether the runners and monitors wait for each other before
+     * starting their tests, so they all begin at (nearly) the same time.
+     * Otherwise, the threads are started one at a time, and the first
+     * runners may be well into their test before the last one starts.
+     * Either way, the <tt>RunReport</tt> gives the skew between the first
+     * and last runner start.  This is off by default.
+     *
+     * @param simultaneousStart <tt>true</tt> to hold all the threads at a
+     *                          start gate until the last one is ready.
+     */
+    public void setSimultaneousStart(boolean simultaneousStart) {
+        this.simultaneousStart = simultaneousStart;
+    }
+
+
+    /**
+     * Makes each runner (but not the monitors) call its
+     * <tt>runTest()</tt> the given number of times in a row, as a load
+     * generator; the <tt>RunReport</tt> gives the per-runner and aggregate
+     * operations per second.  This replaces any duration set through
+     * <tt>setDuration()</tt>.
+     *
+     * @param iterations the number of calls per runner; by default, 1.
+     */
+    public void setIterations(long iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException(
+                    "iterations must be positive");
+        }
+        this.iterations = iterations;
+        this.durationNanos = 0l;
+    }
+
+
+    /**
+     * Makes each runner (but not the monitors) call its
+     * <tt>runTest()</tt> over and over until the given time has passed
+     * since it started.  This replaces any iteration count set through
+     * <tt>setIterations()</tt>.  The run's maximum time, if any, must
+     * leave room for this duration.
+     *
+     * @param millis how long each runner keeps calling its test.
+     */
+    public void setDuration(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                    "duration must be positive");
+        }
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        this.iterations = 1l;
+    }
+
+
+    /**
+     * Varies the number of active runners during the run, as the given
+     * profile ramps, steps, holds and drains the load.  The runners (but
+     * not the monitors) call their <tt>runTest()</tt> in a loop while the
+     * profile has them active, and idle otherwise, until the profile
+     * ends; this replaces any iteration count or duration.  The profile
+     * starts along with the measurements, after any warmup.  Use with
+     * <tt>setMetricsWindow()</tt> to see how the run fared at each load.
+     * A run with a profile cannot also run in rounds.
+     * With a target rate, each active runner keeps its share of the rate,
+     * so the aggregate rate follows the profile as well.  A progress
+     * timeout only watches the runners the profile has active.
+     *
+     * @param profile the load over time, or <tt>null</tt> to keep all
+     *                runners active, the default.
+     */
+    public void setLoadProfile(LoadProfile profile) {
+        this.loadProfile = profile;
+    }
+
+
+    /**
+     * Has the <tt>RunReport</tt> break the run down into windows of the
+     * given length, each with the calls completed within it and their
+     * latencies merged across the runners, so that a saturation knee or a
+     * slow recovery shows rather than averaging out over the run.  Each
+     * runner times its calls into its own histogram, and only merges it
+     * once per window.
+     *
+     * @param millis the length of a window, or 0 for no windows, the
+     *               default.
+     */
+    public void setMetricsWindow(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(
+                    "window must be non-negative");
+        }
+        this.metricsWindowNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+
+    /**
+     * Runs the runners through the given number of rounds, to hunt for
+     * rare races.  The runners stay on the same threads for the whole
+     * run, and wait for each other at a barrier before each round, so a
+     * round costs far less than a run of its own.  In each round, each
+     * runner makes its usual iterations or duration of
+     * <tt>runTest()</tt> calls.  The rounds stop at the first failed
+     * round, and the run then throws a <tt>RoundFailedError</tt> with that
+     * round's index and seed, caused by the failure.  The monitors run
+     * once, across all the rounds.
+     *
+     * @param rounds the number of rounds; by default, 1.
+     */
+    public void setRounds(long rounds) {
+        setRounds(rounds, null);
+    }
+
+
+    /**
+     * Runs the runners through the given number of rounds, calling the
+     * given hook before each round to reset the state they share.  See
+     * <tt>setRounds( long )</tt>.  A failing hook fails its round.
+     *
+     * @param rounds the number of rounds; by default, 1.
+     * @param reset  called before each round, or <tt>null</tt> for no
+     *               reset.
+     */
+    public void setRounds(long rounds, RoundReset reset) {
+        if (rounds <= 0) {
+            throw new IllegalArgumentException("rounds must be positive");
+        }
+        this.roundCount = rounds;
+        this.roundReset = reset;
+    }
+
+
+    /**
+     * Sets the seed of the first round, which the runners get from
+     * <tt>TestRunnable.getRoundSeed()</tt>.  Each further round's seed
+     * derives from the one before.  By default, each run picks a new
+     * seed.  The rounds are numbered from 0; to replay a failed round,
+     * use <tt>setRoundSeed( long, long )</tt>, so the reset hook and the
+     * runners also see the same round index.
+     *
+     * @param seed the first round's seed.
+     */
+    public void setRoundSeed(long seed) {
+        setRoundSeed(seed, 0l);
+    }
+
+
+    /**
+     * Sets the seed and index of the first round, such as those of a
+     * <tt>RoundFailedError</tt>, to replay the rounds from that one on.
+     * The run still makes the number of rounds given to
+     * <tt>setRounds()</tt>, numbered on from the given index.
+     *
+     * @param seed  the first round's seed.
+     * @param round the first round's index.
+     */
+    public void setRoundSeed(long seed, long round) {
+        if (round < 0l) {
+            throw new IllegalArgumentException(
+                    "round must be non-negative");
+        }
+        this.roundSeed = seed;
+        this.firstRound = round;
+        this.roundSeedSet = true;
+    }
+
+
+    /**
+     * Makes each runner (but not the monitors) first call its
+     * <tt>runTest()</tt> the given number of times as warmup, so that the
+     * JIT compiler can optimize the tested code before it is measured.
+     * Nothing measured during warmup shows up in the <tt>RunReport</tt>,
+     * nor counts toward the run's iterations or duration, but it does
+     * count against the run's maximum time.  This replaces any duration
+     * set through <tt>setWarmupDuration()</tt>.
+     *
+     * @param iterations the number of warmup calls per runner, or 0 for
+     *                   no warmup, the default.
+     */
+    public void setWarmupIterations(long iterations) {
+        if (iterations < 0) {
+            throw new IllegalArgumentException(
+                    "iterations must be non-negative");
+        }
+        this.warmupIterations = iterations;
+        this.warmupNanos = 0l;
+    }
+
+
+    /**
+     * Makes each runner (but not the monitors) first call its
+     * <tt>runTest()</tt> for the given time as warmup.  This replaces any
+     * iteration count set through <tt>setWarmupIterations()</tt>.
+     *
+     * @param millis how long each runner warms up, or 0 for no warmup.
+     * @see #setWarmupIterations(long)
+     */
+    public void setWarmupDuration(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(
+                    "duration must be non-negative");
+        }
+        this.warmupNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        this.warmupIterations = 0l;
+    }
+
+
+    /**
+     * Extends the warmup until the JIT compiler has settled: the runners
+     * keep warming up until the JVM's total compilation time hasn't grown
+     * for the given window, or until the warmup took the given maximum
+     * time.  The <tt>RunReport</tt> tells which happened.  This only has
+     * an effect along with a warmup iteration count or duration, and on
+     * JVMs which measure compilation time.
+     *
+     * @param windowMillis how long compilation must be idle, or 0 to not
+     *                     wait for it.
+     * @param maxMillis    the longest the whole warmup may take.
+     */
+    public void setWarmupQuiescence(long windowMillis, long maxMillis) {
+        if (windowMillis < 0 || maxMillis < 0) {
+            throw new IllegalArgumentException(
+                    "times must be non-negative");
+        }
+        this.warmupQuietWindowNanos = TimeUnit.MILLISECONDS.toNanos(
+                windowMillis);
+        this.warmupMaxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+    }
+
+
+    /**
+     * Drives the runners open loop, at a fixed aggregate rate, rather than
+     * having each start its next <tt>runTest()</tt> call as soon as the
+     * last one returns.  The rate is split evenly, with each runner
+     * calling on its own fixed schedule, staggered from the others.  A
+     * stalled call then doesn't hold back the calls scheduled after it,
+     * as it would with real clients: the next calls start late, but still
+     * run.  Latencies are measured from when each call was scheduled to
+     * start, which corrects for coordinated omission, and the
+     * <tt>RunReport</tt> counts the calls which started a full schedule
+     * interval or more late as missed slots.  Use with
+     * <tt>setIterations()</tt> or <tt>setDuration()</tt>, and
+     * <tt>setRecordLatency( true )</tt>.
+     *
+     * @param operationsPerSecond the target rate for all runners together,
+     *                            or 0 for the default closed loop.
+     */
+    public void setTargetRate(double operationsPerSecond) {
+        if (!(operationsPerSecond >= 0.0) ||
+                Double.isInfinite(operationsPerSecond)) {
+            throw new IllegalArgumentException(
+                    "rate must be non-negative and finite");
+        }
+        this.targetRate = operationsPerSecond;
+    }
+
+
+    /**
+     * Sets whether each runner times its <tt>runTest()</tt> calls.  Each
+     * runner records into its own histogram, without locking or
+     * allocating, and the histograms are merged into the
+     * <tt>RunReport</tt>.  This is off by default.
+     *
+     * @param recordLatency <tt>true</tt> to record the latency of every
+     *                      runner operation.
+     */
+    public void setRecordLatency(boolean recordLatency) {
+        this.recordLatency = recordLatency;
+    }
+
+
+    /**
+     * Sets whether the runners' blocked and waited times are measured.
+     * This turns on the JVM's thread contention monitoring for the run,
+     * which slows down every contended lock, and so changes the
+     * contention being tested; the previous setting is restored once the
+     * run ends.  This is off by default, which leaves the times at -1 in
+     * the <tt>RunReport</tt>; the blocked and waited counts are always
+     * measured.
+     *
+     * @param contentionMonitoring <tt>true</tt> to measure how long the
+     *                             runners were blocked and waiting.
+     */
+    public void setContentionMonitoring(boolean contentionMonitoring) {
+        this.contentionMonitoring = contentionMonitoring;
+    }
+
+
+    /**
+     * Sets whether a failing runner ends the run.  By default, the first
+     * failure stops every runner and is thrown from
+     * <tt>runTestRunnables()</tt>.  When collecting all failures, a
+     * runner's failed <tt>runTest()</tt> call is recorded and the runner
+     * carries on with its next operation, until the run ends as usual.
+     * The run then throws a <tt>MultipleFailuresError</tt> which counts
+     * the failures by exception type and throw site, or the failure
+     * itself if there was only one.  Failing monitors, and timeouts,
+     * still end the run.
+     *
+     * @param collectAllFailures <tt>true</tt> to collect every runner
+     *                           failure.
+     */
+    public void setCollectAllFailures(boolean collectAllFailures) {
+        this.collectAllFailures = collectAllFailures;
+    }
+
+
+    /**
+     * Sets whether the run watches for pauses of the whole JVM, such as
+     * garbage collections and safepoints.  A <tt>HiccupMonitor</tt> is
+     * added to the run's monitors, and the <tt>RunReport</tt> gives the
+     * detected pauses and flags which of the slowest runner operations
+     * overlapped one, when latencies are recorded.  The monitor needs a
+     * spare processor, or busy runners look like pauses.  Every run
+     * reports the garbage collectors' counts and times regardless.  This
+     * is off by default.
+     *
+     * @param detectPauses <tt>true</tt> to detect JVM pauses.
+     */
+    public void setDetectPauses(boolean detectPauses) {
+        if (!detectPauses) {
+            this.hiccupMonitor = null;
+        } else if (this.hiccupMonitor == null) {
+            this.hiccupMonitor = new HiccupMonitor();
+        }
+    }
+
+
+    /**
+     * Sets how often the monitors check the runners.  The monitors of a
+     * run are paced by one shared timer, so they sleep between checks
+     * instead of competing with the runners for processors.  The
+     * <tt>RunReport</tt> gives the monitors' CPU time apart from the
+     * runners'.  Each monitor still makes one final check after the
+     * runners end.  This only applies to <tt>TestMonitorRunnable</tt>
+     * monitors which don't override <tt>yieldProcessing()</tt>.
+     *
+     * @param millis the time between monitor checks, defaulting to 1
+     *               millisecond, or 0 to have the monitors check
+     *               continuously, yielding between checks.
+     */
+    public void setMonitorPeriod(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(
+                    "period must be non-negative");
+        }
+        this.monitorPeriod = millis;
+    }
+
+
+    /**
+     * Fails the run when no runner makes progress for the given window of
+     * time.  Runners show progress by calling
+     * <tt>TestRunnable.reportProgress()</tt>; each completed
+     * <tt>runTest()</tt> call counts as progress too.  Runners which
+     * already ended, or which a load profile kept idle during the window,
+     * are never considered stalled.
+     *
+     * @param windowMillis how long a runner may go without progress.
+     */
+    public void setProgressTimeout(long windowMillis) {
+        setProgressTimeout(windowMillis, Double.MIN_VALUE);
+    }
+
+
+    /**
+     * Fails the run when, over the given window of time, less than the
+     * given fraction of the active runners make progress.  The failure
+     * lists the stalled runners with their stacks.  Runners show progress
+     * by calling <tt>TestRunnable.reportProgress()</tt>; each completed
+     * <tt>runTest()</tt> call counts as progress too.  With a load
+     * profile, only the runners it kept active for the whole window
+     * count as active, so the fraction applies to them alone.
+     *
+     * @param windowMillis        how long a runner may go without progress.
+     * @param minProgressFraction the fraction, greater than 0 and at most
+     *                            1, of active runners which must progress in
+     *                            each window.
+     */
+    public void setProgressTimeout(long windowMillis,
+                                   double minProgressFraction) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        if (minProgressFraction <= 0.0 || minProgressFraction > 1.0) {
+            throw new IllegalArgumentException(
+                    "fraction must be greater than 0 and at most 1");
+        }
+        this.progressWatchdog = new ProgressWatchdog(this.runners,
+                windowMillis, minProgressFraction);
+    }
+
+
     /**
      * Run each test given in a separate thread. Wait for each thread
      * to finish running, then return.
@@ -129,12 +617,13 @@ public class MultiThreadedTestRunner {
      * 24 hours; for most unit testing scenarios, this is more than
      * sufficient.
      *
+     * @return the measurements of the run.
      * @throws Throwable thrown on a test run if a threaded task
      *                   throws an exception.
      */
-    public void runTestRunnables()
+    public RunReport runTestRunnables()
             throws Throwable {
-        runTestRunnables(-1);
+        return runTestRunnables(-1);
     }
 
 
@@ -149,10 +638,35 @@ public class MultiThreadedTestRunner {
      *                  will run until they are complete. Otherwise, any threads that
      *                  don't complete by the given number of milliseconds will be killed,
      *                  and a failure will be thrown.
+     * @return the measurements of the run.
      * @throws Throwable thrown from the underlying tests if they happen
      *                   to cause an error.
      */
-    public void runTestRunnables(long maxTime)
+    public RunReport runTestRunnables(long maxTime)
+            throws Throwable {
+        if (this.loadProfile != null &&
+                (this.roundCount > 1l || this.roundReset != null)) {
+            // the profile spans the run once, so rounds after the first
+            // would find it already over.
+            throw new IllegalStateException(
+                    "a load profile cannot be combined with rounds");
+        }
+        boolean contention = this.contentionMonitoring &&
+                ThreadUsage.beginContentionMonitoring();
+        try {
+            return runAll(maxTime);
+        } finally {
+            if (contention) {
+                ThreadUsage.endContentionMonitoring();
+            }
+        }
+    }
+
+
+    /**
+     * Runs the runners and monitors, for <tt>runTestRunnables()</tt>.
+     */
+    private RunReport runAll(long maxTime)
             throws Throwable {
         // Ensure we aren't interrupted.
         // This can happen from one test execution to the next, if an
@@ -162,21 +676,122 @@ public class MultiThreadedTestRunner {
 
         // initialize the data.
         this.exception = null;
+        this.failedRunnable = null;
         this.coreThread = Thread.currentThread();
         this.threadGroup = new ThreadGroup(THIS_CLASS_NAME);
         this.threadsFinished = false;
+        this.threadsUnresponsive = false;
+        this.runMonitors = createRunMonitors();
+        this.events.clear();
+        this.events.record(EventRing.RUN_STARTED, this.runners.length);
+        FailureSink sink = null;
+        if (this.collectAllFailures) {
+            sink = new FailureSink();
+        }
+        this.failures = sink;
+        for (int i = 0; i < this.runMonitors.length; ++i) {
+            this.runMonitors[i].setCollectFailures(false);
+        }
+        WarmupPhase warmup = null;
+        if (this.warmupIterations > 0 || this.warmupNanos > 0) {
+            warmup = new WarmupPhase(this.runners.length,
+                    this.warmupIterations, this.warmupNanos,
+                    this.warmupQuietWindowNanos, this.warmupMaxNanos);
+        }
+        RoundBarrier rounds = null;
+        if (this.runners.length > 0 &&
+                (this.roundCount > 1l || this.roundReset != null)) {
+            rounds = new RoundBarrier(this.runners.length, this.roundCount,
+                    this.firstRound, this.roundSeedSet ? this.roundSeed :
+                            SplitMix64.createSeed(),
+                    this.roundReset, sink);
+        }
+        for (int i = 0; i < this.runMonitors.length; ++i) {
+            this.runMonitors[i].setWarmup(null);
+            this.runMonitors[i].setSchedule(0l, 0l);
+            this.runMonitors[i].setRounds(null);
+            this.runMonitors[i].setTimeline(null, 0);
+        }
+        LoadTimeline timeline = null;
+        if (this.loadProfile != null || this.metricsWindowNanos > 0l) {
+            timeline = new LoadTimeline(this.loadProfile,
+                    this.metricsWindowNanos);
+        }
+        long slotInterval = 0l;
+        if (this.targetRate > 0.0) {
+            slotInterval = Math.max(1l, Math.round(
+                    this.runners.length * 1000000000.0 / this.targetRate));
+        }
+        for (int i = 0; i < this.runners.length; ++i) {
+            this.runners[i].setWarmup(warmup);
+            this.runners[i].setRounds(rounds);
+            this.runners[i].setTimeline(timeline, i);
+            this.runners[i].setSchedule(slotInterval,
+                    slotInterval * i / this.runners.length);
+            this.runners[i].setCollectFailures(sink != null);
+            this.runners[i].setControlledScheduler(
+                    this.controlledScheduler, i);
+        }
+        ProgressCounters progress = null;
+        if (this.progressWatchdog != null) {
+            progress = new ProgressCounters(this.runners.length);
+            this.progressWatchdog.setCounters(progress);
+        }
+        for (int i = 0; i < this.runners.length; ++i) {
+            this.runners[i].setProgressCounter(progress, i);
+        }
+
+        // each runnable counts down its latch when it ends, so the core
+        // thread can block once instead of polling the threads.
+        CountDownLatch monitorsDone = new CountDownLatch(
+                this.runMonitors.length);
+        CountDownLatch runnersDone = new CountDownLatch(
+                this.runners.length);
+
+        StartGate gate = null;
+        if (this.simultaneousStart) {
+            gate = new StartGate(
+                    this.runMonitors.length + this.runners.length);
+        }
+
+        MonitorScheduler scheduler = null;
+        if (this.monitorPeriod > 0 && this.runMonitors.length > 0) {
+            scheduler = new MonitorScheduler(this.monitorPeriod);
+        }
+        for (int i = 0; i < this.runMonitors.length; ++i) {
+            if (this.runMonitors[i] instanceof TestMonitorRunnable) {
+                ((TestMonitorRunnable) this.runMonitors[i])
+                        .setMonitorScheduler(scheduler);
+            }
+        }
+        if (scheduler != null) {
+            scheduler.start();
+        }
 
         // start the monitors before the runners
-        Thread monitorThreads[] = setupThreads(
-                this.threadGroup, this.monitors);
-        Thread runnerThreads[] = setupThreads(
-                this.threadGroup, this.runners);
+        long gcCount = GcUsage.getCollectionCount();
+        long gcMillis = GcUsage.getCollectionMillis();
+        long startTime = System.nanoTime();
+        setupThreads(this.runMonitors, monitorsDone, gate, 1l, 0l, false);
+        setupThreads(this.runners, runnersDone, gate, this.iterations,
+                this.durationNanos, this.recordLatency);
 
-        // catch the IE exception outside the loop so that an exception
+        // catch the IE exception outside the wait so that an exception
         // thrown in a thread will kill all the other threads.
         boolean threadsStillRunning;
         try {
-            threadsStillRunning = joinThreads(runnerThreads, maxTime);
+            long waitTime = maxTime;
+            if (gate != null) {
+                openStartGate(gate, maxTime);
+                if (maxTime > 0) {
+                    // the wait at the gate counts against the run time.
+                    waitTime = Math.max(0l, maxTime -
+                            TimeUnit.NANOSECONDS.toMillis(
+                                    System.nanoTime() - startTime));
+                }
+            }
+            threadsStillRunning = joinThreads(this.runners, runnersDone,
+                    waitTime);
         } catch (InterruptedException ie) {
             // Thread join interrupted: some runner or monitor caused an
             // exception.  Note that this is NOT a timeout!
@@ -186,13 +801,13 @@ public class MultiThreadedTestRunner {
                 if (!this.threadsFinished) {
                     interruptThreads();
                 } else {
-                    LOG.debug("All threads finished within timeframe.");
+                    this.events.record(EventRing.RUNNERS_HALTED, 0l);
                 }
             }
         }
 
         if (threadsStillRunning) {
-            LOG.debug("Halting the test threads.");
+            this.events.record(EventRing.HALTING_RUNNERS, 0l);
 
             // threads are still running.  If no exception was generated,
             // then set a timeout error to indicate some threads didn't
@@ -201,13 +816,16 @@ public class MultiThreadedTestRunner {
 
             // kill any remaining threads
             try {
-                // but give them one last chance!
-                joinThreads(runnerThreads,
-                        maxFinalJoinTime);
+                // but give them one last chance, unless they are known
+                // to be stuck for good.
+                if (!this.threadsUnresponsive) {
+                    joinThreads(this.runners, runnersDone,
+                            maxFinalJoinTime);
+                }
             } catch (InterruptedException ie) {
                 // someone caused a real exception.  This is NOT a timeout!
             }
-            int killCount = killThreads(runnerThreads);
+            int killCount = killThreads(this.runners);
             if (killCount > 0) {
                 LOG.error(killCount + " thread(s) did not stop themselves.");
                 setTimeoutError(maxFinalJoinTime);
@@ -215,36 +833,174 @@ public class MultiThreadedTestRunner {
         }
 
         // Stop the monitor threads - they have a time limit!
-        LOG.debug("Halting the monitor threads.");
+        this.events.record(EventRing.HALTING_MONITORS, 0l);
         try {
-            joinThreads(monitorThreads, maxFinalJoinTime);
+            joinThreads(this.runMonitors, monitorsDone, maxFinalJoinTime);
         } catch (InterruptedException ex) {
             // don't cause a timeout error with monitor threads.
         }
-        killThreads(monitorThreads);
+        killThreads(this.runMonitors);
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+
+
+        gcCount = GcUsage.delta(gcCount, GcUsage.getCollectionCount());
+        gcMillis = GcUsage.delta(gcMillis, GcUsage.getCollectionMillis());
+
+        if (rounds != null && rounds.getResetFailure() != null) {
+            synchronized (this.synch) {
+                if (this.exception == null) {
+                    this.exception = rounds.getResetFailure();
+                }
+            }
+        }
+
+        if (this.exception == null) {
+            checkAllocationBudgets();
+        }
 
+        if (sink != null && sink.getFailureCount() > 0l) {
+            // report the collected failures along with whatever else
+            // ended the run.
+            synchronized (this.synch) {
+                if (this.exception != null) {
+                    sink.add(this.exception);
+                }
+                this.exception = sink.createFailure();
+            }
+        }
+
+        if (this.exception != null && rounds != null &&
+                rounds.getRoundsStarted() > 0l) {
+            // the rounds never pass a failed one, so the current round is
+            // the one which failed.
+            synchronized (this.synch) {
+                this.exception = new RoundFailedError(rounds.getRound(),
+                        rounds.getRoundCount(), rounds.getSeed(),
+                        this.exception);
+            }
+        }
 
         if (this.exception != null) {
             // an exception/error occurred during the test, so throw
             // the exception so it is reported by the owning test
             // correctly.
             LOG.debug("Exception occurred during testing.", this.exception);
+            this.events.record(EventRing.RUN_ENDED, 1l);
+            logEvents();
             throw this.exception;
         }
-        LOG.debug("No exceptions caused during execution.");
+        this.events.record(EventRing.RUN_ENDED, 0l);
+        return new RunReport(this.runners, this.runMonitors,
+                gate != null, warmup, this.targetRate, gcCount, gcMillis,
+                rounds == null ? 0l : rounds.getRoundsStarted(), timeline);
+    }
+
+
+    /**
+     * Writes the lifecycle events of the last run, in time order.  Each
+     * runner and monitor, and the core thread, keeps a small ring of its
+     * most recent events, such as starting, passing the start gate,
+     * failing or being stopped.  When a run fails, only the events of the
+     * runnable which failed, of the core thread, and the latest events
+     * of the whole run are logged, so as to keep the log short with many
+     * runners.  Call this only once <tt>runTestRunnables()</tt> has
+     * returned.
+     */
+    public void writeEvents(Writer out) throws IOException {
+        EventRing.write(getEventRings(), out);
+        out.flush();
+    }
+
+
+    /**
+     * Returns the event rings of the core thread, the monitors and the
+     * runners.
+     */
+    private EventRing[] getEventRings() {
+        TestRunnable mons[] = this.runMonitors;
+        if (mons == null) {
+            // not run yet.
+            mons = this.monitors;
+        }
+        EventRing rings[] = new EventRing[1 + mons.length +
+                this.runners.length];
+        rings[0] = this.events;
+        for (int i = 0; i < mons.length; ++i) {
+            rings[1 + i] = mons[i].getEvents();
+        }
+        for (int i = 0; i < this.runners.length; ++i) {
+            rings[1 + mons.length + i] = this.runners[i].getEvents();
+        }
+        return rings;
+    }
+
+
+    /**
+     * Writes the lifecycle events of the last run to the given file.
+     *
+     * @see #writeEvents(Writer)
+     */
+    public void writeEvents(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8");
+        try {
+            writeEvents(out);
+        } finally {
+            out.close();
+        }
+    }
+
+
+    private void logEvents() {
+        if (!LOG.isWarnEnabled()) {
+            return;
+        }
+        EventRing rings[] = getEventRings();
+        long origin = EventRing.getOrigin(rings);
+        StringWriter sw = new StringWriter();
+        try {
+            TestRunnable failed;
+            synchronized (this.synch) {
+                failed = this.failedRunnable;
+            }
+            if (failed != null) {
+                sw.write("The failed runnable:\n");
+                EventRing.writeLatest(new EventRing[]{failed.getEvents()},
+                        Integer.MAX_VALUE, origin, sw);
+            }
+            sw.write("The core thread:\n");
+            EventRing.writeLatest(new EventRing[]{this.events},
+                    Integer.MAX_VALUE, origin, sw);
+            sw.write("The latest " + LOGGED_EVENT_COUNT +
+                    " events of all threads:\n");
+            EventRing.writeLatest(rings, LOGGED_EVENT_COUNT, origin, sw);
+        } catch (IOException e) {
+            // can't happen with a StringWriter.
+        }
+        LOG.warn("Events leading up to the failure (writeEvents() gives" +
+                " all of them):\n" + sw);
     }
 
 
     /**
      * Handles an exception by sending them to the test results.  Called by
      * runner or monitor threads.
+     *
+     * @param source the runner or monitor which failed.
      */
-    void handleException(Throwable t) {
+    void handleException(TestRunnable source, Throwable t) {
         LOG.warn("A test thread caused an exception.", t);
         synchronized (this.synch) {
             if (this.exception == null) {
                 LOG.debug("Setting the exception to:", t);
                 this.exception = t;
+                this.failedRunnable = source;
             }
 
             if (!this.threadsFinished) {
@@ -260,6 +1016,24 @@ public class MultiThreadedTestRunner {
     }
 
 
+    /**
+     * Makes the runners take turns under the given schedule, or run
+     * freely if <tt>null</tt>.  Used by <tt>InterleavingExplorer</tt>.
+     */
+    void setControlledScheduler(ControlledScheduler scheduler) {
+        this.controlledScheduler = scheduler;
+    }
+
+
+    /**
+     * Records the failure of a single runner operation, when collecting
+     * all failures.  Called by runner threads, without locking.
+     */
+    void collectFailure(Throwable t) {
+        this.failures.add(t);
+    }
+
+
     /**
      * Stops all running test threads.  Called by runner or monitor threads.
      */
@@ -275,18 +1049,74 @@ public class MultiThreadedTestRunner {
 
             this.threadsFinished = true;
 
-            int count = this.threadGroup.activeCount();
-            Thread t[] = new Thread[count];
-            this.threadGroup.enumerate(t);
-            for (int i = t.length; --i >= 0; ) {
-                if (t[i] != null && t[i].isAlive()) {
-                    t[i].interrupt();
-                }
+            // The threads may not belong to a group we own (pooled or
+            // factory created threads), so interrupt whichever thread is
+            // currently executing each runnable.
+            interruptThreads(this.runMonitors);
+            interruptThreads(this.runners);
+        }
+    }
+
+
+    private void interruptThreads(TestRunnable tr[]) {
+        for (int i = tr.length; --i >= 0; ) {
+            Thread t = tr[i].getRunningThread();
+            if (t != null) {
+                t.interrupt();
             }
         }
     }
 
 
+    /**
+     * Called by a monitor which found that some runners can never end on
+     * their own, such as deadlocked threads.  The run then skips the final
+     * grace period before killing the threads.
+     */
+    void markThreadsUnresponsive() {
+        this.threadsUnresponsive = true;
+    }
+
+
+    /**
+     * Returns the threads currently executing this run's runners and
+     * monitors.
+     */
+    Thread[] getRunningThreads() {
+        return getRunningThreads(this.runners, this.runMonitors);
+    }
+
+
+    /**
+     * Returns the threads currently executing this run's runners.
+     */
+    Thread[] getRunnerThreads() {
+        return getRunningThreads(this.runners, new TestRunnable[0]);
+    }
+
+
+    private static Thread[] getRunningThreads(TestRunnable first[],
+                                              TestRunnable second[]) {
+        int count = 0;
+        Thread found[] = new Thread[first.length + second.length];
+        for (int i = 0; i < first.length; ++i) {
+            Thread t = first[i].getRunningThread();
+            if (t != null) {
+                found[count++] = t;
+            }
+        }
+        for (int i = 0; i < second.length; ++i) {
+            Thread t = second[i].getRunningThread();
+            if (t != null) {
+                found[count++] = t;
+            }
+        }
+        Thread ret[] = new Thread[count];
+        System.arraycopy(found, 0, ret, 0, count);
+        return ret;
+    }
+
+
     /**
      * Used by the TestRunnable instances to tell if the parallel execution
      * has stopped or is stopping.
@@ -299,159 +1129,249 @@ public class MultiThreadedTestRunner {
     /**
      * Sets up the threads for the given runnables and starts them.
      */
-    private Thread[] setupThreads(ThreadGroup tg, TestRunnable tr[]) {
+    private void setupThreads(TestRunnable tr[], CountDownLatch doneSignal,
+                              StartGate gate, long iterations,
+                              long durationNanos, boolean recordLatency) {
         int len = tr.length;
-        Thread threads[] = new Thread[len];
         for (int i = 0; i < len; ++i) {
             tr[i].setTestRunner(this);
-            threads[i] = new Thread(tg, tr[i]);
-            threads[i].setDaemon(true);
+            tr[i].setDoneSignal(doneSignal);
+            tr[i].setStartGate(gate);
+            tr[i].setOperationLoop(iterations, durationNanos);
+            tr[i].setRecordLatency(recordLatency);
+            tr[i].beforeRun();
+        }
+
+        if (this.executor != null) {
+            for (int i = 0; i < len; ++i) {
+                try {
+                    this.executor.execute(tr[i]);
+                } catch (RuntimeException e) {
+                    // don't leave the already started runnables behind.
+                    interruptThreads();
+                    throw e;
+                }
+            }
+            return;
+        }
+
+        ThreadFactory factory = this.threadFactory;
+        if (factory == null) {
+            factory = new TestThreadFactory(this.threadGroup,
+                    THIS_CLASS_NAME, 0l);
+        }
+        Thread threads[] = new Thread[len];
+        for (int i = 0; i < len; ++i) {
+            threads[i] = factory.newThread(tr[i]);
         }
         for (int i = 0; i < len; ++i) {
             threads[i].start();
+            if (gate != null) {
+                // the gate makes sure they all get going.
+                continue;
+            }
 
             // wait for the threads to actually start.  If we wait 10
             // times and still no dice, I expect the test already started
             // and finished.
             int count = 0;
             while (!threads[i].isAlive() && count < 10) {
-                LOG.debug("Waiting for thread at index " + i + " to start.");
+                this.events.record(EventRing.WAITING_FOR_START, i);
                 Thread.yield();
                 ++count;
             }
             if (count >= 10) {
-                LOG.debug("Assuming thread at index " + i + " already finished.");
+                this.events.record(EventRing.ASSUMED_FINISHED, i);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the user's monitors, followed by any monitors this instance
+     * adds for the options it was given.
+     */
+    private TestRunnable[] createRunMonitors() {
+        TestRunnable added[] = new TestRunnable[]{
+                this.progressWatchdog, this.hiccupMonitor};
+        TestRunnable ret[] = this.monitors;
+        for (int i = 0; i < added.length; ++i) {
+            if (added[i] != null) {
+                TestRunnable grown[] = new TestRunnable[ret.length + 1];
+                System.arraycopy(ret, 0, grown, 0, ret.length);
+                grown[ret.length] = added[i];
+                ret = grown;
             }
         }
-        return threads;
+        return ret;
     }
 
 
     /**
-     * This joins all the threads together.  If the max time is exceeded,
-     * then <tt>true</tt> is returned.  This method is only called by the core
-     * thread.  The thread array will be altered at return time to only contain
-     * threads which are still active (all other slots will be <tt>null</tt>).
+     * Waits for every runner and monitor to reach the start gate, then
+     * releases them all.  The gate is opened even if not all threads
+     * arrive in time, so that the normal timeout handling takes over.
+     */
+    private void openStartGate(StartGate gate, long maxTime)
+            throws InterruptedException {
+        long waitTime = maxTime;
+        if (waitTime <= 0 || waitTime > maxWaitTime) {
+            waitTime = DEFAULT_MAX_WAIT_TIME;
+        }
+        try {
+            if (!gate.awaitReady(TimeUnit.MILLISECONDS.toNanos(waitTime))) {
+                this.events.record(EventRing.GATE_INCOMPLETE, 0l);
+            }
+        } finally {
+            gate.open();
+            this.events.record(EventRing.GATE_OPENED, 0l);
+        }
+    }
+
+
+    /**
+     * This joins all the runnables together.  If the max time is exceeded,
+     * then <tt>true</tt> is returned.  This method is only called by the
+     * core thread.
      * <p>
-     * This routine allows us to attempt to collect all the halted threads
-     * together, while not waiting forever on threads that poorly don't
-     * respond to outside stimuli (and thus require a stop() on the
-     * thread).
+     * Rather than polling each thread in turn, the core thread blocks once
+     * on the latch which the runnables count down as they end.  An
+     * exception in any runnable interrupts the core thread, so the first
+     * failure ends the wait immediately.  This still allows us to not wait
+     * forever on threads that poorly don't respond to outside stimuli (and
+     * thus require a stop() on the thread).
      */
-    private boolean joinThreads(Thread t[], long waitTime)
+    private boolean joinThreads(TestRunnable tr[], CountDownLatch doneSignal,
+                                long waitTime)
             throws InterruptedException {
         // check the arguments
-        if (t == null) {
-            return false;
-        }
-        int len = t.length;
-        if (len <= 0) {
+        if (tr == null || tr.length <= 0) {
             return false;
         }
         if (waitTime < 0 || waitTime > maxWaitTime) {
             waitTime = DEFAULT_MAX_WAIT_TIME;
         }
 
-        // slowly halt the threads.
-        boolean threadsRunning = true;
-        InterruptedException iex = null;
-        long finalTime = System.currentTimeMillis() + waitTime;
-        while (threadsRunning && System.currentTimeMillis() < finalTime &&
-                iex == null) {
-            LOG.debug("Time = " + System.currentTimeMillis() + "; final = " + finalTime);
-            threadsRunning = false;
-
-            // There might be circumstances where
-            // the time between entering the while loop and entering the
-            // for loop exceeds the final time, which can cause an incorrect
-            // threadsRunning value.  That's why this boolean exists.  Note
-            // that since we put in the (len <= 0) test above, we don't
-            // have to worry about another edge case where the length prevents
-            // the loop from being entered.
-            boolean enteredLoop = false;
-
-            for (int i = 0;
-                 i < len && System.currentTimeMillis() < finalTime;
-                 ++i) {
-                enteredLoop = true;
-                if (t[i] != null) {
-                    try {
-                        // this will yield our time, so we don't
-                        // need any explicit yield statement.
-                        t[i].join(MIN_WAIT_TIME);
-                    } catch (InterruptedException ex) {
-                        LOG.debug("Join for thread at index " + i +
-                                " was interrupted.");
-                        iex = ex;
-                    }
-                    if (!t[i].isAlive()) {
-                        LOG.debug("Joined thread at index " + i);
-                        t[i] = null;
-                    } else {
-                        LOG.debug("Thread at index " + i + " still running.");
-                        threadsRunning = true;
-                    }
-                }
-            }
-
-            // If the threadsRunning is true, it remains true.  If
-            // the enteredLoop is false, this will be true.
-            threadsRunning = threadsRunning || !enteredLoop;
+        if (doneSignal.await(waitTime, TimeUnit.MILLISECONDS)) {
+            return false;
         }
-        if (iex != null) {
-            throw iex;
+        for (int i = 0; i < tr.length; ++i) {
+            if (!tr[i].hasEnded()) {
+                this.events.record(EventRing.STILL_RUNNING, i);
+            }
         }
-        return threadsRunning;
+        return true;
     }
 
 
     /**
-     * This will execute a stop() on all non-null, alive threads in the list.
+     * This will execute a stop() on the thread of each runnable which
+     * hasn't ended yet.
      *
      * @return the number of threads killed
      */
-    private int killThreads(Thread[] t) {
+    private int killThreads(TestRunnable tr[]) {
         int killCount = 0;
-        for (int i = 0; i < t.length; ++i) {
-            if (t[i] != null && t[i].isAlive()) {
-                LOG.debug("Stopping thread at index " + i);
-                ++killCount;
-                if (this.performKills) {
-                    // Yes, this is deprecated API, but we give the threads
-                    // "sufficient" warning to stop themselves.
-                    int count = 0;
-                    boolean isAlive = t[i].isAlive();
-                    while (isAlive && count < 10) {
-                        // send an InterruptedException, as this is handled
-                        // specially in the TestRunnable.
-                        t[i].stop(
-                                new TestDeathException(
-                                        "Thread " + i + " did not die on its own"));
-                        LOG.debug("Waiting for thread at index " + i +
-                                " to stop.");
-                        Thread.yield();
-                        isAlive = t[i].isAlive();
-
-                        if (isAlive) {
-                            // it may have been in a sleep state, so
-                            // make it shake a leg!
-                            t[i].interrupt();
-                        }
-                        ++count;
+        for (int i = 0; i < tr.length; ++i) {
+            if (tr[i].hasEnded()) {
+                continue;
+            }
+            Thread t = tr[i].getRunningThread();
+            this.events.record(EventRing.STOPPING, i);
+            ++killCount;
+            if (t == null) {
+                // the executor never got around to starting it.
+                LOG.error("Runnable at index " + i + " never started.");
+            } else if (this.performKills) {
+                // Yes, this is deprecated API, but we give the threads
+                // "sufficient" warning to stop themselves.
+                int count = 0;
+                boolean isRunning = !tr[i].hasEnded();
+                while (isRunning && count < 10) {
+                    // send an InterruptedException, as this is handled
+                    // specially in the TestRunnable.
+                    if (!stopThread(t, new TestDeathException(
+                            "Thread " + i + " did not die on its own"))) {
+                        LOG.error("This JVM cannot stop the thread at " +
+                                "index " + i + "; leaving it running.");
+                        t.interrupt();
+                        break;
                     }
-                    if (count >= 10) {
-                        LOG.error("Thread at index " + i + " did not stop!");
+                    this.events.record(EventRing.WAITING_FOR_STOP, i);
+                    Thread.yield();
+                    isRunning = !tr[i].hasEnded();
+
+                    if (isRunning) {
+                        // it may have been in a sleep state, so
+                        // make it shake a leg!
+                        t.interrupt();
                     }
-                    t[i] = null;
-                } else {
-                    LOG.error("Did not stop thread " + t[i]);
+                    ++count;
                 }
+                if (count >= 10) {
+                    LOG.error("Thread at index " + i + " did not stop!");
+                }
+            } else {
+                LOG.error("Did not stop thread " + t);
             }
         }
         return killCount;
     }
 
 
+    /**
+     * Sends the given exception to the thread with <tt>Thread.stop()</tt>.
+     * Newer JVMs no longer support this, either by throwing an
+     * <tt>UnsupportedOperationException</tt> or by not having the method
+     * at all.
+     *
+     * @return <tt>false</tt> if the JVM doesn't support stopping threads.
+     */
+    private static boolean stopThread(Thread t, Throwable death) {
+        try {
+            t.stop(death);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        } catch (NoSuchMethodError e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Fails the run if a runner allocated more per operation than its
+     * budget allows.
+     */
+    private void checkAllocationBudgets() {
+        for (int i = 0; i < this.runners.length; ++i) {
+            long budget = this.runners[i].getAllocationBudget();
+            long ops = this.runners[i].getOperationCount();
+            if (budget < 0l || ops <= 0l) {
+                continue;
+            }
+            long bytes = this.runners[i].getThreadUsage().getAllocatedBytes();
+            if (bytes < 0l) {
+                LOG.warn("This JVM can't count the allocations of the " +
+                        "runner at index " + i + "; its allocation budget " +
+                        "was not checked.");
+            } else if (bytes > budget * ops) {
+                Throwable t = createFailure("Runner at index " + i +
+                        " allocated " + ((double) bytes / ops) +
+                        " bytes per operation (" + bytes + " bytes over " +
+                        ops + " operations), over its budget of " + budget +
+                        " bytes per operation.");
+                synchronized (this.synch) {
+                    if (this.exception == null) {
+                        this.exception = t;
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+
     private void setTimeoutError(long maxTime) {
         Throwable t = createTimeoutError(maxTime);
         synchronized (this.synch) {
@@ -464,11 +1384,16 @@ public class MultiThreadedTestRunner {
 
 
     private Throwable createTimeoutError(long maxTime) {
-        Throwable ret = null;
         // need to set the exception to a timeout
+        return createFailure("Threads did not finish within " +
+                maxTime + " milliseconds.");
+    }
+
+
+    private Throwable createFailure(String message) {
+        Throwable ret = null;
         try {
-            Assert.fail("Threads did not finish within " +
-                    maxTime + " milliseconds.");
+            Assert.fail(message);
         } catch (ThreadDeath td) {
             // never trap these
             throw td;
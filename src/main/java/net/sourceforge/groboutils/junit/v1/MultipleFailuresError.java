@@ -0,0 +1,117 @@
+/*
+ * @(#)MultipleFailuresError.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * Reports every failure of a <tt>MultiThreadedTestRunner</tt> run which
+ * collects all failures (see
+ * <tt>MultiThreadedTestRunner.setCollectAllFailures()</tt>).  The failures
+ * are grouped by exception type and throw site, with the number of times
+ * each group occurred and the first failure of each group.  The cause is
+ * the first failure of the most frequent group.
+ *
+ * @since 5.0.0
+ */
+public class MultipleFailuresError extends AssertionError {
+    private static final long serialVersionUID = 1L;
+
+    private final String sites[];
+    private final long counts[];
+    private final Throwable firstFailures[];
+
+
+    MultipleFailuresError(String sites[], long counts[],
+                          Throwable firstFailures[]) {
+        super(createMessage(sites, counts, firstFailures));
+        this.sites = sites;
+        this.counts = counts;
+        this.firstFailures = firstFailures;
+        if (firstFailures.length > 0) {
+            initCause(firstFailures[0]);
+        }
+    }
+
+
+    /**
+     * @return the total number of failures.
+     */
+    public long getFailureCount() {
+        long total = 0l;
+        for (int i = 0; i < this.counts.length; ++i) {
+            total += this.counts[i];
+        }
+        return total;
+    }
+
+
+    /**
+     * @return the number of distinct exception type and throw site
+     * groups, ordered from the most frequent.
+     */
+    public int getGroupCount() {
+        return this.sites.length;
+    }
+
+
+    /**
+     * @return the exception type and throw site of the group.
+     */
+    public String getGroupSite(int group) {
+        return this.sites[group];
+    }
+
+
+    public long getGroupFailureCount(int group) {
+        return this.counts[group];
+    }
+
+
+    public Throwable getGroupFirstFailure(int group) {
+        return this.firstFailures[group];
+    }
+
+
+    private static String createMessage(String sites[], long counts[],
+                                        Throwable firstFailures[]) {
+        long total = 0l;
+        for (int i = 0; i < counts.length; ++i) {
+            total += counts[i];
+        }
+        StringBuffer sb = new StringBuffer();
+        sb.append(total).append(" failure(s) of ").append(
+                sites.length).append(" kind(s):");
+        for (int i = 0; i < sites.length; ++i) {
+            sb.append("\n  ").append(counts[i]).append(" x ").append(
+                    sites[i]);
+            String message = firstFailures[i].getMessage();
+            if (message != null) {
+                sb.append(": ").append(message);
+            }
+        }
+        return sb.toString();
+    }
+}
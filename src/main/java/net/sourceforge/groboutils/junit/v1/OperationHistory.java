@@ -0,0 +1,114 @@
+/*
+ * @(#)OperationHistory.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * The operations which the runners of a run made on a shared concurrent
+ * object, each with when it was invoked, when it returned and what it
+ * returned, for a <tt>LinearizabilityChecker</tt> to check.  Each runner
+ * records into its own <tt>HistoryRecorder</tt>, so recording needs no
+ * synchronization.  Only check the history once the run has ended.
+ *
+ * @since 5.0.0
+ */
+public class OperationHistory {
+    private final HistoryRecorder recorders[];
+    private String operationNames[];
+
+
+    /**
+     * @param threadCount       the number of runners which record
+     *                          operations.
+     * @param capacityPerThread the most operations each runner may
+     *                          record.
+     */
+    public OperationHistory(int threadCount, int capacityPerThread) {
+        if (threadCount <= 0 || capacityPerThread <= 0) {
+            throw new IllegalArgumentException(
+                    "thread count and capacity must be positive");
+        }
+        this.recorders = new HistoryRecorder[threadCount];
+        for (int i = 0; i < threadCount; ++i) {
+            this.recorders[i] = new HistoryRecorder(i, capacityPerThread);
+        }
+    }
+
+
+    /**
+     * @param thread the runner's index, from 0.
+     * @return the recorder for that runner alone.
+     */
+    public HistoryRecorder getRecorder(int thread) {
+        return this.recorders[thread];
+    }
+
+
+    public int getThreadCount() {
+        return this.recorders.length;
+    }
+
+
+    /**
+     * Names the operation codes, for reports; the code is the index of
+     * its name.
+     */
+    public void setOperationNames(String names[]) {
+        this.operationNames = names;
+    }
+
+
+    /**
+     * @return the number of operations recorded by all the runners.
+     */
+    public long getOperationCount() {
+        long count = 0l;
+        for (int i = 0; i < this.recorders.length; ++i) {
+            count += this.recorders[i].size();
+        }
+        return count;
+    }
+
+
+    /**
+     * Forgets every recorded operation, to reuse the history for another
+     * run.
+     */
+    public void clear() {
+        for (int i = 0; i < this.recorders.length; ++i) {
+            this.recorders[i].clear();
+        }
+    }
+
+
+    String getOperationName(int operation) {
+        String names[] = this.operationNames;
+        if (names != null && operation >= 0 && operation < names.length) {
+            return names[operation];
+        }
+        return "op" + operation;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * @(#)OutcomeResult.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import org.junit.Assert;
+
+
+/**
+ * The outcomes counted by an <tt>OutcomeStress</tt> run: each outcome,
+ * how often it was observed, and how it was classified.
+ *
+ * @since 5.0.0
+ */
+public final class OutcomeResult {
+    public static final int ACCEPTABLE = 0;
+    public static final int INTERESTING = 1;
+    public static final int FORBIDDEN = 2;
+
+    private static final String EXPECT_NAMES[] = {
+            "acceptable", "interesting", "FORBIDDEN"
+    };
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final long trialCount;
+    private final long elapsedNanos;
+    private final String outcomes[];
+    private final long counts[];
+    private final int expects[];
+    private final String descriptions[];
+
+
+    OutcomeResult(long trialCount, long elapsedNanos, String outcomes[],
+                  long counts[], int expects[], String descriptions[]) {
+        this.trialCount = trialCount;
+        this.elapsedNanos = elapsedNanos;
+        this.outcomes = outcomes;
+        this.counts = counts;
+        this.expects = expects;
+        this.descriptions = descriptions;
+    }
+
+
+    public long getTrialCount() {
+        return this.trialCount;
+    }
+
+
+    public double getTrialsPerSecond() {
+        if (this.elapsedNanos <= 0l) {
+            return 0.0;
+        }
+        return this.trialCount * NANOS_PER_SECOND / this.elapsedNanos;
+    }
+
+
+    /**
+     * @return the number of outcomes, declared or observed.
+     */
+    public int getOutcomeCount() {
+        return this.outcomes.length;
+    }
+
+
+    /**
+     * @return the outcome's values, separated by <tt>", "</tt>.
+     */
+    public String getOutcome(int index) {
+        return this.outcomes[index];
+    }
+
+
+    /**
+     * @return how many trials had the outcome.
+     */
+    public long getCount(int index) {
+        return this.counts[index];
+    }
+
+
+    /**
+     * @return <tt>ACCEPTABLE</tt>, <tt>INTERESTING</tt> or
+     * <tt>FORBIDDEN</tt>.
+     */
+    public int getExpect(int index) {
+        return this.expects[index];
+    }
+
+
+    public String getDescription(int index) {
+        return this.descriptions[index];
+    }
+
+
+    /**
+     * @return how many trials had the given outcome.
+     */
+    public long getCount(String outcome) {
+        for (int i = 0; i < this.outcomes.length; ++i) {
+            if (this.outcomes[i].equals(outcome)) {
+                return this.counts[i];
+            }
+        }
+        return 0l;
+    }
+
+
+    /**
+     * @return how many trials had a forbidden outcome.
+     */
+    public long getForbiddenCount() {
+        return countExpected(FORBIDDEN);
+    }
+
+
+    /**
+     * @return how many trials had an interesting outcome.
+     */
+    public long getInterestingCount() {
+        return countExpected(INTERESTING);
+    }
+
+
+    /**
+     * Fails if any trial had a forbidden outcome.
+     */
+    public void assertNoForbidden() {
+        long forbidden = getForbiddenCount();
+        if (forbidden > 0l) {
+            Assert.fail(forbidden + " of " + this.trialCount +
+                    " trials had a forbidden outcome:\n" + this);
+        }
+    }
+
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("OutcomeResult[trials=").append(this.trialCount).append(
+                ", trials/sec=").append(getTrialsPerSecond()).append(']');
+        for (int i = 0; i < this.outcomes.length; ++i) {
+            sb.append("\n  ").append(this.outcomes[i]).append(": ").append(
+                    this.counts[i]).append(" (").append(
+                    EXPECT_NAMES[this.expects[i]]).append(')');
+            if (this.descriptions[i] != null) {
+                sb.append(' ').append(this.descriptions[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    private long countExpected(int expect) {
+        long total = 0l;
+        for (int i = 0; i < this.outcomes.length; ++i) {
+            if (this.expects[i] == expect) {
+                total += this.counts[i];
+            }
+        }
+        return total;
+    }
+}
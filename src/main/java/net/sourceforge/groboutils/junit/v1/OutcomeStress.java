@@ -0,0 +1,382 @@
+/*
+ * @(#)OutcomeStress.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Runs an <tt>OutcomeTest</tt> for millions of trials, to expose
+ * reorderings which the Java memory model allows but which only show up
+ * when threads touch the same memory within nanoseconds of each other.
+ * Starting a thread per trial is far too coarse for that, so the actors
+ * instead run through whole batches of fresh state objects, each actor
+ * calling its action on every state of the batch in turn, so that the
+ * actors hit each state at nearly the same time.
+ * <p>
+ * The batches are the rounds of a <tt>MultiThreadedTestRunner</tt> (see
+ * <tt>setRounds()</tt>): between two batches, while the actors wait, the
+ * arbiter completes and counts the outcome of every trial of the batch
+ * just run, then allocates the states of the next.  The actors then spin
+ * until all of them are back, so they start each batch together.
+ * <p>
+ * Each outcome is counted, and classified as acceptable, interesting
+ * (allowed, but worth knowing about) or forbidden.  An outcome which was
+ * not declared is forbidden.  Each actor needs a processor of its own,
+ * or the actors just take turns and reorderings are rarely seen.
+ *
+ * @since 5.0.0
+ */
+public class OutcomeStress {
+    private static final Logger LOG = LoggerFactory.getLogger(
+            OutcomeStress.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+    private static final long DEFAULT_TRIALS = 1000000l;
+    private static final long DEFAULT_MAX_TIME = 60l * 1000l;
+    private static final int SPIN_COUNT = 1 << 12;
+
+    private final OutcomeTest test;
+    private final int actorCount;
+    private final int resultCount;
+    private final Map expectations = new LinkedHashMap();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long trials = DEFAULT_TRIALS;
+    private long maxTime = DEFAULT_MAX_TIME;
+
+    // the batch being run; only changed while the actors wait between
+    // batches.
+    private Object states[];
+    private long results[][];
+    private final AtomicLong arrivals = new AtomicLong();
+    private final Map counts = new HashMap();
+    private final OutcomeKey probe;
+
+
+    /**
+     * @param test the test whose outcomes are counted.
+     */
+    public OutcomeStress(OutcomeTest test) {
+        if (test == null) {
+            throw new IllegalArgumentException("no null test");
+        }
+        if (test.getActorCount() <= 0 || test.getResultCount() <= 0) {
+            throw new IllegalArgumentException(
+                    "actor and result counts must be positive");
+        }
+        this.test = test;
+        this.actorCount = test.getActorCount();
+        this.resultCount = test.getResultCount();
+        this.probe = new OutcomeKey(new long[this.resultCount]);
+    }
+
+
+    /**
+     * Declares an outcome which the test allows.
+     *
+     * @param outcome     the outcome values, separated by <tt>", "</tt>,
+     *                    such as <tt>"1, 0"</tt>.
+     * @param description what the outcome means.
+     */
+    public void addAcceptable(String outcome, String description) {
+        addExpectation(outcome, OutcomeResult.ACCEPTABLE, description);
+    }
+
+
+    /**
+     * Declares an outcome which the test allows, but which is worth
+     * reporting, such as one that only a reordering explains.
+     */
+    public void addInteresting(String outcome, String description) {
+        addExpectation(outcome, OutcomeResult.INTERESTING, description);
+    }
+
+
+    /**
+     * Declares an outcome which must never happen.  Any outcome not
+     * declared at all is forbidden too; this gives it a description.
+     */
+    public void addForbidden(String outcome, String description) {
+        addExpectation(outcome, OutcomeResult.FORBIDDEN, description);
+    }
+
+
+    /**
+     * Sets the number of trials, and so of fresh state objects, in each
+     * batch.  Larger batches keep the actors overlapping for longer
+     * between waits.  Defaults to 1024.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(
+                    "batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Sets the least number of trials to run, rounded up to whole
+     * batches.  Defaults to one million.
+     */
+    public void setTrials(long trials) {
+        if (trials <= 0) {
+            throw new IllegalArgumentException("trials must be positive");
+        }
+        this.trials = trials;
+    }
+
+
+    /**
+     * Sets the time limit for the whole stress run.  Defaults to 1
+     * minute.
+     */
+    public void setMaxTime(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                    "time limit must be positive");
+        }
+        this.maxTime = millis;
+    }
+
+
+    /**
+     * Runs all the trials.
+     *
+     * @return the count of each outcome.
+     * @throws Throwable if an actor or the arbiter failed, or the run
+     *                   timed out.
+     */
+    public OutcomeResult run() throws Throwable {
+        int processors = Runtime.getRuntime().availableProcessors();
+        if (this.actorCount > processors) {
+            LOG.warn(this.actorCount + " actors on " + processors +
+                    " processor(s) will rarely overlap.");
+        }
+        long batches = (this.trials + this.batchSize - 1) / this.batchSize;
+        this.states = new Object[this.batchSize];
+        this.results = new long[this.batchSize][this.resultCount];
+        this.arrivals.set(0l);
+        this.counts.clear();
+
+        TestRunnable actors[] = new TestRunnable[this.actorCount];
+        for (int i = 0; i < this.actorCount; ++i) {
+            actors[i] = new Actor(i);
+        }
+        MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(actors);
+        mttr.setRounds(batches, new RoundReset() {
+            public void resetRound(long round, long seed) throws Throwable {
+                if (round > 0l) {
+                    arbitrateBatch();
+                }
+                fillBatch();
+            }
+        });
+        RunReport report = mttr.runTestRunnables(this.maxTime);
+        arbitrateBatch();
+        this.states = null;
+        this.results = null;
+        return createResult(batches * this.batchSize,
+                report.getElapsedNanos());
+    }
+
+
+    /**
+     * Waits, spinning, until every actor reached the given batch, so that
+     * they all start it together rather than as each is woken up.
+     */
+    private void alignActors(long batch) throws InterruptedException {
+        long target = (batch + 1l) * this.actorCount;
+        this.arrivals.incrementAndGet();
+        int spins = 0;
+        while (this.arrivals.get() < target) {
+            if (++spins > SPIN_COUNT) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+
+    private void fillBatch() {
+        for (int i = 0; i < this.batchSize; ++i) {
+            this.states[i] = this.test.createState();
+            Arrays.fill(this.results[i], 0l);
+        }
+    }
+
+
+    /**
+     * Completes and counts the outcome of each trial of the last batch.
+     */
+    private void arbitrateBatch() throws Throwable {
+        for (int i = 0; i < this.batchSize; ++i) {
+            this.test.arbitrate(this.states[i], this.results[i]);
+            this.probe.set(this.results[i]);
+            long count[] = (long[]) this.counts.get(this.probe);
+            if (count == null) {
+                count = new long[1];
+                this.counts.put(new OutcomeKey(
+                        this.results[i].clone()), count);
+            }
+            ++count[0];
+            this.states[i] = null;
+        }
+    }
+
+
+    private void addExpectation(String outcome, int expect,
+                                String description) {
+        if (outcome == null) {
+            throw new IllegalArgumentException("no null outcome");
+        }
+        this.expectations.put(outcome, new Object[]{
+                Integer.valueOf(expect), description});
+    }
+
+
+    /**
+     * Lists the declared outcomes first, in the order declared, then any
+     * other observed outcomes.
+     */
+    private OutcomeResult createResult(long trialCount, long elapsedNanos) {
+        Map observed = new LinkedHashMap();
+        Iterator iter = this.counts.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            observed.put(entry.getKey().toString(), entry.getValue());
+        }
+        List outcomes = new ArrayList(this.expectations.keySet());
+        iter = observed.keySet().iterator();
+        while (iter.hasNext()) {
+            Object outcome = iter.next();
+            if (!this.expectations.containsKey(outcome)) {
+                outcomes.add(outcome);
+            }
+        }
+        int len = outcomes.size();
+        String names[] = new String[len];
+        long found[] = new long[len];
+        int expects[] = new int[len];
+        String descriptions[] = new String[len];
+        for (int i = 0; i < len; ++i) {
+            names[i] = (String) outcomes.get(i);
+            long count[] = (long[]) observed.get(names[i]);
+            found[i] = count == null ? 0l : count[0];
+            Object expectation[] = (Object[]) this.expectations.get(
+                    names[i]);
+            if (expectation == null) {
+                expects[i] = OutcomeResult.FORBIDDEN;
+                descriptions[i] = "not declared";
+            } else {
+                expects[i] = ((Integer) expectation[0]).intValue();
+                descriptions[i] = (String) expectation[1];
+            }
+        }
+        return new OutcomeResult(trialCount, elapsedNanos, names, found,
+                expects, descriptions);
+    }
+
+
+    /**
+     * Runs one actor's action over each batch.
+     */
+    private class Actor extends TestRunnable {
+        private final int index;
+
+
+        Actor(int index) {
+            this.index = index;
+        }
+
+
+        public void runTest() throws Throwable {
+            Object batch[] = states;
+            long batchResults[][] = results;
+            alignActors(getRound());
+            for (int i = 0; i < batch.length; ++i) {
+                test.act(this.index, batch[i], batchResults[i]);
+            }
+        }
+    }
+
+
+    /**
+     * The values of an outcome, as a hash key.  A single mutable instance
+     * looks up each trial's outcome, so counting an outcome already seen
+     * allocates nothing.
+     */
+    private static final class OutcomeKey {
+        private long values[];
+        private int hash;
+
+
+        OutcomeKey(long values[]) {
+            set(values);
+        }
+
+
+        void set(long values[]) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+
+        public boolean equals(Object o) {
+            return o instanceof OutcomeKey &&
+                    Arrays.equals(this.values, ((OutcomeKey) o).values);
+        }
+
+
+        public String toString() {
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < this.values.length; ++i) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(this.values[i]);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * @(#)OutcomeTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * A small concurrency test for an <tt>OutcomeStress</tt>, in the style of
+ * the OpenJDK jcstress harness: a few actors each run a tiny action on a
+ * shared state object, and the values they observe form the outcome of
+ * the trial.  Each trial gets a fresh state object, so the actors race on
+ * memory which no other thread has touched yet.
+ * <p>
+ * For example, to look for store buffering, the state holds two fields
+ * <tt>x</tt> and <tt>y</tt>; actor 0 sets <tt>x = 1</tt> and records
+ * <tt>y</tt>, actor 1 sets <tt>y = 1</tt> and records <tt>x</tt>.  The
+ * outcome <tt>"0, 0"</tt> shows the stores were reordered after the
+ * loads.
+ *
+ * @since 5.0.0
+ */
+public interface OutcomeTest {
+    /**
+     * @return the number of actors, each running on its own thread;
+     * usually 2 to 4.
+     */
+    int getActorCount();
+
+
+    /**
+     * @return the number of values in an outcome.
+     */
+    int getResultCount();
+
+
+    /**
+     * @return a new state object for one trial.
+     */
+    Object createState();
+
+
+    /**
+     * Runs one actor's action on a trial's state.  Each actor should only
+     * write its own result values.
+     *
+     * @param actor   the actor's index, from 0.
+     * @param state   the trial's state.
+     * @param results the trial's outcome values, all 0 at first.
+     */
+    void act(int actor, Object state, long results[]) throws Throwable;
+
+
+    /**
+     * Completes a trial's outcome after every actor ran, such as by
+     * reading the final value of a field.  This may do nothing.
+     *
+     * @param state   the trial's state.
+     * @param results the trial's outcome values, as set by the actors.
+     */
+    void arbitrate(Object state, long results[]) throws Throwable;
+}
@@ -0,0 +1,333 @@
+/*
+ * @(#)PinningMonitor.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * A monitor which reports virtual threads that pin their carrier thread,
+ * such as by blocking while inside a <tt>synchronized</tt> block.  Pinned
+ * virtual threads hold on to one of the few carrier threads, so a run
+ * using a <tt>VirtualThreadFactory</tt> silently loses concurrency.
+ * <p>
+ * The pinning events come from the JDK's own flight recorder
+ * (<tt>jdk.VirtualThreadPinned</tt>), streamed in-process while the
+ * monitor runs.  Each distinct pinning site is logged when the run ends,
+ * and the monitor can optionally fail the run.  On JVMs without virtual
+ * thread or flight recorder support, the monitor does nothing.
+ *
+ * @since 5.0.0
+ */
+public class PinningMonitor extends TestMonitorRunnable {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final long DEFAULT_THRESHOLD = 20l;
+    private static final long DEFAULT_CHECK_INTERVAL = 100l;
+    private static final int MAX_SITE_FRAMES = 4;
+
+    private final long thresholdMillis;
+    private final boolean failOnPinning;
+    private final Map sites = new TreeMap();
+    private long pinnedCount = 0l;
+    private long pinnedNanos = 0l;
+    private Object stream;
+
+
+    /**
+     * Reports, but does not fail on, pinning which lasts at least
+     * 20 milliseconds.
+     */
+    public PinningMonitor() {
+        this(DEFAULT_THRESHOLD, false);
+    }
+
+
+    /**
+     * @param thresholdMillis the minimum time a virtual thread must be
+     *                        pinned before it is reported.
+     * @param failOnPinning   <tt>true</tt> if any reported pinning should
+     *                        fail the run.
+     */
+    public PinningMonitor(long thresholdMillis, boolean failOnPinning) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException(
+                    "threshold must be non-negative");
+        }
+        this.thresholdMillis = thresholdMillis;
+        this.failOnPinning = failOnPinning;
+    }
+
+
+    /**
+     * Starts streaming the pinning events before any runner starts, as
+     * setting up the stream can take longer than a short runner lives.
+     */
+    void beforeRun() {
+        stopRecording();
+        startRecording();
+    }
+
+
+    /**
+     * Keeps streaming the pinning events for as long as the runners are
+     * active.  Unlike the inherited loop, the final check only comes
+     * once the recording is stopped, as only then are all events
+     * guaranteed to have been delivered.  The sites are logged however
+     * the monitor ends.
+     */
+    public void runTest() throws Throwable {
+        try {
+            while (!isDone() && !Thread.interrupted()) {
+                runMonitor();
+                yieldProcessing();
+            }
+        } catch (InterruptedException ie) {
+            // the runners are done, and interrupted our delay; still
+            // report what was seen.
+        } finally {
+            stopRecording();
+            logSites();
+        }
+        runMonitor();
+    }
+
+
+    public void runMonitor() throws Throwable {
+        if (this.failOnPinning && getPinnedCount() > 0) {
+            fail(getPinningReport());
+        }
+    }
+
+
+    protected void yieldProcessing() throws InterruptedException {
+        delay(DEFAULT_CHECK_INTERVAL);
+    }
+
+
+    /**
+     * @return the number of pinning events observed so far.
+     */
+    public synchronized long getPinnedCount() {
+        return this.pinnedCount;
+    }
+
+
+    /**
+     * @return the total time, in nanoseconds, that virtual threads were
+     * observed pinned.
+     */
+    public synchronized long getPinnedNanos() {
+        return this.pinnedNanos;
+    }
+
+
+    /**
+     * @return a description of each pinning site and how often it was
+     * hit.
+     */
+    public synchronized String getPinningReport() {
+        StringBuffer sb = new StringBuffer();
+        sb.append(this.pinnedCount).append(
+                " virtual thread pinning event(s), ").append(
+                this.pinnedNanos / 1000000l).append(" ms total");
+        Iterator iter = this.sites.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            sb.append("\n  ").append(entry.getValue()).append(" x ").append(
+                    entry.getKey());
+        }
+        return sb.toString();
+    }
+
+
+    synchronized void recordPinning(long durationNanos, String site) {
+        ++this.pinnedCount;
+        this.pinnedNanos += durationNanos;
+        Long count = (Long) this.sites.get(site);
+        this.sites.put(site, Long.valueOf(
+                count == null ? 1l : count.longValue() + 1l));
+    }
+
+
+    private void logSites() {
+        if (getPinnedCount() > 0) {
+            LOG.warn(getPinningReport());
+        }
+    }
+
+
+    private void startRecording() {
+        if (!VirtualThreadFactory.isAvailable()) {
+            LOG.debug("Virtual threads not supported; not monitoring pinning.");
+            return;
+        }
+        try {
+            Class streamClass = Class.forName(
+                    "jdk.jfr.consumer.RecordingStream");
+            Class consumerClass = Class.forName("java.util.function.Consumer");
+            Class durationClass = Class.forName("java.time.Duration");
+            Object duration = durationClass.getMethod(
+                    "ofMillis", new Class[]{Long.TYPE}).invoke(null,
+                    new Object[]{Long.valueOf(this.thresholdMillis)});
+
+            Object rs = streamClass.newInstance();
+            Object settings = streamClass.getMethod("enable",
+                    new Class[]{String.class}).invoke(rs,
+                    new Object[]{PINNED_EVENT});
+            Class settingsClass = Class.forName("jdk.jfr.EventSettings");
+            settingsClass.getMethod("withThreshold",
+                    new Class[]{durationClass}).invoke(settings,
+                    new Object[]{duration});
+            settingsClass.getMethod("withStackTrace", new Class[0]).invoke(
+                    settings, new Object[0]);
+            Object consumer = Proxy.newProxyInstance(
+                    consumerClass.getClassLoader(),
+                    new Class[]{consumerClass}, new EventHandler());
+            streamClass.getMethod("onEvent",
+                    new Class[]{String.class, consumerClass}).invoke(rs,
+                    new Object[]{PINNED_EVENT, consumer});
+            streamClass.getMethod("startAsync", new Class[0]).invoke(rs,
+                    new Object[0]);
+            this.stream = rs;
+        } catch (Exception e) {
+            LOG.warn("Could not stream virtual thread pinning events.", e);
+        }
+    }
+
+
+    private void stopRecording() {
+        Object rs = this.stream;
+        if (rs == null) {
+            return;
+        }
+        this.stream = null;
+        try {
+            // stop() waits for the remaining events to be consumed.
+            rs.getClass().getMethod("stop", new Class[0]).invoke(rs,
+                    new Object[0]);
+        } catch (Exception e) {
+            LOG.debug("Could not stop the pinning event stream.", e);
+        }
+        try {
+            rs.getClass().getMethod("close", new Class[0]).invoke(rs,
+                    new Object[0]);
+        } catch (Exception e) {
+            LOG.debug("Could not close the pinning event stream.", e);
+        }
+    }
+
+
+    /**
+     * Turns the top frames of the event's stack into a site name.  The
+     * JDK's own parking frames are the same for every event, so the site
+     * starts at the first frame outside of the JDK.
+     */
+    private static String describeSite(Object event) throws Exception {
+        Object trace = call(event, "getStackTrace");
+        if (trace == null) {
+            return "(no stack trace)";
+        }
+        List frames = (List) call(trace, "getFrames");
+        int start = 0;
+        while (start < frames.size() &&
+                isJdkType(getTypeName(frames.get(start)))) {
+            ++start;
+        }
+        if (start >= frames.size()) {
+            start = 0;
+        }
+        StringBuffer sb = new StringBuffer();
+        int end = Math.min(frames.size(), start + MAX_SITE_FRAMES);
+        for (int i = start; i < end; ++i) {
+            Object frame = frames.get(i);
+            if (i > start) {
+                sb.append(" <- ");
+            }
+            sb.append(getTypeName(frame)).append('.').append(
+                    call(call(frame, "getMethod"), "getName")).append(
+                    ':').append(call(frame, "getLineNumber"));
+        }
+        return sb.toString();
+    }
+
+
+    private static String getTypeName(Object frame) throws Exception {
+        return (String) call(call(call(frame, "getMethod"), "getType"),
+                "getName");
+    }
+
+
+    private static boolean isJdkType(String name) {
+        return name.startsWith("java.") || name.startsWith("jdk.") ||
+                name.startsWith("sun.");
+    }
+
+
+    private static Object call(Object target, String name) throws Exception {
+        return target.getClass().getMethod(name, new Class[0]).invoke(target,
+                new Object[0]);
+    }
+
+
+    /**
+     * Receives each pinning event from the flight recorder stream.
+     */
+    private class EventHandler implements InvocationHandler {
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            if ("accept".equals(name)) {
+                // never let a problem here close the event stream.
+                try {
+                    Object event = args[0];
+                    Object duration = call(event, "getDuration");
+                    long nanos = ((Long) call(duration, "toNanos"))
+                            .longValue();
+                    recordPinning(nanos, describeSite(event));
+                } catch (Exception e) {
+                    LOG.debug("Could not read a pinning event.", e);
+                }
+                return null;
+            }
+            if ("equals".equals(name)) {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+            if ("hashCode".equals(name)) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            if ("toString".equals(name)) {
+                return "PinningMonitor event handler";
+            }
+            return null;
+        }
+    }
+}
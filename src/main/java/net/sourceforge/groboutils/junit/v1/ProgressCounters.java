@@ -0,0 +1,75 @@
+/*
+ * @(#)ProgressCounters.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * One progress counter per runner, each on its own cache line so that
+ * runners bumping their counters never contend with each other.  Each
+ * counter has a single writer, its runner's thread, so increments need no
+ * atomic read-modify-write; other threads may read the counters at any
+ * time.
+ *
+ * @since 5.0.0
+ */
+final class ProgressCounters {
+    /**
+     * Counters are this many longs (128 bytes) apart, which covers the
+     * cache line size, and the adjacent line prefetch, of common CPUs.
+     */
+    private static final int PADDING = 16;
+
+    private final AtomicLongArray slots;
+    private final int count;
+
+
+    ProgressCounters(int count) {
+        this.count = count;
+        this.slots = new AtomicLongArray((count + 2) * PADDING);
+    }
+
+
+    /**
+     * Bumps the counter at the given index.  Must only be called by the
+     * counter's owning thread.
+     */
+    void increment(int index) {
+        int slot = (index + 1) * PADDING;
+        this.slots.lazySet(slot, this.slots.get(slot) + 1l);
+    }
+
+
+    long get(int index) {
+        return this.slots.get((index + 1) * PADDING);
+    }
+
+
+    int size() {
+        return this.count;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * @(#)ProgressWatchdog.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * The monitor behind <tt>MultiThreadedTestRunner.setProgressTimeout()</tt>.
+ * Once per window, it compares each runner's progress counter with the
+ * value it had at the start of the window, and fails the run when too few
+ * of the still active runners moved.  This catches runners which are busy
+ * but get nowhere, such as livelocked retry loops, which never show up as
+ * a deadlock.
+ * <p>
+ * A runner which a load profile kept idle at any time during the window
+ * is not expected to progress, so it doesn't count as active for that
+ * window.
+ *
+ * @since 5.0.0
+ */
+class ProgressWatchdog extends TestMonitorRunnable {
+    private final TestRunnable runners[];
+    private final long windowMillis;
+    private final double minProgressFraction;
+    private final long lastCounts[];
+    private final long lastSwitches[];
+    private ProgressCounters counters;
+    private long windowEnd;
+
+
+    ProgressWatchdog(TestRunnable runners[], long windowMillis,
+                     double minProgressFraction) {
+        this.runners = runners;
+        this.windowMillis = windowMillis;
+        this.minProgressFraction = minProgressFraction;
+        this.lastCounts = new long[runners.length];
+        this.lastSwitches = new long[runners.length];
+    }
+
+
+    /**
+     * Starts watching a new set of counters, for a new run.
+     */
+    void setCounters(ProgressCounters counters) {
+        this.counters = counters;
+        for (int i = 0; i < this.lastCounts.length; ++i) {
+            this.lastCounts[i] = 0l;
+            this.lastSwitches[i] = 0l;
+        }
+        this.windowEnd = 0l;
+    }
+
+
+    public void runMonitor() throws Throwable {
+        long now = System.currentTimeMillis();
+        if (this.windowEnd == 0l) {
+            this.windowEnd = now + this.windowMillis;
+            return;
+        }
+        if (now < this.windowEnd || isDone()) {
+            return;
+        }
+        this.windowEnd = now + this.windowMillis;
+
+        int active = 0;
+        int stalled = 0;
+        StringBuffer stalledRunners = new StringBuffer();
+        for (int i = 0; i < this.runners.length; ++i) {
+            long count = this.counters.get(i);
+            long switches = this.runners[i].getLoadSwitches();
+            if (!this.runners[i].hasEnded() &&
+                    !this.runners[i].isLoadIdle() &&
+                    switches == this.lastSwitches[i]) {
+                ++active;
+                if (count == this.lastCounts[i]) {
+                    ++stalled;
+                    appendRunner(stalledRunners, i);
+                }
+            }
+            this.lastCounts[i] = count;
+            this.lastSwitches[i] = switches;
+        }
+        if (active > 0 &&
+                (double) (active - stalled) / active < this.minProgressFraction) {
+            fail(stalled + " of " + active + " active runner(s) made no " +
+                    "progress within " + this.windowMillis + " ms:" +
+                    stalledRunners);
+        }
+    }
+
+
+    protected void yieldProcessing() throws InterruptedException {
+        delay(Math.max(1l, this.windowMillis / 10l));
+    }
+
+
+    private void appendRunner(StringBuffer sb, int index) {
+        sb.append("\nrunner ").append(index);
+        Thread t = this.runners[index].getRunningThread();
+        if (t == null) {
+            sb.append(" (not running)");
+            return;
+        }
+        sb.append(" \"").append(t.getName()).append('"');
+        StackTraceElement stack[] = t.getStackTrace();
+        for (int i = 0; i < stack.length; ++i) {
+            sb.append("\n\tat ").append(stack[i]);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * @(#)RoundBarrier.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+
+/**
+ * Separates the rounds of a run in rounds: every runner waits here
+ * before each round, and the last to arrive resets the shared state and
+ * moves on to the next round, or ends the rounds after the last one or
+ * once a round had failures.  The threads stay alive from one round to
+ * the next, so a round costs a barrier crossing rather than a thread
+ * start.
+ * <p>
+ * Each round has a seed, derived from the previous round's seed, so
+ * starting a run at a failing round's seed and index replays the rounds
+ * from there.
+ *
+ * @since 5.0.0
+ */
+final class RoundBarrier {
+    private static final long SEED_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final CyclicBarrier barrier;
+    private final long roundCount;
+    private final RoundReset reset;
+    private final FailureSink failures;
+    private volatile long round;
+    private volatile long roundsStarted = 0l;
+    private volatile long seed;
+    private volatile boolean stopped = false;
+    private volatile Throwable resetFailure;
+
+
+    /**
+     * @param parties    the number of runners.
+     * @param roundCount the number of rounds to run.
+     * @param firstRound the index of the first round.
+     * @param firstSeed  the seed of the first round.
+     * @param reset      called before each round, or <tt>null</tt>.
+     * @param failures   the collected failures, if the run collects
+     *                   them, so that the rounds stop after a round with
+     *                   failures; or <tt>null</tt>.
+     */
+    RoundBarrier(int parties, long roundCount, long firstRound,
+                 long firstSeed, RoundReset reset, FailureSink failures) {
+        this.roundCount = roundCount;
+        this.round = firstRound - 1l;
+        this.reset = reset;
+        this.failures = failures;
+        this.seed = firstSeed;
+        this.barrier = new CyclicBarrier(parties, new Runnable() {
+            public void run() {
+                nextRound();
+            }
+        });
+    }
+
+
+    /**
+     * Called by each runner before each round.
+     *
+     * @return <tt>true</tt> if the runner should run the next round, or
+     * <tt>false</tt> if the rounds are over.
+     */
+    boolean awaitNextRound()
+            throws InterruptedException, BrokenBarrierException {
+        this.barrier.await();
+        return !this.stopped;
+    }
+
+
+    /**
+     * @return the index of the current round, or of the round which
+     * failed once the run ended.
+     */
+    long getRound() {
+        return this.round;
+    }
+
+
+    /**
+     * @return the number of rounds started so far, including the current
+     * one.
+     */
+    long getRoundsStarted() {
+        return this.roundsStarted;
+    }
+
+
+    /**
+     * @return the seed of the current round.
+     */
+    long getSeed() {
+        return this.seed;
+    }
+
+
+    long getRoundCount() {
+        return this.roundCount;
+    }
+
+
+    /**
+     * @return the exception thrown by the reset hook, or <tt>null</tt>.
+     */
+    Throwable getResetFailure() {
+        return this.resetFailure;
+    }
+
+
+    /**
+     * Run by the last runner to reach the barrier, while all the others
+     * wait.
+     */
+    private void nextRound() {
+        if (this.failures != null && this.failures.getFailureCount() > 0l) {
+            this.stopped = true;
+            return;
+        }
+        if (this.roundsStarted >= this.roundCount) {
+            this.stopped = true;
+            return;
+        }
+        if (this.roundsStarted > 0l) {
+            this.seed = SplitMix64.mix(this.seed + SEED_GAMMA);
+        }
+        ++this.round;
+        ++this.roundsStarted;
+        if (this.reset != null) {
+            try {
+                this.reset.resetRound(this.round, this.seed);
+            } catch (ThreadDeath td) {
+                throw td;
+            } catch (Throwable t) {
+                this.resetFailure = t;
+                this.stopped = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * @(#)RoundFailedError.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * Reports the round in which a <tt>MultiThreadedTestRunner</tt> run in
+ * rounds failed (see <tt>MultiThreadedTestRunner.setRounds()</tt>).  The
+ * cause is what the run would have thrown outside of rounds.  Passing the
+ * round's seed and index to <tt>MultiThreadedTestRunner.setRoundSeed()</tt>
+ * makes that round the first of the next run.
+ *
+ * @since 5.0.0
+ */
+public class RoundFailedError extends AssertionError {
+    private static final long serialVersionUID = 1L;
+
+    private final long round;
+    private final long roundCount;
+    private final long seed;
+
+
+    RoundFailedError(long round, long roundCount, long seed,
+                     Throwable cause) {
+        super("Round " + round + " of " + roundCount +
+                " failed (round seed " + seed + "L): " +
+                cause.getMessage());
+        this.round = round;
+        this.roundCount = roundCount;
+        this.seed = seed;
+        initCause(cause);
+    }
+
+
+    /**
+     * @return the index of the failed round, from 0.
+     */
+    public long getRound() {
+        return this.round;
+    }
+
+
+    /**
+     * @return the number of rounds the run was to make.
+     */
+    public long getRoundCount() {
+        return this.roundCount;
+    }
+
+
+    /**
+     * @return the failed round's seed.
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * @(#)RoundReset.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * Restores the state shared by the runners before each round of a
+ * <tt>MultiThreadedTestRunner</tt> run in rounds (see
+ * <tt>MultiThreadedTestRunner.setRounds()</tt>).  It is called on one of
+ * the runner threads while all the others wait at the round barrier, so
+ * it needs no synchronization of its own.
+ *
+ * @since 5.0.0
+ */
+public interface RoundReset {
+    /**
+     * @param round the index of the round about to start, from 0.
+     * @param seed  the round's seed, also given to the runners by
+     *              <tt>TestRunnable.getRoundSeed()</tt>.
+     * @throws Throwable to fail the run in this round.
+     */
+    public void resetRound(long round, long seed) throws Throwable;
+}
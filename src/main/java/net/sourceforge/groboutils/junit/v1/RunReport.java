@@ -0,0 +1,713 @@
+/*
+ * @(#)RunReport.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.io.Serializable;
+
+
+/**
+ * The measurements of a single <tt>MultiThreadedTestRunner</tt> run, as
+ * returned by <tt>runTestRunnables()</tt>.  A run which fails throws its
+ * exception instead, so a report always describes a successful run.
+ *
+ * @since 5.0.0
+ */
+public final class RunReport implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final int runnerCount;
+    private final boolean startGated;
+    private final long runnerStartNanos[];
+    private final long runnerEndNanos[];
+    private final long runnerOperations[];
+    private final LatencyHistogram runnerLatency[];
+    private final long runnerCpuNanos[];
+    private final long runnerAllocatedBytes[];
+    private final long runnerBlockedCount[];
+    private final long runnerBlockedMillis[];
+    private final long runnerWaitedCount[];
+    private final long runnerWaitedMillis[];
+    private final long monitorCpuNanos[];
+    private final double targetRate;
+    private final long runnerMissedSlots[];
+    private final boolean warmedUp;
+    private final long warmupNanos;
+    private final boolean warmupQuiescent;
+    private final LatencyHistogram latency;
+    private final long gcCount;
+    private final long gcMillis;
+    private final boolean pausesDetected;
+    private final long pauseCount;
+    private final long maxPauseNanos;
+    private final long totalPauseNanos;
+    private final long tailNanos[];
+    private final int tailRunners[];
+    private final boolean tailDuringPause[];
+    private final long roundCount;
+    private final long startSkewNanos;
+    private final long elapsedNanos;
+    private final long operationCount;
+    private final LoadWindow windows[];
+
+
+    /**
+     * Takes the measurements of each runner and monitor after a completed
+     * run.  The garbage collection values are the differences over the
+     * run, or -1 if unknown.  The round count is 0 for a run which
+     * wasn't in rounds.  The timeline, if any, holds the per-window
+     * metrics.
+     */
+    RunReport(TestRunnable runners[], TestRunnable monitors[],
+              boolean startGated, WarmupPhase warmup, double targetRate,
+              long gcCount, long gcMillis, long roundCount,
+              LoadTimeline timeline) {
+        int len = runners.length;
+        this.runnerCount = len;
+        this.startGated = startGated;
+        this.runnerStartNanos = new long[len];
+        this.runnerEndNanos = new long[len];
+        this.runnerOperations = new long[len];
+        this.runnerLatency = new LatencyHistogram[len];
+        this.runnerCpuNanos = new long[len];
+        this.runnerAllocatedBytes = new long[len];
+        this.runnerBlockedCount = new long[len];
+        this.runnerBlockedMillis = new long[len];
+        this.runnerWaitedCount = new long[len];
+        this.runnerWaitedMillis = new long[len];
+        LatencyHistogram merged = null;
+
+        long firstGate = Long.MAX_VALUE;
+        long lastGate = Long.MIN_VALUE;
+        long firstStart = Long.MAX_VALUE;
+        long lastEnd = Long.MIN_VALUE;
+        long operations = 0l;
+        for (int i = 0; i < len; ++i) {
+            this.runnerStartNanos[i] = runners[i].getStartNanos();
+            this.runnerEndNanos[i] = runners[i].getEndNanos();
+            this.runnerOperations[i] = runners[i].getOperationCount();
+            // the skew is how closely the runners started, before any
+            // warmup evens it out.
+            firstGate = Math.min(firstGate, runners[i].getGateNanos());
+            lastGate = Math.max(lastGate, runners[i].getGateNanos());
+            firstStart = Math.min(firstStart, this.runnerStartNanos[i]);
+            lastEnd = Math.max(lastEnd, this.runnerEndNanos[i]);
+            operations += this.runnerOperations[i];
+
+            ThreadUsage usage = runners[i].getThreadUsage();
+            this.runnerCpuNanos[i] = usage.getCpuNanos();
+            this.runnerAllocatedBytes[i] = usage.getAllocatedBytes();
+            this.runnerBlockedCount[i] = usage.getBlockedCount();
+            this.runnerBlockedMillis[i] = usage.getBlockedMillis();
+            this.runnerWaitedCount[i] = usage.getWaitedCount();
+            this.runnerWaitedMillis[i] = usage.getWaitedMillis();
+
+            // copy the histograms, as the runners reuse theirs.
+            LatencyHistogram h = runners[i].getLatencyHistogram();
+            if (h != null) {
+                this.runnerLatency[i] = h.copy();
+                if (merged == null) {
+                    merged = new LatencyHistogram();
+                }
+                merged.add(h);
+            }
+        }
+        this.latency = merged;
+        this.targetRate = targetRate;
+        this.runnerMissedSlots = new long[len];
+        for (int i = 0; i < len; ++i) {
+            this.runnerMissedSlots[i] = runners[i].getMissedSlotCount();
+        }
+        this.warmedUp = warmup != null;
+        this.warmupNanos = warmup == null ? 0l : warmup.getElapsedNanos();
+        this.warmupQuiescent = warmup != null && warmup.isQuiescent();
+        this.monitorCpuNanos = new long[monitors.length];
+        HiccupMonitor hiccups = null;
+        for (int i = 0; i < monitors.length; ++i) {
+            this.monitorCpuNanos[i] =
+                    monitors[i].getThreadUsage().getCpuNanos();
+            if (hiccups == null && monitors[i] instanceof HiccupMonitor) {
+                hiccups = (HiccupMonitor) monitors[i];
+            }
+        }
+        this.roundCount = roundCount;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+        this.pausesDetected = hiccups != null;
+        this.pauseCount = hiccups == null ? 0l : hiccups.getPauseCount();
+        this.maxPauseNanos = hiccups == null ? 0l :
+                hiccups.getMaxPauseNanos();
+        this.totalPauseNanos = hiccups == null ? 0l :
+                hiccups.getTotalPauseNanos();
+
+        // keep the slowest of all the runners' slowest samples.
+        int tailCount = 0;
+        for (int i = 0; i < len; ++i) {
+            SlowestSamples slowest = runners[i].getSlowestSamples();
+            if (slowest != null) {
+                tailCount += slowest.size();
+            }
+        }
+        long starts[] = new long[tailCount];
+        long durations[] = new long[tailCount];
+        int owners[] = new int[tailCount];
+        int pos = 0;
+        for (int i = 0; i < len; ++i) {
+            SlowestSamples slowest = runners[i].getSlowestSamples();
+            for (int j = 0; slowest != null && j < slowest.size(); ++j) {
+                starts[pos] = slowest.getStartNanos(j);
+                durations[pos] = slowest.getDurationNanos(j);
+                owners[pos] = i;
+                ++pos;
+            }
+        }
+        int kept = Math.min(tailCount, SlowestSamples.DEFAULT_CAPACITY);
+        this.tailNanos = new long[kept];
+        this.tailRunners = new int[kept];
+        this.tailDuringPause = new boolean[kept];
+        for (int i = 0; i < kept; ++i) {
+            // selection sort; there are only a few samples per runner.
+            int max = i;
+            for (int j = i + 1; j < tailCount; ++j) {
+                if (durations[j] > durations[max]) {
+                    max = j;
+                }
+            }
+            swap(starts, i, max);
+            swap(durations, i, max);
+            int owner = owners[max];
+            owners[max] = owners[i];
+            owners[i] = owner;
+            this.tailNanos[i] = durations[i];
+            this.tailRunners[i] = owners[i];
+            this.tailDuringPause[i] = hiccups != null &&
+                    hiccups.isPaused(starts[i], durations[i]);
+        }
+        this.startSkewNanos = lastGate - firstGate;
+        this.elapsedNanos = lastEnd - firstStart;
+        this.operationCount = operations;
+        this.windows = timeline == null ? new LoadWindow[0] :
+                timeline.createWindows(lastEnd, len);
+    }
+
+
+    /**
+     * @return the number of (non-monitor) runners in the run.
+     */
+    public int getRunnerCount() {
+        return this.runnerCount;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the runners were held at a start gate and
+     * released together.
+     */
+    public boolean isStartGated() {
+        return this.startGated;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the runners warmed up before being
+     * measured.
+     */
+    public boolean isWarmedUp() {
+        return this.warmedUp;
+    }
+
+
+    /**
+     * @return how long the warmup took, in nanoseconds, or 0 without
+     * warmup.
+     */
+    public long getWarmupNanos() {
+        return this.warmupNanos;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the warmup went on until JIT compilation
+     * went idle, rather than ending at its minimum or maximum time.
+     */
+    public boolean isWarmupQuiescent() {
+        return this.warmupQuiescent;
+    }
+
+
+    /**
+     * @return the aggregate rate the runners were scheduled at, in
+     * operations per second, or 0 if they ran closed loop.
+     */
+    public double getTargetRate() {
+        return this.targetRate;
+    }
+
+
+    /**
+     * @return the number of calls, over all runners, which started a full
+     * schedule interval or more after their scheduled time.  Always 0
+     * when running closed loop.
+     */
+    public long getMissedSlotCount() {
+        return sum(this.runnerMissedSlots);
+    }
+
+
+    public long getRunnerMissedSlotCount(int index) {
+        return this.runnerMissedSlots[index];
+    }
+
+
+    /**
+     * @return the number of rounds the runners completed, or 0 if the run
+     * wasn't in rounds.
+     */
+    public long getRoundCount() {
+        return this.roundCount;
+    }
+
+
+    /**
+     * @return the completed rounds over the elapsed time of the run.
+     */
+    public double getRoundsPerSecond() {
+        return perSecond(this.roundCount, this.elapsedNanos);
+    }
+
+
+    /**
+     * @return the number of metrics windows the run was broken down into,
+     * or 0 if it wasn't.
+     */
+    public int getWindowCount() {
+        return this.windows.length;
+    }
+
+
+    /**
+     * @param index the window's position in the run, from 0.
+     * @return what the runners did during that window.
+     */
+    public LoadWindow getWindow(int index) {
+        return this.windows[index];
+    }
+
+
+    /**
+     * @return the number of garbage collections during the run, or -1 if
+     * the JVM doesn't report it.  This covers the whole JVM, not just the
+     * runners.
+     */
+    public long getGcCount() {
+        return this.gcCount;
+    }
+
+
+    /**
+     * @return the time spent in garbage collection during the run, in
+     * milliseconds, or -1 if the JVM doesn't report it.  Concurrent
+     * collectors count time which did not stop the runners.
+     */
+    public long getGcMillis() {
+        return this.gcMillis;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the run had a <tt>HiccupMonitor</tt>
+     * watching for JVM pauses.
+     */
+    public boolean isPauseDetected() {
+        return this.pausesDetected;
+    }
+
+
+    /**
+     * @return the number of JVM pauses the <tt>HiccupMonitor</tt>
+     * detected, or 0 without one.
+     */
+    public long getPauseCount() {
+        return this.pauseCount;
+    }
+
+
+    /**
+     * @return the longest detected JVM pause, in nanoseconds.
+     */
+    public long getMaxPauseNanos() {
+        return this.maxPauseNanos;
+    }
+
+
+    /**
+     * @return the total time of the detected JVM pauses, in nanoseconds.
+     */
+    public long getTotalPauseNanos() {
+        return this.totalPauseNanos;
+    }
+
+
+    /**
+     * @return the number of slowest operations kept from the run, slowest
+     * first; 0 if latency wasn't recorded.
+     */
+    public int getTailSampleCount() {
+        return this.tailNanos.length;
+    }
+
+
+    /**
+     * @param index the sample's rank, with 0 the slowest operation.
+     * @return that operation's latency, in nanoseconds.
+     */
+    public long getTailSampleNanos(int index) {
+        return this.tailNanos[index];
+    }
+
+
+    /**
+     * @param index the sample's rank, with 0 the slowest operation.
+     * @return the index of the runner which made that operation.
+     */
+    public int getTailSampleRunner(int index) {
+        return this.tailRunners[index];
+    }
+
+
+    /**
+     * @param index the sample's rank, with 0 the slowest operation.
+     * @return <tt>true</tt> if that operation overlapped a detected JVM
+     * pause, and so may not be slow because of the tested code.
+     */
+    public boolean isTailSampleDuringPause(int index) {
+        return this.tailDuringPause[index];
+    }
+
+
+    /**
+     * @return how many of the slowest operations overlapped a detected
+     * JVM pause.
+     */
+    public int getTailSamplesDuringPauses() {
+        int count = 0;
+        for (int i = 0; i < this.tailDuringPause.length; ++i) {
+            if (this.tailDuringPause[i]) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * @return the time between the first and the last runner actually
+     * starting its test, after any start gate but before any warmup, in
+     * nanoseconds.
+     */
+    public long getStartSkewNanos() {
+        return this.startSkewNanos;
+    }
+
+
+    /**
+     * @return the time from the first runner starting its test to the
+     * last runner ending, in nanoseconds.  With a warmup phase, this
+     * starts at the end of the warmup, like the operation counts.
+     */
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+
+    /**
+     * @return the total number of <tt>runTest()</tt> calls completed by
+     * all the runners.
+     */
+    public long getOperationCount() {
+        return this.operationCount;
+    }
+
+
+    /**
+     * @return the aggregate throughput of all the runners: the total
+     * operation count over the elapsed time of the run.
+     */
+    public double getOperationsPerSecond() {
+        return perSecond(this.operationCount, this.elapsedNanos);
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the number of <tt>runTest()</tt> calls that runner completed.
+     */
+    public long getRunnerOperationCount(int index) {
+        return this.runnerOperations[index];
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the time from that runner's start, or the end of the
+     * warmup phase, to its end, in nanoseconds.
+     */
+    public long getRunnerElapsedNanos(int index) {
+        return this.runnerEndNanos[index] - this.runnerStartNanos[index];
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the throughput of that runner alone.
+     */
+    public double getRunnerOperationsPerSecond(int index) {
+        return perSecond(this.runnerOperations[index],
+                getRunnerElapsedNanos(index));
+    }
+
+
+    /**
+     * @return the latencies of all the runners' operations merged
+     * together, or <tt>null</tt> if latency wasn't recorded.
+     */
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the latencies of that runner's operations, or <tt>null</tt>
+     * if latency wasn't recorded.
+     */
+    public LatencyHistogram getRunnerLatency(int index) {
+        return this.runnerLatency[index];
+    }
+
+
+    /**
+     * @return the CPU time used by all the runners, in nanoseconds, or -1
+     * if the JVM couldn't measure it for every runner.
+     */
+    public long getCpuNanos() {
+        return sum(this.runnerCpuNanos);
+    }
+
+
+    /**
+     * @return the CPU time used by all the monitors, in nanoseconds, or -1
+     * if the JVM couldn't measure it for every monitor.  This is not part
+     * of <tt>getCpuNanos()</tt>.
+     */
+    public long getMonitorCpuNanos() {
+        return sum(this.monitorCpuNanos);
+    }
+
+
+    /**
+     * @return the bytes allocated by all the runners, or -1 if the JVM
+     * couldn't measure it for every runner.
+     */
+    public long getAllocatedBytes() {
+        return sum(this.runnerAllocatedBytes);
+    }
+
+
+    /**
+     * @return the number of times any runner blocked to enter a monitor,
+     * or -1 if the JVM couldn't measure it for every runner.
+     */
+    public long getBlockedCount() {
+        return sum(this.runnerBlockedCount);
+    }
+
+
+    /**
+     * @return the total time the runners were blocked entering a monitor,
+     * in milliseconds, or -1 if the JVM couldn't measure it for every
+     * runner, as when the run didn't turn on contention monitoring.
+     */
+    public long getBlockedMillis() {
+        return sum(this.runnerBlockedMillis);
+    }
+
+
+    /**
+     * @return the number of times any runner waited (such as in
+     * <tt>Object.wait()</tt>, a join or a park), or -1 if the JVM couldn't
+     * measure it for every runner.  Without a warmup phase, a runner's
+     * wait at the start gate counts as well.
+     */
+    public long getWaitedCount() {
+        return sum(this.runnerWaitedCount);
+    }
+
+
+    /**
+     * @return the total time the runners were waiting, in milliseconds,
+     * counted as in <tt>getWaitedCount()</tt>, or -1 if the JVM couldn't
+     * measure it for every runner, as when the run didn't turn on
+     * contention monitoring.
+     */
+    public long getWaitedMillis() {
+        return sum(this.runnerWaitedMillis);
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the CPU time used by that runner, in nanoseconds, or -1 if
+     * it couldn't be measured.
+     */
+    public long getRunnerCpuNanos(int index) {
+        return this.runnerCpuNanos[index];
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the bytes allocated by that runner, or -1 if it couldn't be
+     * measured.
+     */
+    public long getRunnerAllocatedBytes(int index) {
+        return this.runnerAllocatedBytes[index];
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the number of times that runner blocked to enter a monitor,
+     * or -1 if it couldn't be measured.
+     */
+    public long getRunnerBlockedCount(int index) {
+        return this.runnerBlockedCount[index];
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the time that runner was blocked entering a monitor, in
+     * milliseconds, or -1 if it couldn't be measured or contention
+     * monitoring was off.
+     */
+    public long getRunnerBlockedMillis(int index) {
+        return this.runnerBlockedMillis[index];
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the number of times that runner waited, or -1 if it
+     * couldn't be measured.
+     */
+    public long getRunnerWaitedCount(int index) {
+        return this.runnerWaitedCount[index];
+    }
+
+
+    /**
+     * @param index the runner's index in the array passed to the
+     *              <tt>MultiThreadedTestRunner</tt>.
+     * @return the time that runner was waiting, in milliseconds, or -1 if
+     * it couldn't be measured or contention monitoring was off.
+     */
+    public long getRunnerWaitedMillis(int index) {
+        return this.runnerWaitedMillis[index];
+    }
+
+
+    public String toString() {
+        return "RunReport[runners=" + this.runnerCount +
+                ", startGated=" + this.startGated +
+                (this.warmedUp ? ", warmup=" + this.warmupNanos + "ns" +
+                        (this.warmupQuiescent ? " (quiescent)" : "") : "") +
+                ", startSkew=" + this.startSkewNanos + "ns" +
+                ", elapsed=" + this.elapsedNanos + "ns" +
+                ", operations=" + this.operationCount +
+                ", ops/sec=" + getOperationsPerSecond() +
+                (this.roundCount > 0l ? ", rounds=" + this.roundCount +
+                        ", rounds/sec=" + getRoundsPerSecond() : "") +
+                (this.windows.length > 0 ? ", windows=" +
+                        this.windows.length : "") +
+                (this.targetRate > 0.0 ? ", targetRate=" + this.targetRate +
+                        ", missedSlots=" + getMissedSlotCount() : "") +
+                ", cpu=" + getCpuNanos() + "ns" +
+                ", monitorCpu=" + getMonitorCpuNanos() + "ns" +
+                ", allocated=" + getAllocatedBytes() + "B" +
+                ", blocked=" + getBlockedCount() + "/" +
+                getBlockedMillis() + "ms" +
+                ", waited=" + getWaitedCount() + "/" +
+                getWaitedMillis() + "ms" +
+                ", gc=" + this.gcCount + "/" + this.gcMillis + "ms" +
+                (this.pausesDetected ? ", pauses=" + this.pauseCount +
+                        " (max " + this.maxPauseNanos + "ns), tailInPauses=" +
+                        getTailSamplesDuringPauses() + "/" +
+                        this.tailNanos.length : "") +
+                (this.latency == null ? "" : ", latency=" + this.latency) +
+                "]";
+    }
+
+
+    /**
+     * Sums the per-runner values, unless any of them is unknown.
+     */
+    private static long sum(long values[]) {
+        long total = 0l;
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] < 0l) {
+                return -1l;
+            }
+            total += values[i];
+        }
+        return total;
+    }
+
+
+    private static void swap(long values[], int a, int b) {
+        long v = values[a];
+        values[a] = values[b];
+        values[b] = v;
+    }
+
+
+    private static double perSecond(long count, long nanos) {
+        if (nanos <= 0l) {
+            return 0.0;
+        }
+        return count * NANOS_PER_SECOND / nanos;
+    }
+}
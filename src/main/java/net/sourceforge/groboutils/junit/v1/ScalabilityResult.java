@@ -0,0 +1,243 @@
+/*
+ * @(#)ScalabilityResult.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import org.junit.Assert;
+
+import java.io.Serializable;
+
+
+/**
+ * The throughput measured by a <tt>ScalabilitySweep</tt> at each runner
+ * count, and its fit to the Universal Scalability Law:
+ * <pre>
+ *   X(N) = lambda N / (1 + sigma (N - 1) + kappa N (N - 1))
+ * </pre>
+ * where <tt>lambda</tt> is the single runner throughput, as measured at
+ * the first level, <tt>sigma</tt>
+ * is the contention coefficient (the serialized fraction, as with
+ * Amdahl's law) and <tt>kappa</tt> is the coherency coefficient (the
+ * cost of keeping the runners' data consistent, which makes throughput
+ * fall past a peak).  Both coefficients are fitted by least squares,
+ * relative to the measured <tt>lambda</tt>, and are never negative.
+ *
+ * @since 5.0.0
+ */
+public final class ScalabilityResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int runnerCounts[];
+    private final RunReport reports[];
+    private final double throughput[];
+    private final double lambda;
+    private final double sigma;
+    private final double kappa;
+
+
+    ScalabilityResult(int runnerCounts[], RunReport reports[]) {
+        this(runnerCounts, reports, getThroughput(reports));
+    }
+
+
+    /**
+     * Fits the given throughput at each runner count; the reports are
+     * only kept for <tt>getRunReport()</tt>.
+     */
+    ScalabilityResult(int runnerCounts[], RunReport reports[],
+                      double throughput[]) {
+        this.runnerCounts = runnerCounts;
+        this.reports = reports;
+        this.throughput = throughput;
+        this.lambda = this.throughput[0] / runnerCounts[0];
+
+        // Dividing out lambda leaves a linear model without intercept:
+        //   lambda N / X(N) - 1 = sigma (N - 1) + kappa N (N - 1)
+        double sxx = 0.0, sxz = 0.0, szz = 0.0, sxy = 0.0, szy = 0.0;
+        for (int i = 0; i < runnerCounts.length; ++i) {
+            if (this.throughput[i] <= 0.0) {
+                continue;
+            }
+            double n = runnerCounts[i];
+            double x = n - 1.0;
+            double z = n * (n - 1.0);
+            double y = this.lambda * n / this.throughput[i] - 1.0;
+            sxx += x * x;
+            sxz += x * z;
+            szz += z * z;
+            sxy += x * y;
+            szy += z * y;
+        }
+        double s = 0.0;
+        double k = 0.0;
+        double det = sxx * szz - sxz * sxz;
+        if (det > 0.0) {
+            s = (sxy * szz - szy * sxz) / det;
+            k = (szy * sxx - sxy * sxz) / det;
+        }
+        // refit with one coefficient when the other comes out negative.
+        if (s < 0.0 || det <= 0.0) {
+            s = 0.0;
+            k = szz > 0.0 ? szy / szz : 0.0;
+        }
+        if (k < 0.0) {
+            k = 0.0;
+            s = sxx > 0.0 ? sxy / sxx : 0.0;
+        }
+        this.sigma = Math.max(0.0, s);
+        this.kappa = Math.max(0.0, k);
+    }
+
+
+    /**
+     * @return the number of runner counts that were measured.
+     */
+    public int getLevelCount() {
+        return this.runnerCounts.length;
+    }
+
+
+    public int getRunnerCount(int level) {
+        return this.runnerCounts[level];
+    }
+
+
+    /**
+     * @return the measured operations per second at the given level.
+     */
+    public double getThroughput(int level) {
+        return this.throughput[level];
+    }
+
+
+    public RunReport getRunReport(int level) {
+        return this.reports[level];
+    }
+
+
+    /**
+     * @return the measured throughput at the given level, relative to
+     * perfect linear scaling of the single runner throughput; 1.0 means
+     * perfect scaling.
+     */
+    public double getEfficiency(int level) {
+        if (this.lambda <= 0.0) {
+            return 0.0;
+        }
+        return this.throughput[level] /
+                (this.lambda * this.runnerCounts[level]);
+    }
+
+
+    /**
+     * @return the single runner throughput, in operations per second, as
+     * measured at the first level; it is not fitted.
+     */
+    public double getLambda() {
+        return this.lambda;
+    }
+
+
+    /**
+     * @return the fitted contention coefficient.
+     */
+    public double getSigma() {
+        return this.sigma;
+    }
+
+
+    /**
+     * @return the fitted coherency coefficient.
+     */
+    public double getKappa() {
+        return this.kappa;
+    }
+
+
+    /**
+     * @return the throughput the fitted curve predicts for the given
+     * number of runners.
+     */
+    public double getPredictedThroughput(int runners) {
+        double n = runners;
+        return this.lambda * n /
+                (1.0 + this.sigma * (n - 1.0) + this.kappa * n * (n - 1.0));
+    }
+
+
+    /**
+     * @return the runner count at which the fitted curve peaks, or
+     * <tt>Double.POSITIVE_INFINITY</tt> if it never does.
+     */
+    public double getPeakRunnerCount() {
+        if (this.kappa <= 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.sqrt(Math.max(0.0, 1.0 - this.sigma) / this.kappa);
+    }
+
+
+    /**
+     * Fails unless every level scaled with at least the given
+     * efficiency.
+     *
+     * @param minEfficiency the lowest acceptable efficiency, between 0
+     *                      and 1.
+     */
+    public void assertMinEfficiency(double minEfficiency) {
+        for (int i = 0; i < this.runnerCounts.length; ++i) {
+            if (getEfficiency(i) < minEfficiency) {
+                Assert.fail("Scaling efficiency at " + this.runnerCounts[i] +
+                        " runner(s) is " + getEfficiency(i) +
+                        ", below the minimum of " + minEfficiency + ":\n" +
+                        this);
+            }
+        }
+    }
+
+
+    private static double[] getThroughput(RunReport reports[]) {
+        double ret[] = new double[reports.length];
+        for (int i = 0; i < reports.length; ++i) {
+            ret[i] = reports[i].getOperationsPerSecond();
+        }
+        return ret;
+    }
+
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("ScalabilityResult[lambda=").append(this.lambda).append(
+                " ops/sec, sigma=").append(this.sigma).append(
+                ", kappa=").append(this.kappa).append(
+                ", peak=").append(getPeakRunnerCount()).append(']');
+        for (int i = 0; i < this.runnerCounts.length; ++i) {
+            sb.append("\n  ").append(this.runnerCounts[i]).append(
+                    " runner(s): ").append(this.throughput[i]).append(
+                    " ops/sec, efficiency ").append(getEfficiency(i));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * @(#)ScalabilitySweep.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Runs the same scenario at 1, 2, 4, ... runners, up to a maximum, and
+ * fits the measured throughput to the Universal Scalability Law.  The
+ * returned <tt>ScalabilityResult</tt> gives the contention and coherency
+ * coefficients and can assert a minimum scaling efficiency, so that a
+ * test fails once a change stops a component from scaling.
+ * <p>
+ * Each level runs for a fixed duration, with every runner calling its
+ * <tt>runTest()</tt> in a loop, so each <tt>runTest()</tt> call should
+ * be a single operation.  The runners of a level start together at a
+ * gate, and warm up before they are measured, so that no level, least of
+ * all the single runner one which the fit is relative to, measures code
+ * the JIT compiler has yet to optimize.
+ *
+ * @since 5.0.0
+ */
+public class ScalabilitySweep {
+    private static final Logger LOG = LoggerFactory.getLogger(
+            ScalabilitySweep.class);
+
+    private static final long DEFAULT_DURATION = 1000l;
+    private static final long DEFAULT_WARMUP_DURATION = 500l;
+    private static final long MAX_TIME_MARGIN = 30l * 1000l;
+
+    private final TestRunnableFactory factory;
+    private final TestRunnable monitors[];
+    private int maxRunners = Runtime.getRuntime().availableProcessors();
+    private long duration = DEFAULT_DURATION;
+    private long warmupDuration = DEFAULT_WARMUP_DURATION;
+
+
+    /**
+     * @param factory creates the runners for each level.
+     */
+    public ScalabilitySweep(TestRunnableFactory factory) {
+        this(factory, null);
+    }
+
+
+    /**
+     * @param factory  creates the runners for each level.
+     * @param monitors monitors to run along with every level, which may
+     *                 be <tt>null</tt>.
+     */
+    public ScalabilitySweep(TestRunnableFactory factory,
+                            TestRunnable monitors[]) {
+        if (factory == null) {
+            throw new IllegalArgumentException("no null factory");
+        }
+        this.factory = factory;
+        this.monitors = monitors;
+    }
+
+
+    /**
+     * Sets the largest number of runners to measure.  This defaults to
+     * the number of processors available to the JVM, which recent JVMs
+     * limit to the container's CPU quota.  If it's not a power of two, it
+     * is measured after the largest power of two below it.
+     */
+    public void setMaxRunners(int maxRunners) {
+        if (maxRunners <= 0) {
+            throw new IllegalArgumentException(
+                    "runner count must be positive");
+        }
+        this.maxRunners = maxRunners;
+    }
+
+
+    /**
+     * Sets how long each level runs.  Defaults to 1 second.
+     */
+    public void setDuration(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException(
+                    "duration must be positive");
+        }
+        this.duration = millis;
+    }
+
+
+    /**
+     * Sets how long the runners of each level warm up before they are
+     * measured; see <tt>MultiThreadedTestRunner.setWarmupDuration()</tt>.
+     * Defaults to half a second.
+     *
+     * @param millis the warmup time per level, or 0 for no warmup.
+     */
+    public void setWarmupDuration(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException(
+                    "duration must be non-negative");
+        }
+        this.warmupDuration = millis;
+    }
+
+
+    /**
+     * Measures each level in turn.
+     *
+     * @return the measurements and the fitted scalability curve.
+     * @throws Throwable the exception from any failed level.
+     */
+    public ScalabilityResult run() throws Throwable {
+        int levels[] = getLevels(this.maxRunners);
+        RunReport reports[] = new RunReport[levels.length];
+        for (int i = 0; i < levels.length; ++i) {
+            TestRunnable runners[] = new TestRunnable[levels[i]];
+            for (int j = 0; j < runners.length; ++j) {
+                runners[j] = this.factory.createTestRunnable(j);
+                if (runners[j] == null) {
+                    throw new IllegalStateException(
+                            "factory created a null runner");
+                }
+            }
+            MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(
+                    runners, this.monitors);
+            mttr.setSimultaneousStart(true);
+            mttr.setDuration(this.duration);
+            mttr.setWarmupDuration(this.warmupDuration);
+            reports[i] = mttr.runTestRunnables(this.warmupDuration +
+                    this.duration + MAX_TIME_MARGIN);
+            LOG.debug(levels[i] + " runner(s): " +
+                    reports[i].getOperationsPerSecond() + " ops/sec");
+        }
+        return new ScalabilityResult(levels, reports);
+    }
+
+
+    /**
+     * @return 1, 2, 4, ... up to and including <tt>max</tt>.
+     */
+    static int[] getLevels(int max) {
+        int count = 0;
+        for (int n = 1; n < max; n *= 2) {
+            ++count;
+        }
+        int ret[] = new int[count + 1];
+        int n = 1;
+        for (int i = 0; i < count; ++i) {
+            ret[i] = n;
+            n *= 2;
+        }
+        ret[count] = max;
+        return ret;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * @(#)SequentialModel.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * The sequential specification of a concurrent object, against which a
+ * <tt>LinearizabilityChecker</tt> checks the operations the runners
+ * recorded into an <tt>OperationHistory</tt>.
+ * <p>
+ * States must be immutable, and implement <tt>equals()</tt> and
+ * <tt>hashCode()</tt>: the checker keeps the states it already reached,
+ * with the same operations applied, so as to never search the same
+ * branch twice.
+ *
+ * @since 5.0.0
+ */
+public interface SequentialModel {
+    /**
+     * The result passed to <tt>step()</tt> for an operation which never
+     * completed.  Such an operation may or may not have taken effect, so
+     * the model should apply it as if it had returned whatever it would
+     * have returned from the given state.  A model which rejects it
+     * treats the operation as never having taken effect, which can report
+     * violations that did not happen.
+     */
+    Object UNKNOWN_RESULT = new Object() {
+        public String toString() {
+            return "(unknown)";
+        }
+    };
+
+
+    /**
+     * @return the state of a new object; never <tt>null</tt>.
+     */
+    Object initialState();
+
+
+    /**
+     * Applies an operation to a state, if the operation could have
+     * returned the recorded result from that state.
+     *
+     * @param state     the state before the operation.
+     * @param operation the operation code given to
+     *                  <tt>HistoryRecorder.invoke()</tt>.
+     * @param argument  the operation's argument.
+     * @param result    the result the operation returned, or
+     *                  <tt>UNKNOWN_RESULT</tt> if it never returned.
+     * @return the state after the operation, or <tt>null</tt> if the
+     * operation could not have returned that result from that state.
+     */
+    Object step(Object state, int operation, Object argument,
+                Object result);
+
+
+    /**
+     * Tells which part of the object an operation works on, such as the
+     * key of a map operation.  Operations on different parts are checked
+     * apart, starting each part from the initial state, which is far
+     * faster than checking them together.  If any operation returns
+     * <tt>null</tt>, such as the size of a map, the whole history is
+     * checked together.
+     *
+     * @return the part the operation works on, or <tt>null</tt> if it
+     * works on the whole object.
+     */
+    Object partition(int operation, Object argument);
+}
@@ -0,0 +1,99 @@
+/*
+ * @(#)SlowestSamples.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * Keeps the start time and duration of a runner's slowest operations, so
+ * that the tail of its latency histogram can be matched up against
+ * pauses detected during the run.  Written by a single thread, into
+ * preallocated arrays; once full, an operation no slower than the
+ * fastest one kept costs a single comparison.
+ *
+ * @since 5.0.0
+ */
+final class SlowestSamples {
+    static final int DEFAULT_CAPACITY = 16;
+
+    private final long starts[];
+    private final long durations[];
+    private int size = 0;
+    private int fastest = 0;
+
+
+    SlowestSamples(int capacity) {
+        this.starts = new long[capacity];
+        this.durations = new long[capacity];
+    }
+
+
+    void clear() {
+        this.size = 0;
+        this.fastest = 0;
+    }
+
+
+    void offer(long startNanos, long durationNanos) {
+        if (this.size < this.starts.length) {
+            this.starts[this.size] = startNanos;
+            this.durations[this.size] = durationNanos;
+            ++this.size;
+            if (this.size == this.starts.length) {
+                findFastest();
+            }
+        } else if (durationNanos > this.durations[this.fastest]) {
+            this.starts[this.fastest] = startNanos;
+            this.durations[this.fastest] = durationNanos;
+            findFastest();
+        }
+    }
+
+
+    int size() {
+        return this.size;
+    }
+
+
+    long getStartNanos(int index) {
+        return this.starts[index];
+    }
+
+
+    long getDurationNanos(int index) {
+        return this.durations[index];
+    }
+
+
+    private void findFastest() {
+        int min = 0;
+        for (int i = 1; i < this.size; ++i) {
+            if (this.durations[i] < this.durations[min]) {
+                min = i;
+            }
+        }
+        this.fastest = min;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * @(#)SplitMix64.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * A small, fast pseudo-random generator for a single thread, using the
+ * SplitMix64 algorithm of <tt>java.util.SplittableRandom</tt>, which this
+ * library can't use as it runs on JVMs older than Java 8.  Its output
+ * passes the usual statistical tests, and the same seed always gives the
+ * same sequence.  Instances are not safe for concurrent use; give each
+ * thread its own.
+ *
+ * @since 5.0.0
+ */
+public final class SplitMix64 {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double DOUBLE_UNIT = 1.0 / (1l << 53);
+
+    private long seed;
+
+
+    public SplitMix64(long seed) {
+        this.seed = seed;
+    }
+
+
+    /**
+     * Restarts the sequence from the given seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+
+    public long nextLong() {
+        this.seed += GOLDEN_GAMMA;
+        return mix(this.seed);
+    }
+
+
+    /**
+     * @param bound the upper bound, exclusive; must be positive.
+     * @return a value from 0 up to, but excluding, the bound, with every
+     * value equally likely.
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int bits;
+        int value;
+        do {
+            // discard the top of the range, which would favor low values.
+            bits = (int) (nextLong() >>> 33);
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0);
+        return value;
+    }
+
+
+    /**
+     * @return a value from 0 up to, but excluding, 1.
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+
+    /**
+     * Returns a seed scrambled from the current time, for runs which are
+     * not given one.
+     */
+    static long createSeed() {
+        return mix(System.nanoTime() + System.identityHashCode(
+                new Object()));
+    }
+
+
+    /**
+     * The SplitMix64 finalizer; scatters neighbouring values across the
+     * whole range.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * @(#)StackSamplingMonitor.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * A monitor which periodically samples the stacks of the run's runner
+ * threads (and no other threads), to show where a slow run spends its
+ * time.  The samples are aggregated in the collapsed stack format read by
+ * flame graph tools: one line per distinct stack, with the frames from
+ * the root to the leaf separated by semicolons, followed by the number of
+ * samples.
+ * <p>
+ * The sampler keeps its own cost bounded: whenever the time spent
+ * sampling so far exceeds the allowed fraction of its run time, it waits
+ * longer before the next sample.  The time spent sampling is reported, along
+ * with the resulting overhead.
+ * <p>
+ * If given an output file, the monitor writes the collapsed stacks there
+ * when the run ends, such as next to the test report in
+ * <tt>target/surefire-reports</tt>.
+ *
+ * @since 5.0.0
+ */
+public class StackSamplingMonitor extends TestMonitorRunnable {
+    private static final ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean();
+    private static final long DEFAULT_INTERVAL = 10l;
+    private static final double DEFAULT_MAX_OVERHEAD = 0.02;
+
+    private final long intervalNanos;
+    private final double maxOverhead;
+    private final File output;
+    private final Map stacks = new HashMap();
+    private long sampleCount;
+    private long samplingNanos;
+    private long startNanos;
+    private long endNanos;
+
+
+    /**
+     * Samples every 10 milliseconds, keeping the overhead below 2%, and
+     * writes the stacks to the given file at the end of the run.
+     *
+     * @param output the file for the collapsed stacks, or <tt>null</tt>
+     *               to only keep them in memory.
+     */
+    public StackSamplingMonitor(File output) {
+        this(DEFAULT_INTERVAL, DEFAULT_MAX_OVERHEAD, output);
+    }
+
+
+    /**
+     * @param intervalMillis the time between samples.
+     * @param maxOverhead    the largest fraction of the time which may be
+     *                       spent sampling, such as 0.02 for 2%.
+     * @param output         the file for the collapsed stacks, or
+     *                       <tt>null</tt> to only keep them in memory.
+     */
+    public StackSamplingMonitor(long intervalMillis, double maxOverhead,
+                                File output) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "interval must be positive");
+        }
+        if (maxOverhead <= 0.0 || maxOverhead > 1.0) {
+            throw new IllegalArgumentException(
+                    "overhead must be greater than 0 and at most 1");
+        }
+        this.intervalNanos = intervalMillis * 1000000l;
+        this.maxOverhead = maxOverhead;
+        this.output = output;
+    }
+
+
+    /**
+     * Takes a throw-away sample before the run starts, so that the one
+     * time setup cost of the management bean doesn't count as overhead.
+     */
+    void beforeRun() {
+        THREADS.getThreadInfo(new long[]{Thread.currentThread().getId()},
+                Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Samples until the runners end, then writes the output file.
+     */
+    public void runTest() throws Throwable {
+        synchronized (this) {
+            this.stacks.clear();
+            this.sampleCount = 0l;
+            this.samplingNanos = 0l;
+            this.startNanos = System.nanoTime();
+        }
+        try {
+            super.runTest();
+        } catch (InterruptedException ie) {
+            // the runners are done, and interrupted our wait.
+        } finally {
+            synchronized (this) {
+                this.endNanos = System.nanoTime();
+            }
+        }
+        LOG.debug("Stack sampling: " + getSampleCount() + " samples, " +
+                (getOverhead() * 100.0) + "% overhead");
+        if (this.output != null) {
+            writeCollapsedStacks(this.output);
+        }
+    }
+
+
+    /**
+     * Takes one sample of every runner thread.
+     */
+    public void runMonitor() throws Throwable {
+        long start = System.nanoTime();
+        Thread threads[] = getTestRunner().getRunnerThreads();
+        long ids[] = new long[threads.length];
+        for (int i = 0; i < threads.length; ++i) {
+            ids[i] = threads[i].getId();
+        }
+        ThreadInfo infos[] = THREADS.getThreadInfo(ids, Integer.MAX_VALUE);
+
+        synchronized (this) {
+            for (int i = 0; i < threads.length; ++i) {
+                // virtual threads aren't known to the management bean.
+                StackTraceElement stack[] = infos[i] != null ?
+                        infos[i].getStackTrace() : threads[i].getStackTrace();
+                if (stack.length > 0) {
+                    addSample(stack);
+                }
+            }
+            this.samplingNanos += System.nanoTime() - start;
+        }
+    }
+
+
+    /**
+     * Waits for the sampling interval, or longer if that is needed to
+     * bring the overhead so far back within the allowed fraction.
+     */
+    protected void yieldProcessing() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long budgetEnd = this.startNanos +
+                    (long) (this.samplingNanos / this.maxOverhead);
+            waitNanos = Math.max(this.intervalNanos,
+                    budgetEnd - System.nanoTime());
+        }
+        Thread.sleep(waitNanos / 1000000l, (int) (waitNanos % 1000000l));
+    }
+
+
+    /**
+     * @return the number of stacks sampled.
+     */
+    public synchronized long getSampleCount() {
+        return this.sampleCount;
+    }
+
+
+    /**
+     * @return the total time spent taking samples, in nanoseconds.
+     */
+    public synchronized long getSamplingNanos() {
+        return this.samplingNanos;
+    }
+
+
+    /**
+     * @return the fraction of the sampler's run time spent taking
+     * samples.
+     */
+    public synchronized double getOverhead() {
+        long end = this.endNanos >= this.startNanos ? this.endNanos :
+                System.nanoTime();
+        long elapsed = end - this.startNanos;
+        return elapsed <= 0l ? 0.0 : (double) this.samplingNanos / elapsed;
+    }
+
+
+    /**
+     * @return the samples in collapsed stack format, sorted by stack.
+     */
+    public synchronized String getCollapsedStacks() {
+        StringBuffer sb = new StringBuffer();
+        Iterator iter = new TreeMap(this.stacks).entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry entry = (Map.Entry) iter.next();
+            sb.append(entry.getKey()).append(' ').append(
+                    ((long[]) entry.getValue())[0]).append('\n');
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Writes the samples in collapsed stack format to the given file.
+     */
+    public void writeCollapsedStacks(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8");
+        try {
+            out.write(getCollapsedStacks());
+        } finally {
+            out.close();
+        }
+    }
+
+
+    private void addSample(StackTraceElement stack[]) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = stack.length; --i >= 0; ) {
+            sb.append(stack[i].getClassName()).append('.').append(
+                    stack[i].getMethodName());
+            if (i > 0) {
+                sb.append(';');
+            }
+        }
+        String key = sb.toString();
+        long count[] = (long[]) this.stacks.get(key);
+        if (count == null) {
+            count = new long[1];
+            this.stacks.put(key, count);
+        }
+        ++count[0];
+        ++this.sampleCount;
+    }
+}
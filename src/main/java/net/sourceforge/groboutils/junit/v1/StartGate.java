@@ -0,0 +1,90 @@
+/*
+ * @(#)StartGate.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Holds back the runners and monitors of a run until all of them are
+ * ready, then releases them at once.  Without this, the first started
+ * threads can finish their first operations before the last thread even
+ * exists, which weakens any race on a short critical section.
+ * <p>
+ * Waiting threads first spin briefly on a volatile flag, so that threads
+ * which arrive last are released with no wake-up delay, and only then
+ * park.
+ *
+ * @since 5.0.0
+ */
+class StartGate {
+    private static final int SPIN_COUNT = 1 << 14;
+
+    private final CountDownLatch ready;
+    private final CountDownLatch released = new CountDownLatch(1);
+    private volatile boolean open = false;
+
+
+    StartGate(int threadCount) {
+        this.ready = new CountDownLatch(threadCount);
+    }
+
+
+    /**
+     * Called by each runner and monitor thread: marks it as ready, and
+     * waits until the gate opens.
+     */
+    void arriveAndAwait() throws InterruptedException {
+        this.ready.countDown();
+        for (int i = 0; i < SPIN_COUNT; ++i) {
+            if (this.open) {
+                return;
+            }
+        }
+        this.released.await();
+    }
+
+
+    /**
+     * Called by the core thread: waits for every thread to arrive, up to
+     * the given number of nanoseconds.
+     *
+     * @return <tt>true</tt> if all threads arrived in time.
+     */
+    boolean awaitReady(long timeoutNanos) throws InterruptedException {
+        return this.ready.await(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Releases every waiting thread.
+     */
+    void open() {
+        this.open = true;
+        this.released.countDown();
+    }
+}
@@ -40,6 +40,9 @@ package net.sourceforge.groboutils.junit.v1;
  * @since July 12, 2003
  */
 public abstract class TestMonitorRunnable extends TestRunnable {
+    private volatile MonitorScheduler scheduler;
+
+
     public TestMonitorRunnable() {
         super(true);
     }
@@ -78,15 +81,36 @@ public abstract class TestMonitorRunnable extends TestRunnable {
      * Instructs the thread to pause for a while.  This method is called
      * by the <tt>runTest()</tt> method's loop, immediately after
      * each <tt>runMonitor()</tt> invocation.  The default implementation
-     * performs a <tt>Thread.yield()</tt> call, but by putting it into
-     * this method, that behavior can be modified.
+     * waits for the next tick of the run's shared monitor schedule (see
+     * <tt>MultiThreadedTestRunner.setMonitorPeriod()</tt>), or performs a
+     * <tt>Thread.yield()</tt> call if the run has no schedule.  By putting
+     * it into this method, that behavior can be modified.
      *
      * @throws InterruptedException allows for overloading methods to
      *                              perform a <tt>delay( long )</tt> call within their
      *                              implementation.
      */
     protected void yieldProcessing() throws InterruptedException {
-        Thread.yield();
+        MonitorScheduler s = this.scheduler;
+        if (s == null) {
+            Thread.yield();
+        } else {
+            try {
+                s.awaitTick();
+            } catch (InterruptedException e) {
+                // end the loop, but still make the final pass.
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * Sets the schedule which paces the default <tt>yieldProcessing()</tt>,
+     * or <tt>null</tt> to yield instead.
+     */
+    void setMonitorScheduler(MonitorScheduler scheduler) {
+        this.scheduler = scheduler;
     }
 }
 
@@ -34,6 +34,10 @@ import org.junit.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
 
 /**
  * Instances of this class only execute in the
@@ -74,16 +78,53 @@ public abstract class TestRunnable extends Assert
     private static final Class THIS_CLASS = TestRunnable.class;
     protected static final Logger LOG = LoggerFactory.getLogger(THIS_CLASS);
     private static int testCount = 0;
+    private static final long PROFILE_CHECK_NANOS = 1000000l;
 
     private MultiThreadedTestRunner mttr;
+    private CountDownLatch doneSignal;
+    private StartGate startGate;
+    private long iterations = 1l;
+    private long durationNanos = 0l;
+    private long gateNanos;
+    private long startNanos;
+    private long endNanos;
+    private long operationCount;
+    private LatencyHistogram latency;
+    private SlowestSamples slowest;
+    private final ThreadUsage usage = new ThreadUsage();
+    private ProgressCounters progress;
+    private int progressIndex;
+    private boolean collectFailures = false;
+    private ControlledScheduler scheduler;
+    private WarmupPhase warmup;
+    private RoundBarrier rounds;
+    private LoadTimeline timeline;
+    private int timelineIndex;
+    private LatencyHistogram windowLatency;
+    private boolean windowsOpen = false;
+    private volatile boolean loadIdle = false;
+    private volatile long loadSwitches;
+    private int windowIndex = -1;
+    private long windowEndNanos;
+    private long slotIntervalNanos = 0l;
+    private long slotOffsetNanos = 0l;
+    private long nextSlotNanos;
+    private long missedSlots;
+    private long allocationBudget = -1l;
+    private int schedulerIndex;
+    private volatile Thread runningThread;
+    private volatile boolean ended = false;
     private int testIndex;
     private boolean ignoreStopErrors = false;
+    private final EventRing events;
 
 
     public TestRunnable() {
         synchronized (THIS_CLASS) {
             this.testIndex = testCount++;
         }
+        this.events = new EventRing("test thread " + this.testIndex,
+                EventRing.DEFAULT_CAPACITY);
     }
 
 
@@ -138,18 +179,52 @@ public abstract class TestRunnable extends Assert
                             "started through the MultiThreadedTestRunner instance.");
         }
 
-        LOG.info("Starting test thread " + this.testIndex);
+        // the lifecycle goes into this instance's event ring rather than
+        // the log, which would cost a string and a trip through the
+        // logging backend per runner.
+        this.runningThread = Thread.currentThread();
+        this.events.record(EventRing.STARTED, 0l);
         try {
-            runTest();
+            // the usage snapshot calls into the VM, so it is taken before
+            // the gate rather than spreading the released runners apart.
+            // Waiting there allocates nothing and spins only briefly.
+            this.usage.start();
+            if (this.startGate != null) {
+                this.startGate.arriveAndAwait();
+            }
+            // before anything else, so the start skew shows only how the
+            // gate released the runners.
+            this.gateNanos = System.nanoTime();
+            this.startNanos = this.gateNanos;
+            if (this.startGate != null) {
+                this.events.record(EventRing.PASSED_GATE, 0l);
+            }
+            if (this.scheduler != null) {
+                this.scheduler.begin(this.schedulerIndex);
+            }
+            if (this.warmup != null) {
+                runWarmup(this.warmup);
+                restartMeasurements();
+            }
+            if (this.rounds == null) {
+                runOperations(this.startNanos);
+            } else {
+                runRounds(this.rounds);
+            }
         } catch (InterruptedException ie) {
             // ignore these exceptions - they represent the MTTR
             // interrupting the tests.
+            this.events.record(EventRing.INTERRUPTED, this.operationCount);
+        } catch (BrokenBarrierException bbe) {
+            // another runner was interrupted while waiting for the next
+            // round, so the run is being halted.
+            this.events.record(EventRing.INTERRUPTED, this.operationCount);
         } catch (MultiThreadedTestRunner.TestDeathException tde) {
             // ignore these exceptions as they relate to thread-related
             // exceptions.  These represent the MTTR stopping us.
             // Our response is to actually rethrow the exception.
             if (!this.ignoreStopErrors) {
-                LOG.info("Aborted test thread " + this.testIndex);
+                this.events.record(EventRing.ABORTED, this.operationCount);
                 throw tde;
             }
         } catch (Throwable t) {
@@ -158,9 +233,406 @@ public abstract class TestRunnable extends Assert
 
             // Note that ThreadDeath exceptions must be re-thrown after
             // the interruption has occured.
-            this.mttr.handleException(t);
+            this.events.record(EventRing.FAILED, this.operationCount);
+            this.mttr.handleException(this, t);
+        } finally {
+            // tell the owning runner that we're done, no matter how we
+            // ended; the core thread blocks on this signal rather than
+            // polling each thread.
+            this.endNanos = System.nanoTime();
+            this.usage.stop();
+            this.ended = true;
+            this.runningThread = null;
+            if (this.scheduler != null) {
+                this.scheduler.end(this.schedulerIndex);
+            }
+            this.events.record(EventRing.ENDED, this.operationCount);
+            if (this.doneSignal != null) {
+                this.doneSignal.countDown();
+            }
+        }
+    }
+
+
+    /**
+     * Calls <tt>runTest()</tt> until the warmup phase is over.  The calls
+     * are measured like any other, so the measurements must be restarted
+     * afterwards.
+     */
+    private void runWarmup(WarmupPhase phase) throws Throwable {
+        long start = System.nanoTime();
+        phase.runnerStarted(start);
+        startSchedule(start);
+        long calls = 0l;
+        boolean warmedUp = false;
+        try {
+            while (!this.mttr.areThreadsFinished()) {
+                runOperation();
+                long now = System.nanoTime();
+                if (!warmedUp) {
+                    ++calls;
+                    if (phase.isMinimumReached(calls, now - start)) {
+                        warmedUp = true;
+                        phase.runnerWarmedUp(now);
+                    }
+                }
+                if (warmedUp && phase.poll(now)) {
+                    break;
+                }
+            }
+        } finally {
+            // never hold up the other runners.
+            if (!warmedUp) {
+                phase.runnerWarmedUp(System.nanoTime());
+            }
+        }
+    }
+
+
+    /**
+     * Discards what was measured so far, such as during warmup.
+     */
+    private void restartMeasurements() {
+        this.operationCount = 0l;
+        this.missedSlots = 0l;
+        if (this.latency != null) {
+            this.latency.reset();
+            this.slowest.clear();
+        }
+        this.usage.start();
+        this.startNanos = System.nanoTime();
+        measurementsRestarted();
+    }
+
+
+    /**
+     * Runs the operations once per round, waiting for the other runners
+     * before each round.
+     */
+    private void runRounds(RoundBarrier barrier) throws Throwable {
+        while (barrier.awaitNextRound() &&
+                !this.mttr.areThreadsFinished()) {
+            this.events.record(EventRing.ROUND_STARTED, barrier.getRound());
+            // each round gets its full duration and a fresh schedule;
+            // the run's start stays as it is, for the report.
+            runOperations(System.nanoTime());
+        }
+    }
+
+
+    /**
+     * Calls <tt>runTest()</tt> once, or in a loop when the owning runner
+     * measures throughput.  The loop only touches primitives, so it adds
+     * no allocation of its own to the measured operations.
+     *
+     * @param start when these operations started; the start of the run,
+     *              or of the current round.
+     */
+    private void runOperations(long start) throws Throwable {
+        startSchedule(start);
+        LoadTimeline clock = this.timeline;
+        if (clock == null) {
+            runLoop(start);
+            return;
+        }
+        // warmup calls never count towards a window.
+        clock.start(start);
+        this.windowsOpen = true;
+        try {
+            if (clock.getProfile() == null) {
+                runLoop(start);
+            } else {
+                runProfile(clock);
+            }
+        } finally {
+            flushWindow();
+            this.windowsOpen = false;
+        }
+    }
+
+
+    private void runLoop(long start) throws Throwable {
+        if (this.durationNanos > 0l) {
+            long endTime = start + this.durationNanos;
+            do {
+                runOperation();
+            } while (System.nanoTime() - endTime < 0l &&
+                    !this.mttr.areThreadsFinished());
+        } else {
+            // count the calls rather than the completed operations, as
+            // failed calls may be collected rather than end the loop.
+            long remaining = this.iterations;
+            do {
+                runOperation();
+            } while (--remaining > 0l &&
+                    !this.mttr.areThreadsFinished());
+        }
+    }
+
+
+    /**
+     * Calls <tt>runTest()</tt> while the load profile has this instance
+     * active, until the profile ends.  An inactive instance checks back
+     * every millisecond; once active again, its fixed rate schedule, if
+     * any, starts over rather than catching up on the slots it missed.
+     * Each switch between active and idle is published for the progress
+     * watchdog.
+     */
+    private void runProfile(LoadTimeline clock) throws Throwable {
+        LoadProfile profile = clock.getProfile();
+        boolean active = false;
+        boolean idle = false;
+        long now = System.nanoTime();
+        while (true) {
+            // another runner may still move the start earlier.
+            long loadStart = clock.getStartNanos();
+            long endTime = loadStart + profile.getDurationNanos();
+            if (now - endTime >= 0l || this.mttr.areThreadsFinished()) {
+                break;
+            }
+            if (this.timelineIndex < profile.getActiveRunners(
+                    now - loadStart)) {
+                if (!active) {
+                    startSchedule(now);
+                    active = true;
+                    idle = false;
+                    switchLoad(false);
+                }
+                runOperation();
+            } else {
+                if (!idle) {
+                    idle = true;
+                    active = false;
+                    switchLoad(true);
+                }
+                LockSupport.parkNanos(Math.min(PROFILE_CHECK_NANOS,
+                        endTime - now));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            now = System.nanoTime();
+        }
+    }
+
+
+    private void switchLoad(boolean idle) {
+        this.loadIdle = idle;
+        // only this runner's thread writes the count.
+        this.loadSwitches = this.loadSwitches + 1l;
+    }
+
+
+    /**
+     * Calls <tt>runTest()</tt> once.  When the owning runner collects all
+     * failures, a failed call is handed to it instead of ending this
+     * runner.
+     */
+    private void runOperation() throws Throwable {
+        if (!this.collectFailures) {
+            runTimedOperation();
+            return;
+        }
+        try {
+            runTimedOperation();
+        } catch (InterruptedException ie) {
+            throw ie;
+        } catch (MultiThreadedTestRunner.TestDeathException tde) {
+            throw tde;
+        } catch (ThreadDeath td) {
+            throw td;
+        } catch (Throwable t) {
+            this.mttr.collectFailure(t);
+        }
+    }
+
+
+    /**
+     * Calls <tt>runTest()</tt> once, recording its latency if requested.
+     */
+    private void runTimedOperation() throws Throwable {
+        LatencyHistogram histogram = this.latency;
+        boolean timed = histogram != null || this.windowLatency != null;
+        if (this.slotIntervalNanos > 0l) {
+            // open loop: the latency counts from when the call should
+            // have started, so time spent behind schedule is not hidden.
+            long intended = awaitNextSlot();
+            runTest();
+            if (timed) {
+                recordLatency(histogram, intended);
+            }
+        } else if (!timed) {
+            runTest();
+        } else {
+            long start = System.nanoTime();
+            runTest();
+            recordLatency(histogram, start);
+        }
+        ++this.operationCount;
+        reportProgress();
+    }
+
+
+    private void recordLatency(LatencyHistogram histogram, long start) {
+        long now = System.nanoTime();
+        long duration = now - start;
+        if (histogram != null) {
+            histogram.record(duration);
+            this.slowest.offer(start, duration);
+        }
+        LatencyHistogram window = this.windowLatency;
+        if (window != null && this.windowsOpen) {
+            if (this.windowIndex < 0 || now - this.windowEndNanos >= 0l) {
+                flushWindow();
+                this.windowIndex = this.timeline.getWindowIndex(now);
+                this.windowEndNanos = this.timeline.getWindowEndNanos(
+                        this.windowIndex);
+            }
+            window.record(duration);
+        }
+    }
+
+
+    /**
+     * Adds the calls timed in the current window into the shared window.
+     */
+    private void flushWindow() {
+        LatencyHistogram window = this.windowLatency;
+        if (window == null || this.windowIndex < 0) {
+            return;
+        }
+        if (window.getCount() > 0l) {
+            this.timeline.addToWindow(this.windowIndex, window);
+            window.reset();
         }
-        LOG.info("Ended test thread " + this.testIndex);
+        this.windowIndex = -1;
+    }
+
+
+    /**
+     * Sets the first slot of the fixed rate schedule, if any.
+     */
+    private void startSchedule(long now) {
+        this.nextSlotNanos = now + this.slotOffsetNanos;
+    }
+
+
+    /**
+     * Waits for the next slot of the fixed rate schedule.  A call which
+     * is already late still runs right away, rather than skipping its
+     * slot; if it's late by a full interval or more, it counts as a
+     * missed slot.
+     *
+     * @return the time the call was scheduled for.
+     */
+    private long awaitNextSlot() throws InterruptedException {
+        long intended = this.nextSlotNanos;
+        this.nextSlotNanos = intended + this.slotIntervalNanos;
+        long wait = intended - System.nanoTime();
+        if (wait <= 0l) {
+            if (-wait >= this.slotIntervalNanos) {
+                ++this.missedSlots;
+            }
+            return intended;
+        }
+        do {
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            wait = intended - System.nanoTime();
+        } while (wait > 0l);
+        return intended;
+    }
+
+
+    /**
+     * Tells the owning runner's progress watchdog (see
+     * <tt>MultiThreadedTestRunner.setProgressTimeout()</tt>) that this
+     * instance is still getting work done.  Long running tests should call
+     * this whenever they complete a step, such as a successful retry.  The
+     * call only bumps a counter which no other runner writes to, so it is
+     * cheap enough for inner loops.  It must only be called from within
+     * <tt>runTest()</tt>.
+     */
+    public void reportProgress() {
+        ProgressCounters counters = this.progress;
+        if (counters != null) {
+            counters.increment(this.progressIndex);
+        }
+    }
+
+
+    /**
+     * Fails the run if this runner allocates more than the given number of
+     * bytes per <tt>runTest()</tt> call, on average over its measured
+     * calls.  Use 0 for code which must not allocate at all.  The first
+     * calls tend to allocate while classes load and code compiles, so
+     * combine this with a warmup (see
+     * <tt>MultiThreadedTestRunner.setWarmupIterations()</tt>).  On JVMs
+     * which can't count a thread's allocations, the budget is only
+     * logged as unchecked.
+     *
+     * @param maxBytesPerOperation the budget, or -1 for none, the default.
+     */
+    public void setAllocationBudget(long maxBytesPerOperation) {
+        if (maxBytesPerOperation < -1l) {
+            throw new IllegalArgumentException(
+                    "budget must be non-negative, or -1 for none");
+        }
+        this.allocationBudget = maxBytesPerOperation;
+    }
+
+
+    /**
+     * @return the allocation budget in bytes per <tt>runTest()</tt> call,
+     * or -1 if there is none.
+     */
+    public long getAllocationBudget() {
+        return this.allocationBudget;
+    }
+
+
+    /**
+     * Marks a point where another runner may take over, when the runners
+     * are under a controlled schedule (see <tt>InterleavingExplorer</tt>).
+     * Under such a schedule only one runner proceeds at a time, and only
+     * hands over at these points, so place them between the steps whose
+     * interleaving matters, such as around each access to shared state.
+     * Outside of a controlled schedule, this does nothing.  It must only
+     * be called from within <tt>runTest()</tt>.
+     *
+     * @throws InterruptedException if the run is halted while waiting for
+     *                              this runner's next turn.
+     */
+    public void yieldPoint() throws InterruptedException {
+        ControlledScheduler s = this.scheduler;
+        if (s != null) {
+            s.yieldPoint(this.schedulerIndex);
+        }
+    }
+
+
+    /**
+     * Returns the index, from 0 or from the replayed round, of the round
+     * this runner is in, when the owning runner runs in rounds (see
+     * <tt>MultiThreadedTestRunner.setRounds()</tt>); otherwise 0.
+     */
+    public long getRound() {
+        RoundBarrier r = this.rounds;
+        return r == null ? 0l : r.getRound();
+    }
+
+
+    /**
+     * Returns the seed of the round this runner is in, when the owning
+     * runner runs in rounds; otherwise 0.  Runners which make random
+     * choices should seed them from this, so that a failed round can be
+     * replayed.
+     */
+    public long getRoundSeed() {
+        RoundBarrier r = this.rounds;
+        return r == null ? 0l : r.getSeed();
     }
 
 
@@ -181,5 +653,282 @@ public abstract class TestRunnable extends Assert
     void setTestRunner(MultiThreadedTestRunner mttr) {
         this.mttr = mttr;
     }
+
+
+    MultiThreadedTestRunner getTestRunner() {
+        return this.mttr;
+    }
+
+
+    /**
+     * Returns the lifecycle events this instance recorded in its current
+     * or last run.
+     */
+    EventRing getEvents() {
+        return this.events;
+    }
+
+
+    void setWarmup(WarmupPhase warmup) {
+        this.warmup = warmup;
+    }
+
+
+    void setRounds(RoundBarrier rounds) {
+        this.rounds = rounds;
+    }
+
+
+    /**
+     * Sets the shared clock of a run which follows a load profile or
+     * records per-window metrics, and this instance's index for the
+     * profile; <tt>null</tt> runs without either.  The window histogram
+     * is allocated once and cleared at each run.
+     */
+    void setTimeline(LoadTimeline timeline, int index) {
+        this.timeline = timeline;
+        this.timelineIndex = index;
+        this.windowsOpen = false;
+        this.loadIdle = false;
+        this.loadSwitches = 0l;
+        this.windowIndex = -1;
+        if (timeline == null || !timeline.hasWindows()) {
+            this.windowLatency = null;
+        } else if (this.windowLatency == null) {
+            this.windowLatency = new LatencyHistogram();
+        } else {
+            this.windowLatency.reset();
+        }
+    }
+
+
+    void setControlledScheduler(ControlledScheduler scheduler, int index) {
+        this.scheduler = scheduler;
+        this.schedulerIndex = index;
+    }
+
+
+    void setCollectFailures(boolean collectFailures) {
+        this.collectFailures = collectFailures;
+    }
+
+
+    /**
+     * Prepares this instance for a new run: sets the latch which this
+     * instance counts down when its <tt>run()</tt> method completes,
+     * whether normally or not.
+     */
+    void setDoneSignal(CountDownLatch doneSignal) {
+        this.doneSignal = doneSignal;
+        this.ended = false;
+        this.gateNanos = 0l;
+        this.startNanos = 0l;
+        this.endNanos = 0l;
+        this.operationCount = 0l;
+        this.missedSlots = 0l;
+        this.usage.clear();
+        this.events.clear();
+    }
+
+
+    /**
+     * Makes each <tt>runTest()</tt> call wait for its slot in a fixed
+     * rate schedule, or, with an interval of 0, start right after the
+     * previous one.
+     *
+     * @param intervalNanos the time between this instance's slots.
+     * @param offsetNanos   the time from the start to the first slot.
+     */
+    void setSchedule(long intervalNanos, long offsetNanos) {
+        this.slotIntervalNanos = intervalNanos;
+        this.slotOffsetNanos = offsetNanos;
+    }
+
+
+    /**
+     * Sets how often <tt>runTest()</tt> is called in a run: either for the
+     * given number of iterations or, if the duration is positive, for that
+     * many nanoseconds.  Either way, the loop also ends once the owning
+     * runner halts the run.
+     */
+    void setOperationLoop(long iterations, long durationNanos) {
+        this.iterations = iterations;
+        this.durationNanos = durationNanos;
+    }
+
+
+    /**
+     * Turns the recording of each <tt>runTest()</tt> call's latency on or
+     * off.  The histogram is allocated once and cleared at each run.
+     */
+    void setRecordLatency(boolean recordLatency) {
+        if (!recordLatency) {
+            this.latency = null;
+            this.slowest = null;
+        } else if (this.latency == null) {
+            this.latency = new LatencyHistogram();
+            this.slowest = new SlowestSamples(
+                    SlowestSamples.DEFAULT_CAPACITY);
+        } else {
+            this.latency.reset();
+            this.slowest.clear();
+        }
+    }
+
+
+    /**
+     * Returns what the thread used while running this instance in the
+     * current run; only valid once the run has ended.
+     */
+    ThreadUsage getThreadUsage() {
+        return this.usage;
+    }
+
+
+    /**
+     * Returns the latencies recorded in the current run, or <tt>null</tt>
+     * if they aren't being recorded.
+     */
+    LatencyHistogram getLatencyHistogram() {
+        return this.latency;
+    }
+
+
+    /**
+     * Returns when the slowest recorded calls of the current run started,
+     * and how long they took, or <tt>null</tt> if latencies aren't being
+     * recorded.
+     */
+    SlowestSamples getSlowestSamples() {
+        return this.slowest;
+    }
+
+
+    /**
+     * Sets the counters which <tt>reportProgress()</tt> bumps, and this
+     * instance's index into them; <tt>null</tt> makes it do nothing.
+     */
+    void setProgressCounter(ProgressCounters progress, int index) {
+        this.progress = progress;
+        this.progressIndex = index;
+    }
+
+
+    /**
+     * Sets the gate which this instance waits on before running its test,
+     * or <tt>null</tt> to start right away.
+     */
+    void setStartGate(StartGate startGate) {
+        this.startGate = startGate;
+    }
+
+
+    /**
+     * Returns the <tt>System.nanoTime()</tt> at which the test actually
+     * started (after any start gate), or 0 if it has not started in the
+     * current run.  Unlike <tt>getStartNanos()</tt>, this is not moved by
+     * the end of a warmup phase.
+     */
+    long getGateNanos() {
+        return this.gateNanos;
+    }
+
+
+    /**
+     * Returns the <tt>System.nanoTime()</tt> at which the measurements of
+     * the test started (after any start gate and warmup phase), or 0 if it
+     * has not started in the current run.
+     */
+    long getStartNanos() {
+        return this.startNanos;
+    }
+
+
+    /**
+     * Returns the <tt>System.nanoTime()</tt> at which the run of this
+     * instance ended, or 0 if it has not ended in the current run.
+     */
+    long getEndNanos() {
+        return this.endNanos;
+    }
+
+
+    /**
+     * Returns the number of completed <tt>runTest()</tt> calls in the
+     * current run.
+     */
+    long getOperationCount() {
+        return this.operationCount;
+    }
+
+
+    /**
+     * Returns the number of calls in the current run which started a
+     * full schedule interval or more after their slot.
+     */
+    long getMissedSlotCount() {
+        return this.missedSlots;
+    }
+
+
+    /**
+     * Called by the owning runner, on the runner's own thread, before the
+     * run's monitors and runners are started.  Instances which must be set
+     * up before any other thread of the run starts can do so here; the
+     * default implementation does nothing.
+     */
+    void beforeRun() {
+        // do nothing
+    }
+
+
+    /**
+     * Called on the runner's thread when what it measured so far is
+     * discarded, such as at the end of warmup.  Instances which measure
+     * more than the owning runner does should start over here; the
+     * default implementation does nothing.
+     */
+    void measurementsRestarted() {
+        // do nothing
+    }
+
+
+    /**
+     * Returns the thread currently executing this instance's
+     * <tt>run()</tt> method, or <tt>null</tt> if it hasn't started yet or
+     * has already ended.  With pooled execution the thread outlives the
+     * run, so the thread itself cannot be used to tell if the instance is
+     * still running.
+     */
+    Thread getRunningThread() {
+        return this.runningThread;
+    }
+
+
+    /**
+     * Returns <tt>true</tt> if the <tt>run()</tt> method ended since the
+     * last <tt>setDoneSignal()</tt> call.
+     */
+    boolean hasEnded() {
+        return this.ended;
+    }
+
+
+    /**
+     * Returns <tt>true</tt> while the run's load profile keeps this
+     * instance idle.
+     */
+    boolean isLoadIdle() {
+        return this.loadIdle;
+    }
+
+
+    /**
+     * Returns how many times the run's load profile switched this
+     * instance between active and idle in the current run.
+     */
+    long getLoadSwitches() {
+        return this.loadSwitches;
+    }
 }
 
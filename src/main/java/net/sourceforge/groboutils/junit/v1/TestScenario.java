@@ -0,0 +1,52 @@
+/*
+ * @(#)TestScenario.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * Creates a fresh set of runners, along with fresh shared state for them
+ * to work on, for frameworks which run the same scenario many times, such
+ * as an <tt>InterleavingExplorer</tt>, and checks that state after each
+ * run.
+ *
+ * @since 5.0.0
+ */
+public interface TestScenario {
+    /**
+     * @return new runners for one run of the scenario; never
+     * <tt>null</tt> or empty.
+     */
+    TestRunnable[] createRunners();
+
+
+    /**
+     * Checks the shared state once all the runners of a run have ended
+     * without failing, such as for updates lost to a race.
+     *
+     * @throws Throwable any exception fails the run.
+     */
+    void verify() throws Throwable;
+}
@@ -0,0 +1,127 @@
+/*
+ * @(#)TestThreadFactory.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Creates the threads which execute <tt>TestRunnable</tt> instances for a
+ * <tt>MultiThreadedTestRunner</tt>.  All created threads are daemon threads
+ * (see bug 771000), are named with a common prefix and a sequence number,
+ * and may be given an explicit stack size so that large numbers of
+ * threads fit within a limited amount of memory.
+ * <p>
+ * Pass an instance to <tt>MultiThreadedTestRunner.setThreadFactory()</tt>
+ * to have each run create its threads through it, or pass the result of
+ * <tt>createPool()</tt> to <tt>MultiThreadedTestRunner.setExecutor()</tt>
+ * to keep the threads warm between runs.
+ *
+ * @since 5.0.0
+ */
+public class TestThreadFactory implements ThreadFactory {
+    private static final long DEFAULT_POOL_KEEP_ALIVE_TIME = 60l * 1000l;
+
+    private final ThreadGroup group;
+    private final String namePrefix;
+    private final long stackSize;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+
+    /**
+     * Creates threads in the caller's thread group, with the given name
+     * prefix and the JVM default stack size.
+     *
+     * @param namePrefix the prefix for each created thread's name.
+     */
+    public TestThreadFactory(String namePrefix) {
+        this(null, namePrefix, 0l);
+    }
+
+
+    /**
+     * Creates threads in the caller's thread group.
+     *
+     * @param namePrefix the prefix for each created thread's name.
+     * @param stackSize  the requested stack size in bytes for each thread,
+     *                   or 0 to use the JVM default.
+     */
+    public TestThreadFactory(String namePrefix, long stackSize) {
+        this(null, namePrefix, stackSize);
+    }
+
+
+    /**
+     * @param group      the thread group for the created threads, or
+     *                   <tt>null</tt> to use the caller's thread group.
+     * @param namePrefix the prefix for each created thread's name.
+     * @param stackSize  the requested stack size in bytes for each thread,
+     *                   or 0 to use the JVM default.  As with
+     *                   <tt>Thread</tt>, some platforms ignore this value.
+     */
+    public TestThreadFactory(ThreadGroup group, String namePrefix,
+                             long stackSize) {
+        if (namePrefix == null) {
+            throw new IllegalArgumentException("no null name prefix");
+        }
+        if (stackSize < 0) {
+            throw new IllegalArgumentException(
+                    "stack size must be non-negative");
+        }
+        this.group = group;
+        this.namePrefix = namePrefix;
+        this.stackSize = stackSize;
+    }
+
+
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(this.group, r,
+                this.namePrefix + '-' + this.threadCount.incrementAndGet(),
+                this.stackSize);
+        t.setDaemon(true);
+        return t;
+    }
+
+
+    /**
+     * Creates a pool whose threads are created by this factory and stay
+     * alive between runs for a minute.  The pool never queues: each
+     * submitted runnable gets either an idle worker or a new one, which
+     * is required since every <tt>TestRunnable</tt> of a run must be
+     * active at the same time.  The caller owns the pool, and should
+     * <tt>shutdown()</tt> it when it's no longer needed.
+     */
+    public ExecutorService createPool() {
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                DEFAULT_POOL_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>(), this);
+    }
+}
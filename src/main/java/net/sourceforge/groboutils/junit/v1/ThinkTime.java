@@ -0,0 +1,126 @@
+/*
+ * @(#)ThinkTime.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * How long a <tt>MixedWorkload</tt> runner pauses after each operation,
+ * as a simulated client would between requests: a fixed time, a time
+ * drawn uniformly from a range, or one drawn from an exponential
+ * distribution, which models independent clients arriving at random.
+ *
+ * @since 5.0.0
+ */
+public final class ThinkTime {
+    private static final int FIXED = 0;
+    private static final int UNIFORM = 1;
+    private static final int EXPONENTIAL = 2;
+
+    /**
+     * No pause at all, the default.
+     */
+    public static final ThinkTime NONE = new ThinkTime(FIXED, 0l, 0l);
+
+    private final int type;
+    private final long nanos;
+    private final long maxNanos;
+
+
+    private ThinkTime(int type, long nanos, long maxNanos) {
+        this.type = type;
+        this.nanos = nanos;
+        this.maxNanos = maxNanos;
+    }
+
+
+    /**
+     * Pauses for the same time after every operation.
+     */
+    public static ThinkTime fixed(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException(
+                    "duration must be non-negative");
+        }
+        return new ThinkTime(FIXED, unit.toNanos(duration), 0l);
+    }
+
+
+    /**
+     * Pauses for a time between the minimum and the maximum, all times
+     * equally likely.
+     */
+    public static ThinkTime uniform(long min, long max, TimeUnit unit) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException(
+                    "need 0 <= min <= max");
+        }
+        return new ThinkTime(UNIFORM, unit.toNanos(min), unit.toNanos(max));
+    }
+
+
+    /**
+     * Pauses for exponentially distributed times with the given mean:
+     * mostly short pauses, with the occasional long one.
+     */
+    public static ThinkTime exponential(long mean, TimeUnit unit) {
+        if (mean < 0) {
+            throw new IllegalArgumentException("mean must be non-negative");
+        }
+        return new ThinkTime(EXPONENTIAL, unit.toNanos(mean), 0l);
+    }
+
+
+    /**
+     * @return the next pause, in nanoseconds.
+     */
+    long nextNanos(SplitMix64 random) {
+        switch (this.type) {
+            case UNIFORM:
+                return this.nanos + (long) (random.nextDouble() *
+                        (this.maxNanos - this.nanos + 1l));
+            case EXPONENTIAL:
+                return (long) (-this.nanos * Math.log(
+                        1.0 - random.nextDouble()));
+            default:
+                return this.nanos;
+        }
+    }
+
+
+    public String toString() {
+        switch (this.type) {
+            case UNIFORM:
+                return "uniform(" + this.nanos + "ns.." + this.maxNanos +
+                        "ns)";
+            case EXPONENTIAL:
+                return "exponential(mean " + this.nanos + "ns)";
+            default:
+                return "fixed(" + this.nanos + "ns)";
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * @(#)ThreadUsage.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+
+
+/**
+ * Measures what a thread used while running a single <tt>TestRunnable</tt>:
+ * CPU time, allocated bytes, and how often and how long it was blocked on
+ * a monitor or waiting.  Both <tt>start()</tt> and <tt>stop()</tt> must be
+ * called from the measured thread.
+ * <p>
+ * Each measurement the JVM does not support (such as allocation counting
+ * outside of HotSpot-derived JVMs, or anything on a virtual thread) is
+ * reported as -1.  Blocked and waited times are only counted while thread
+ * contention monitoring is enabled.  It is off by default, and costs every
+ * contended lock, so a run only turns it on if asked, through
+ * <tt>beginContentionMonitoring()</tt>.
+ *
+ * @since 5.0.0
+ */
+final class ThreadUsage {
+    static final long UNKNOWN = -1l;
+
+    private static final ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean();
+    private static final Object CONTENTION_LOCK = new Object();
+    private static final boolean ALLOCATION_COUNTING =
+            isAllocationCountingSupported();
+
+    // runs using contention monitoring, and whether it was on before.
+    private static int contentionUsers = 0;
+    private static boolean contentionWasEnabled = false;
+
+    private long cpuNanos;
+    private long allocatedBytes;
+    private long blockedCount;
+    private long blockedMillis;
+    private long waitedCount;
+    private long waitedMillis;
+    private boolean started = false;
+
+
+    ThreadUsage() {
+        clear();
+    }
+
+
+    /**
+     * Forgets all measurements, setting them to <tt>UNKNOWN</tt>.
+     */
+    void clear() {
+        this.started = false;
+        this.cpuNanos = UNKNOWN;
+        this.allocatedBytes = UNKNOWN;
+        this.blockedCount = UNKNOWN;
+        this.blockedMillis = UNKNOWN;
+        this.waitedCount = UNKNOWN;
+        this.waitedMillis = UNKNOWN;
+    }
+
+
+    /**
+     * Takes the starting values for the current thread.
+     */
+    void start() {
+        this.started = true;
+        ThreadInfo info = getThreadInfo();
+        // the times are -1 while contention monitoring is off.
+        this.blockedCount = info == null ? UNKNOWN : info.getBlockedCount();
+        this.blockedMillis = info == null ? UNKNOWN : info.getBlockedTime();
+        this.waitedCount = info == null ? UNKNOWN : info.getWaitedCount();
+        this.waitedMillis = info == null ? UNKNOWN : info.getWaitedTime();
+        this.cpuNanos = currentCpuTime();
+
+        // last, so that nothing above counts as allocated.
+        this.allocatedBytes = currentAllocatedBytes();
+    }
+
+
+    /**
+     * Turns the starting values into the amounts used since
+     * <tt>start()</tt>.  Does nothing if <tt>start()</tt> wasn't called
+     * since the last <tt>clear()</tt>.
+     */
+    void stop() {
+        if (!this.started) {
+            return;
+        }
+        this.started = false;
+        // first, so that nothing below counts as allocated.
+        this.allocatedBytes = delta(this.allocatedBytes,
+                currentAllocatedBytes());
+        this.cpuNanos = delta(this.cpuNanos, currentCpuTime());
+
+        ThreadInfo info = getThreadInfo();
+        this.blockedCount = delta(this.blockedCount,
+                info == null ? UNKNOWN : info.getBlockedCount());
+        this.blockedMillis = delta(this.blockedMillis,
+                info == null ? UNKNOWN : info.getBlockedTime());
+        this.waitedCount = delta(this.waitedCount,
+                info == null ? UNKNOWN : info.getWaitedCount());
+        this.waitedMillis = delta(this.waitedMillis,
+                info == null ? UNKNOWN : info.getWaitedTime());
+    }
+
+
+    long getCpuNanos() {
+        return this.cpuNanos;
+    }
+
+
+    long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+
+    long getBlockedCount() {
+        return this.blockedCount;
+    }
+
+
+    long getBlockedMillis() {
+        return this.blockedMillis;
+    }
+
+
+    long getWaitedCount() {
+        return this.waitedCount;
+    }
+
+
+    long getWaitedMillis() {
+        return this.waitedMillis;
+    }
+
+
+    /**
+     * @return the CPU time of the current thread in nanoseconds, or
+     * <tt>UNKNOWN</tt>.
+     */
+    static long currentCpuTime() {
+        try {
+            if (THREADS.isCurrentThreadCpuTimeSupported()) {
+                return THREADS.getCurrentThreadCpuTime();
+            }
+        } catch (RuntimeException e) {
+            // not supported for this thread
+        }
+        return UNKNOWN;
+    }
+
+
+    /**
+     * @return the total bytes allocated by the current thread, or
+     * <tt>UNKNOWN</tt>.
+     */
+    static long currentAllocatedBytes() {
+        if (!ALLOCATION_COUNTING) {
+            return UNKNOWN;
+        }
+        return AllocationCounter.getAllocatedBytes();
+    }
+
+
+    private static ThreadInfo getThreadInfo() {
+        try {
+            return THREADS.getThreadInfo(Thread.currentThread().getId());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+
+    private static long delta(long start, long end) {
+        if (start < 0l || end < 0l) {
+            return UNKNOWN;
+        }
+        return end - start;
+    }
+
+
+    /**
+     * Turns thread contention monitoring on for a run, where supported.
+     * Runs may overlap, so it is turned back off, if it was off before,
+     * only when the last of them calls <tt>endContentionMonitoring()</tt>.
+     *
+     * @return <tt>true</tt> if the monitoring is on, and
+     * <tt>endContentionMonitoring()</tt> must be called.
+     */
+    static boolean beginContentionMonitoring() {
+        synchronized (CONTENTION_LOCK) {
+            try {
+                if (!THREADS.isThreadContentionMonitoringSupported()) {
+                    return false;
+                }
+                if (contentionUsers == 0) {
+                    contentionWasEnabled =
+                            THREADS.isThreadContentionMonitoringEnabled();
+                    if (!contentionWasEnabled) {
+                        THREADS.setThreadContentionMonitoringEnabled(true);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // such as a SecurityException
+                return false;
+            }
+            ++contentionUsers;
+            return true;
+        }
+    }
+
+
+    /**
+     * Ends a run's use of contention monitoring, restoring the setting
+     * from before the first of the overlapping runs.
+     */
+    static void endContentionMonitoring() {
+        synchronized (CONTENTION_LOCK) {
+            if (--contentionUsers == 0 && !contentionWasEnabled) {
+                try {
+                    THREADS.setThreadContentionMonitoringEnabled(false);
+                } catch (RuntimeException e) {
+                    // such as a SecurityException; leave it on.
+                }
+            }
+        }
+    }
+
+
+    private static boolean isAllocationCountingSupported() {
+        try {
+            return AllocationCounter.isSupported();
+        } catch (LinkageError e) {
+            // no com.sun.management on this JVM
+            return false;
+        }
+    }
+
+
+    /**
+     * Keeps the reference to the HotSpot-specific management interface in
+     * its own class, so that JVMs without it only fail to load this class.
+     */
+    private static final class AllocationCounter {
+        private static final com.sun.management.ThreadMXBean BEAN =
+                findBean();
+
+        static boolean isSupported() {
+            return BEAN != null;
+        }
+
+        static long getAllocatedBytes() {
+            try {
+                return BEAN.getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+            } catch (RuntimeException e) {
+                return UNKNOWN;
+            }
+        }
+
+        private static com.sun.management.ThreadMXBean findBean() {
+            try {
+                if (THREADS instanceof com.sun.management.ThreadMXBean) {
+                    com.sun.management.ThreadMXBean bean =
+                            (com.sun.management.ThreadMXBean) THREADS;
+                    if (bean.isThreadAllocatedMemorySupported()) {
+                        if (!bean.isThreadAllocatedMemoryEnabled()) {
+                            bean.setThreadAllocatedMemoryEnabled(true);
+                        }
+                        return bean;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // not supported
+            }
+            return null;
+        }
+    }
+}
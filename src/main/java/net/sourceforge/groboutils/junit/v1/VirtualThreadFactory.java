@@ -0,0 +1,140 @@
+/*
+ * @(#)VirtualThreadFactory.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Creates virtual threads for a <tt>MultiThreadedTestRunner</tt>, so that
+ * a run may simulate far more concurrent clients than the platform
+ * threads allow.  Pass an instance to
+ * <tt>MultiThreadedTestRunner.setThreadFactory()</tt>.
+ * <p>
+ * Virtual threads only exist on JDK 21 and later, while this library is
+ * built for much older JVMs, so the JDK API is looked up at runtime.  Use
+ * <tt>isAvailable()</tt> to tell whether the running JVM supports them.
+ * Interrupting a virtual thread works as with any other thread, so the
+ * runner's halting and timeout behavior is unchanged.
+ * <p>
+ * A virtual thread which blocks while inside a <tt>synchronized</tt> block
+ * pins its carrier thread, which silently caps the concurrency of the run.
+ * Add a <tt>PinningMonitor</tt> to the runner's monitors to have these
+ * reported.
+ *
+ * @since 5.0.0
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+    private static final Method OF_VIRTUAL = findMethod(
+            "java.lang.Thread", "ofVirtual", new Class[0]);
+    private static final Method BUILDER_NAME = findMethod(
+            "java.lang.Thread$Builder", "name",
+            new Class[]{String.class, Long.TYPE});
+    private static final Method BUILDER_FACTORY = findMethod(
+            "java.lang.Thread$Builder", "factory", new Class[0]);
+    private static final boolean AVAILABLE = probe();
+
+    private final ThreadFactory delegate;
+
+
+    /**
+     * @param namePrefix the prefix for each created thread's name.
+     * @throws UnsupportedOperationException if the JVM does not support
+     *                                       virtual threads.
+     */
+    public VirtualThreadFactory(String namePrefix) {
+        if (namePrefix == null) {
+            throw new IllegalArgumentException("no null name prefix");
+        }
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException(
+                    "virtual threads require JDK 21 or later, or preview" +
+                            " features on JDK 19 and 20; running on " +
+                            System.getProperty("java.version"));
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder,
+                    namePrefix + '-', Long.valueOf(1l));
+            this.delegate = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (Exception e) {
+            UnsupportedOperationException uoe =
+                    new UnsupportedOperationException(
+                            "could not create a virtual thread builder");
+            uoe.initCause(e);
+            throw uoe;
+        }
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the running JVM supports virtual threads.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+
+    public Thread newThread(Runnable r) {
+        return this.delegate.newThread(r);
+    }
+
+
+    /**
+     * Builds a virtual thread factory once, as the API alone is not
+     * enough: JDK 19 and 20 have it, but fail to use it unless preview
+     * features are enabled.
+     */
+    private static boolean probe() {
+        if (OF_VIRTUAL == null || BUILDER_NAME == null ||
+                BUILDER_FACTORY == null) {
+            return false;
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            return BUILDER_FACTORY.invoke(builder) != null;
+        } catch (Exception e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+
+    private static Method findMethod(String className, String name,
+                                     Class params[]) {
+        try {
+            return Class.forName(className).getMethod(name, params);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * @(#)WarmupPhase.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Coordinates the warmup of a run's runners, so that they all start
+ * measuring at about the same time, once the JIT compiler had its chance
+ * at the tested code.
+ * <p>
+ * Each runner first makes its minimum number of warmup calls, or calls
+ * for its minimum warmup time.  The phase ends once every runner has done
+ * so, unless it waits for quiescence: then it also waits until the JVM's
+ * total compilation time hasn't grown for a window of time, or until the
+ * maximum warmup time passes, whichever comes first.  Runners keep
+ * calling their test until the phase ends, polling it cheaply.
+ *
+ * @since 5.0.0
+ */
+final class WarmupPhase {
+    private static final long CHECK_INTERVAL =
+            TimeUnit.MILLISECONDS.toNanos(10l);
+    private static final CompilationMXBean COMPILER =
+            ManagementFactory.getCompilationMXBean();
+
+    private final long iterations;
+    private final long durationNanos;
+    private final long quietWindowNanos;
+    private final long maxNanos;
+    private int remaining;
+    private long beginNanos;
+    private long endNanos;
+    private boolean begun = false;
+    private boolean quiescent = false;
+    private long lastCompilationTime = -1l;
+    private long quietSinceNanos;
+    private volatile boolean over = false;
+    private volatile long nextCheckNanos;
+
+
+    /**
+     * @param runnerCount      the number of runners which warm up.
+     * @param iterations       the minimum warmup calls per runner, used
+     *                         when the duration is 0.
+     * @param durationNanos    the minimum warmup time per runner.
+     * @param quietWindowNanos how long compilation must be idle to end the
+     *                         phase, or 0 to not wait for it.
+     * @param maxNanos         the longest the phase waits for compilation
+     *                         to be idle.
+     */
+    WarmupPhase(int runnerCount, long iterations, long durationNanos,
+                long quietWindowNanos, long maxNanos) {
+        this.remaining = runnerCount;
+        this.iterations = iterations;
+        this.durationNanos = durationNanos;
+        this.quietWindowNanos = quietWindowNanos;
+        this.maxNanos = maxNanos;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the JVM can tell when compilation is idle.
+     */
+    static boolean isQuiescenceDetectable() {
+        return COMPILER != null &&
+                COMPILER.isCompilationTimeMonitoringSupported();
+    }
+
+
+    synchronized void runnerStarted(long now) {
+        if (!this.begun) {
+            this.begun = true;
+            this.beginNanos = now;
+            this.quietSinceNanos = now;
+            this.nextCheckNanos = now;
+        }
+    }
+
+
+    /**
+     * @return <tt>true</tt> if a runner made its minimum warmup.
+     */
+    boolean isMinimumReached(long calls, long elapsedNanos) {
+        if (this.durationNanos > 0l) {
+            return elapsedNanos >= this.durationNanos;
+        }
+        return calls >= this.iterations;
+    }
+
+
+    /**
+     * Called once by each runner, when it made its minimum warmup or
+     * stopped warming up early.
+     */
+    synchronized void runnerWarmedUp(long now) {
+        --this.remaining;
+        this.nextCheckNanos = now;
+    }
+
+
+    /**
+     * @return <tt>true</tt> once the phase is over.  Only every 10
+     * milliseconds does this do more than read a volatile field.
+     */
+    boolean poll(long now) {
+        if (this.over) {
+            return true;
+        }
+        if (now - this.nextCheckNanos < 0l) {
+            return false;
+        }
+        synchronized (this) {
+            if (!this.over && now - this.nextCheckNanos >= 0l) {
+                this.nextCheckNanos = now + CHECK_INTERVAL;
+                check(now);
+            }
+        }
+        return this.over;
+    }
+
+
+    /**
+     * @return how long the phase took, in nanoseconds.
+     */
+    synchronized long getElapsedNanos() {
+        return this.over ? this.endNanos - this.beginNanos : 0l;
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the phase ended because compilation went
+     * idle.
+     */
+    synchronized boolean isQuiescent() {
+        return this.quiescent;
+    }
+
+
+    private void check(long now) {
+        if (this.quietWindowNanos > 0l && isQuiescenceDetectable()) {
+            long time = COMPILER.getTotalCompilationTime();
+            if (time != this.lastCompilationTime) {
+                this.lastCompilationTime = time;
+                this.quietSinceNanos = now;
+            }
+        }
+        if (this.remaining > 0) {
+            return;
+        }
+        if (this.quietWindowNanos <= 0l || !isQuiescenceDetectable()) {
+            end(now, false);
+        } else if (now - this.quietSinceNanos >= this.quietWindowNanos) {
+            end(now, true);
+        } else if (now - this.beginNanos >= this.maxNanos) {
+            end(now, false);
+        }
+    }
+
+
+    private void end(long now, boolean quiescent) {
+        this.endNanos = now;
+        this.quiescent = quiescent;
+        this.over = true;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * @(#)WorkloadGroup.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A set of identical runners in a <tt>MixedWorkload</tt>, such as the
+ * readers or the writers.  Each runner of the group picks each operation
+ * at random, in proportion to its weight, then pauses for the group's
+ * think time.
+ *
+ * @since 5.0.0
+ */
+public final class WorkloadGroup {
+    private final String name;
+    private final int threadCount;
+    private final List names = new ArrayList();
+    private final List weights = new ArrayList();
+    private final List operations = new ArrayList();
+    private ThinkTime thinkTime = ThinkTime.NONE;
+
+    // the operation mix, fixed when the runners are created.
+    private String mixNames[];
+    private int cumulativeWeights[];
+    private WorkloadOperation mixOperations[];
+    private ThinkTime mixThinkTime;
+
+
+    WorkloadGroup(String name, int threadCount) {
+        this.name = name;
+        this.threadCount = threadCount;
+    }
+
+
+    /**
+     * Adds an operation to the mix.  For 90% reads and 10% writes, add the
+     * reads with weight 90 and the writes with weight 10.
+     *
+     * @param name      the operation's name in the results.
+     * @param weight    how often the operation is picked, relative to the
+     *                  other operations of the group.
+     * @param operation the operation.
+     */
+    public void addOperation(String name, int weight,
+                             WorkloadOperation operation) {
+        if (name == null || operation == null) {
+            throw new IllegalArgumentException(
+                    "no null name or operation");
+        }
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive");
+        }
+        this.names.add(name);
+        this.weights.add(Integer.valueOf(weight));
+        this.operations.add(operation);
+    }
+
+
+    /**
+     * Sets the pause after each operation.  Defaults to none.
+     */
+    public void setThinkTime(ThinkTime thinkTime) {
+        if (thinkTime == null) {
+            throw new IllegalArgumentException("no null think time");
+        }
+        this.thinkTime = thinkTime;
+    }
+
+
+    public String getName() {
+        return this.name;
+    }
+
+
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+
+    /**
+     * Fixes the operation mix for the runners about to be created.
+     */
+    void freeze() {
+        int len = this.operations.size();
+        if (len == 0) {
+            throw new IllegalStateException("group " + this.name +
+                    " has no operations");
+        }
+        this.mixNames = (String[]) this.names.toArray(new String[len]);
+        this.mixOperations = (WorkloadOperation[]) this.operations.toArray(
+                new WorkloadOperation[len]);
+        this.cumulativeWeights = new int[len];
+        int total = 0;
+        for (int i = 0; i < len; ++i) {
+            total += ((Integer) this.weights.get(i)).intValue();
+            if (total <= 0) {
+                throw new IllegalStateException("group " + this.name +
+                        " weights overflow");
+            }
+            this.cumulativeWeights[i] = total;
+        }
+        this.mixThinkTime = this.thinkTime;
+    }
+
+
+    int getOperationCount() {
+        return this.mixOperations.length;
+    }
+
+
+    String getOperationName(int index) {
+        return this.mixNames[index];
+    }
+
+
+    WorkloadOperation getOperation(int index) {
+        return this.mixOperations[index];
+    }
+
+
+    ThinkTime getThinkTime() {
+        return this.mixThinkTime;
+    }
+
+
+    /**
+     * @return the index of an operation picked by weight.
+     */
+    int chooseOperation(SplitMix64 random) {
+        int weights[] = this.cumulativeWeights;
+        int pick = random.nextInt(weights[weights.length - 1]);
+        int i = 0;
+        while (pick >= weights[i]) {
+            ++i;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * @(#)WorkloadResult.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+
+/**
+ * The operations of a <tt>MixedWorkload</tt> run, broken down per
+ * operation of each group: how many completed, and how long they took,
+ * not counting think time.
+ *
+ * @since 5.0.0
+ */
+public final class WorkloadResult {
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final String names[];
+    private final LatencyHistogram latency[];
+    private final long elapsedNanos;
+
+
+    WorkloadResult(String names[], LatencyHistogram latency[],
+                   long elapsedNanos) {
+        this.names = names;
+        this.latency = latency;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+
+    /**
+     * @return the number of operation types, over all groups.
+     */
+    public int getOperationTypeCount() {
+        return this.names.length;
+    }
+
+
+    /**
+     * @return the operation's group and name, as
+     * <tt>"group.operation"</tt>.
+     */
+    public String getOperationName(int index) {
+        return this.names[index];
+    }
+
+
+    /**
+     * @return the number of such operations which completed.
+     */
+    public long getCount(int index) {
+        return this.latency[index].getCount();
+    }
+
+
+    /**
+     * @return the share of all completed operations which were of this
+     * type, between 0 and 1.
+     */
+    public double getShare(int index) {
+        long total = getTotalCount();
+        return total == 0l ? 0.0 : (double) getCount(index) / total;
+    }
+
+
+    /**
+     * @return the rate at which such operations completed, over the
+     * elapsed time of the run.
+     */
+    public double getOperationsPerSecond(int index) {
+        if (this.elapsedNanos <= 0l) {
+            return 0.0;
+        }
+        return getCount(index) * NANOS_PER_SECOND / this.elapsedNanos;
+    }
+
+
+    public LatencyHistogram getLatency(int index) {
+        return this.latency[index];
+    }
+
+
+    /**
+     * @return the type with the given name, or -1.
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < this.names.length; ++i) {
+            if (this.names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    public long getTotalCount() {
+        long total = 0l;
+        for (int i = 0; i < this.latency.length; ++i) {
+            total += this.latency[i].getCount();
+        }
+        return total;
+    }
+
+
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("WorkloadResult[operations=").append(getTotalCount())
+                .append(", elapsed=").append(this.elapsedNanos).append(
+                "ns]");
+        for (int i = 0; i < this.names.length; ++i) {
+            sb.append("\n  ").append(this.names[i]).append(": ").append(
+                    getCount(i)).append(" (").append(
+                    Math.round(getShare(i) * 1000.0) / 10.0).append(
+                    "%), ").append(getOperationsPerSecond(i)).append(
+                    " ops/sec, ").append(this.latency[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * @(#)EventRingTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks the merged order of events across rings, and which events a
+ * full ring keeps.  Each event's argument is its place in the order in
+ * which the test recorded it.
+ *
+ * @since 5.0.0
+ */
+public class EventRingTest extends TestCase {
+    private long sequence = 0l;
+
+
+    public void testRingsMergeInTimeOrder() throws IOException {
+        EventRing a = new EventRing("a", 8);
+        EventRing b = new EventRing("b", 8);
+        EventRing c = new EventRing("c", 8);
+        record(a);
+        record(b);
+        record(b);
+        record(c);
+        record(a);
+        record(c);
+        record(b);
+
+        String text = write(new EventRing[]{a, b, c});
+        assertOrder(text, 0, 7);
+        assertTrue(text, text.indexOf("b: started (1)") >= 0);
+    }
+
+
+    public void testCapacityIsRoundedUpToPowerOfTwo() throws IOException {
+        EventRing ring = new EventRing("r", 3);
+        for (int i = 0; i < 4; ++i) {
+            record(ring);
+        }
+        assertOrder(write(new EventRing[]{ring}), 0, 4);
+    }
+
+
+    public void testFullRingKeepsLatestEvents() throws IOException {
+        EventRing full = new EventRing("full", 4);
+        EventRing other = new EventRing("other", 4);
+        for (int i = 0; i < 6; ++i) {
+            record(full);
+        }
+        record(other);
+        record(full);
+
+        // events 0 to 2 were overwritten.
+        String text = write(new EventRing[]{full, other});
+        assertOrder(text, 3, 8);
+        assertTrue(text, text.startsWith("  +0us full: started (3)"));
+    }
+
+
+    public void testLatestEventsAcrossRings() throws IOException {
+        EventRing a = new EventRing("a", 4);
+        EventRing b = new EventRing("b", 4);
+        for (int i = 0; i < 5; ++i) {
+            record(a);
+            record(b);
+        }
+
+        StringWriter out = new StringWriter();
+        EventRing rings[] = {a, b};
+        EventRing.writeLatest(rings, 3, EventRing.getOrigin(rings), out);
+        assertOrder(out.toString(), 7, 10);
+
+        out = new StringWriter();
+        EventRing.writeLatest(rings, 100, EventRing.getOrigin(rings), out);
+        assertOrder(out.toString(), 2, 10);
+    }
+
+
+    public void testClearedRingsWriteNothing() throws IOException {
+        EventRing ring = new EventRing("r", 4);
+        record(ring);
+        ring.clear();
+        EventRing rings[] = {ring, new EventRing("empty", 4)};
+
+        assertEquals("", write(rings));
+        StringWriter out = new StringWriter();
+        EventRing.writeLatest(rings, 10, 0l, out);
+        assertEquals("", out.toString());
+    }
+
+
+    /**
+     * Records the next event, and waits for the clock to move on, so that
+     * no two events share a time.
+     */
+    private void record(EventRing ring) {
+        ring.record(EventRing.STARTED, this.sequence++);
+        long recorded = System.nanoTime();
+        while (System.nanoTime() == recorded) {
+            // spin
+        }
+    }
+
+
+    private static String write(EventRing rings[]) throws IOException {
+        StringWriter out = new StringWriter();
+        EventRing.write(rings, out);
+        return out.toString();
+    }
+
+
+    /**
+     * Checks that the text holds exactly the events from <tt>first</tt>
+     * up to <tt>end</tt>, in order.
+     */
+    private static void assertOrder(String text, int first, int end) {
+        String lines[] = text.split("\n");
+        assertEquals(text, end - first, lines.length);
+        for (int i = 0; i < lines.length; ++i) {
+            assertTrue(text, lines[i].endsWith(
+                    "started (" + (first + i) + ")"));
+        }
+    }
+}
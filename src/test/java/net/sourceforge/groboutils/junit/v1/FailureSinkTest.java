@@ -0,0 +1,121 @@
+/*
+ * @(#)FailureSinkTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+
+/**
+ * Checks that collected failures are grouped by the test's own throw
+ * site, not by the assertion method which threw them.
+ *
+ * @since 5.0.0
+ */
+public class FailureSinkTest extends TestCase {
+    public void testJUnit3AssertionsGroupByCallSite() {
+        FailureSink sink = new FailureSink();
+        sink.add(failFirst());
+        sink.add(failFirst());
+        sink.add(failSecond());
+
+        MultipleFailuresError error = (MultipleFailuresError)
+                sink.createFailure();
+        assertEquals(3l, error.getFailureCount());
+        assertEquals(2, error.getGroupCount());
+        assertEquals(2l, error.getGroupFailureCount(0));
+        assertTrue(error.getGroupSite(0),
+                error.getGroupSite(0).indexOf("failFirst") >= 0);
+        assertTrue(error.getGroupSite(1),
+                error.getGroupSite(1).indexOf("failSecond") >= 0);
+    }
+
+
+    public void testJUnit4AssertionsGroupByCallSite() {
+        String first = FailureSink.getGroupKey(failFirstJUnit4());
+        String second = FailureSink.getGroupKey(failSecondJUnit4());
+        assertFalse(first, first.equals(second));
+        assertTrue(first, first.indexOf("failFirstJUnit4") >= 0);
+    }
+
+
+    public void testConstructorAndAssertionFramesAreSkipped() {
+        AssertionError error = new AssertionError("kept frames");
+        error.setStackTrace(new StackTraceElement[]{
+                new StackTraceElement("java.lang.AssertionError", "<init>",
+                        "AssertionError.java", 1),
+                new StackTraceElement("junit.framework.Assert", "fail",
+                        "Assert.java", 2),
+                new StackTraceElement("junit.framework.Assert",
+                        "assertTrue", "Assert.java", 3),
+                new StackTraceElement("org.example.QueueTest", "runTest",
+                        "QueueTest.java", 42),
+        });
+        assertEquals("java.lang.AssertionError at" +
+                        " org.example.QueueTest.runTest(QueueTest.java:42)",
+                FailureSink.getGroupKey(error));
+    }
+
+
+    private static Throwable failFirst() {
+        try {
+            Assert.fail("first");
+        } catch (AssertionError e) {
+            return e;
+        }
+        throw new IllegalStateException("did not fail");
+    }
+
+
+    private static Throwable failSecond() {
+        try {
+            Assert.assertEquals("second", 1, 2);
+        } catch (AssertionError e) {
+            return e;
+        }
+        throw new IllegalStateException("did not fail");
+    }
+
+
+    private static Throwable failFirstJUnit4() {
+        try {
+            org.junit.Assert.fail("first");
+        } catch (AssertionError e) {
+            return e;
+        }
+        throw new IllegalStateException("did not fail");
+    }
+
+
+    private static Throwable failSecondJUnit4() {
+        try {
+            org.junit.Assert.fail("second");
+        } catch (AssertionError e) {
+            return e;
+        }
+        throw new IllegalStateException("did not fail");
+    }
+}
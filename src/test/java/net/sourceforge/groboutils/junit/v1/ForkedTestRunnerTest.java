@@ -0,0 +1,89 @@
+/*
+ * @(#)ForkedTestRunnerTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks that results come back from a worker JVM whatever the worker
+ * writes to its standard output.
+ *
+ * @since 5.0.0
+ */
+public class ForkedTestRunnerTest extends TestCase {
+    public void testResultsSurviveJvmOutput() throws Throwable {
+        ForkedTestRunner runner = new ForkedTestRunner(new String[]{
+                "-verbose:gc"});
+        try {
+            // the second scenario reuses the worker, so its results are
+            // read after more of the JVM's output.
+            for (int i = 0; i < 2; ++i) {
+                RunReport report = runner.runScenario(new Class[]{
+                        NoisyRunner.class, NoisyRunner.class}, 30000l);
+                assertEquals(2, report.getRunnerCount());
+                assertEquals(2l, report.getOperationCount());
+            }
+        } finally {
+            runner.close();
+        }
+    }
+
+
+    public void testFailureComesBack() throws Throwable {
+        ForkedTestRunner runner = new ForkedTestRunner(new String[]{
+                "-verbose:gc"});
+        try {
+            runner.runScenario(new Class[]{FailingRunner.class}, 30000l);
+            fail("failure was not reported");
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage(),
+                    e.getMessage().indexOf("expected failure") >= 0);
+        } finally {
+            runner.close();
+        }
+    }
+
+
+    /**
+     * Collects garbage, so <tt>-verbose:gc</tt> writes to standard
+     * output, and writes there itself.
+     */
+    public static class NoisyRunner extends TestRunnable {
+        public void runTest() {
+            System.out.println("noise from a scenario");
+            System.gc();
+        }
+    }
+
+
+    public static class FailingRunner extends TestRunnable {
+        public void runTest() {
+            System.gc();
+            fail("expected failure");
+        }
+    }
+}
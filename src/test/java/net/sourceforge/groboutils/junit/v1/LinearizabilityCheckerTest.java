@@ -0,0 +1,213 @@
+/*
+ * @(#)LinearizabilityCheckerTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks hand-made histories of a single register with known answers.
+ * The recorders are driven from the test's own thread, in the order in
+ * which the calls should appear to have happened.
+ *
+ * @since 5.0.0
+ */
+public class LinearizabilityCheckerTest extends TestCase {
+    private static final int WRITE = 0;
+    private static final int READ = 1;
+
+    private OperationHistory history;
+    private HistoryRecorder first;
+    private HistoryRecorder second;
+
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.history = new OperationHistory(2, 16);
+        this.history.setOperationNames(new String[]{"write", "read"});
+        this.first = this.history.getRecorder(0);
+        this.second = this.history.getRecorder(1);
+    }
+
+
+    public void testSequentialHistoryIsLinearizable() {
+        write(this.first, 1);
+        read(this.second, 1);
+        write(this.second, 2);
+        read(this.first, 2);
+
+        LinearizabilityResult result = check();
+        assertTrue(result.toString(), result.isLinearizable());
+        assertEquals(4, result.getOperationCount());
+    }
+
+
+    public void testOverlappingReadMaySeeEitherValue() {
+        write(this.first, 1);
+        int w = this.first.invoke(WRITE, Integer.valueOf(2));
+        read(this.second, 1);
+        read(this.second, 2);
+        this.first.complete(w, null);
+
+        assertTrue(check().isLinearizable());
+    }
+
+
+    public void testLaterSegmentMaySeeEitherOverlappingWrite() {
+        // the first order tried leaves 2, which the next read rules out.
+        int w1 = this.first.invoke(WRITE, Integer.valueOf(1));
+        int w2 = this.second.invoke(WRITE, Integer.valueOf(2));
+        this.first.complete(w1, null);
+        this.second.complete(w2, null);
+        read(this.first, 1);
+
+        assertTrue(check().isLinearizable());
+    }
+
+
+    public void testStaleReadIsNotLinearizable() {
+        write(this.first, 1);
+        write(this.first, 2);
+        read(this.second, 1);
+
+        LinearizabilityResult result = check();
+        assertFalse(result.isLinearizable());
+        assertFalse(result.isTimedOut());
+        assertTrue(result.getViolationSize() > 0);
+        assertTrue(result.getViolation(),
+                result.getViolation().indexOf("read") >= 0);
+    }
+
+
+    public void testPendingWriteMayHaveTakenEffect() {
+        // the write threw, or the run ended, after it changed the value.
+        this.first.invoke(WRITE, Integer.valueOf(1));
+        read(this.second, 1);
+
+        assertTrue(check().isLinearizable());
+    }
+
+
+    public void testPendingWriteMayNotHaveTakenEffect() {
+        this.first.invoke(WRITE, Integer.valueOf(1));
+        read(this.second, 0);
+        read(this.second, 1);
+
+        assertTrue(check().isLinearizable());
+    }
+
+
+    public void testPendingWriteCannotTakeEffectBeforeItsInvocation() {
+        read(this.second, 1);
+        this.first.invoke(WRITE, Integer.valueOf(1));
+
+        assertFalse(check().isLinearizable());
+    }
+
+
+    public void testImpossibleReadInLargeHistoryFailsInItsSegment() {
+        // groups of four overlapping operations, with a quiescent point
+        // between each group, and one read of a value never written.
+        int perThread = 50000;
+        OperationHistory large = new OperationHistory(4, perThread);
+        int slots[] = new int[4];
+        Integer results[] = new Integer[4];
+        int value = 0;
+        for (int i = 0; i < perThread; ++i) {
+            for (int t = 0; t < 4; ++t) {
+                HistoryRecorder recorder = large.getRecorder(t);
+                if ((i + t) % 4 == 0) {
+                    value = (i + t) % 5;
+                    slots[t] = recorder.invoke(WRITE, Integer.valueOf(value));
+                    results[t] = null;
+                } else {
+                    slots[t] = recorder.invoke(READ, null);
+                    results[t] = Integer.valueOf(
+                            i == perThread / 2 && t == 1 ? 99 : value);
+                }
+            }
+            for (int t = 0; t < 4; ++t) {
+                large.getRecorder(t).complete(slots[t], results[t]);
+            }
+        }
+        LinearizabilityChecker checker =
+                new LinearizabilityChecker(new RegisterModel());
+        checker.setMaxTime(5000l);
+
+        LinearizabilityResult result = checker.check(large);
+        assertFalse(result.toString(), result.isTimedOut());
+        assertFalse(result.isLinearizable());
+        assertEquals(4 * perThread, result.getOperationCount());
+        assertEquals(4, result.getViolationSize());
+        assertTrue(result.getViolation(),
+                result.getViolation().indexOf("-> 99") >= 0);
+    }
+
+
+    private LinearizabilityResult check() {
+        return new LinearizabilityChecker(new RegisterModel()).check(
+                this.history);
+    }
+
+
+    private static void write(HistoryRecorder recorder, int value) {
+        recorder.complete(recorder.invoke(WRITE, Integer.valueOf(value)),
+                null);
+    }
+
+
+    private static void read(HistoryRecorder recorder, int value) {
+        recorder.complete(recorder.invoke(READ, null),
+                Integer.valueOf(value));
+    }
+
+
+    /**
+     * A register which starts at 0.
+     */
+    private static class RegisterModel implements SequentialModel {
+        public Object initialState() {
+            return Integer.valueOf(0);
+        }
+
+
+        public Object step(Object state, int operation, Object argument,
+                           Object result) {
+            if (operation == WRITE) {
+                return argument;
+            }
+            if (result == UNKNOWN_RESULT || state.equals(result)) {
+                return state;
+            }
+            return null;
+        }
+
+
+        public Object partition(int operation, Object argument) {
+            return null;
+        }
+    }
+}
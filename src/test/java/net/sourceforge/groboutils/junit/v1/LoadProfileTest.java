@@ -0,0 +1,143 @@
+/*
+ * @(#)LoadProfileTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks the number of active runners along each kind of phase.
+ *
+ * @since 5.0.0
+ */
+public class LoadProfileTest extends TestCase {
+    private static final long MS = 1000000l;
+
+
+    public void testEmptyProfileKeepsInitialRunners() {
+        LoadProfile profile = new LoadProfile(3);
+        assertEquals(0l, profile.getDuration());
+        assertEquals(3, profile.getActiveRunners(0l));
+        assertEquals(3, profile.getActiveRunners(1000l * MS));
+    }
+
+
+    public void testRampUp() {
+        LoadProfile profile = new LoadProfile();
+        profile.rampTo(4, 10000l);
+        assertEquals(10000l, profile.getDuration());
+        assertEquals(0, profile.getActiveRunners(0l));
+        assertEquals(1, profile.getActiveRunners(2500l * MS));
+        assertEquals(2, profile.getActiveRunners(5000l * MS));
+        assertEquals(3, profile.getActiveRunners(8000l * MS));
+        assertEquals(4, profile.getActiveRunners(10000l * MS));
+        assertEquals(4, profile.getActiveRunners(60000l * MS));
+    }
+
+
+    public void testRampDownToNoRunners() {
+        LoadProfile profile = new LoadProfile(4);
+        profile.rampTo(0, 4000l);
+        assertEquals(4, profile.getActiveRunners(0l));
+        assertEquals(3, profile.getActiveRunners(1000l * MS));
+        assertEquals(1, profile.getActiveRunners(3000l * MS));
+        assertEquals(0, profile.getActiveRunners(4000l * MS));
+        assertEquals(0, profile.getActiveRunners(60000l * MS));
+    }
+
+
+    public void testStepsStartRightAway() {
+        LoadProfile profile = new LoadProfile();
+        profile.stepTo(16, 4, 5000l);
+        assertEquals(20000l, profile.getDuration());
+        assertEquals(4, profile.getActiveRunners(0l));
+        assertEquals(4, profile.getActiveRunners(5000l * MS - 1l));
+        assertEquals(8, profile.getActiveRunners(5000l * MS));
+        assertEquals(16, profile.getActiveRunners(15000l * MS));
+        assertEquals(16, profile.getActiveRunners(20000l * MS));
+    }
+
+
+    public void testLastStepDoesNotOvershoot() {
+        LoadProfile profile = new LoadProfile();
+        profile.stepTo(10, 4, 1000l);
+        assertEquals(3000l, profile.getDuration());
+        assertEquals(4, profile.getActiveRunners(0l));
+        assertEquals(8, profile.getActiveRunners(1000l * MS));
+        assertEquals(10, profile.getActiveRunners(2000l * MS));
+        assertEquals(10, profile.getActiveRunners(3000l * MS));
+    }
+
+
+    public void testStepDown() {
+        LoadProfile profile = new LoadProfile(10);
+        profile.stepTo(0, 4, 1000l);
+        assertEquals(6, profile.getActiveRunners(0l));
+        assertEquals(2, profile.getActiveRunners(1000l * MS));
+        assertEquals(0, profile.getActiveRunners(2000l * MS));
+    }
+
+
+    public void testPhasesFollowEachOther() {
+        LoadProfile profile = new LoadProfile();
+        profile.rampTo(4, 4000l);
+        profile.hold(2000l);
+        profile.stepTo(8, 2, 1000l);
+        profile.rampTo(0, 8000l);
+        assertEquals(16000l, profile.getDuration());
+        assertEquals(4, profile.getActiveRunners(4000l * MS));
+        assertEquals(4, profile.getActiveRunners(6000l * MS - 1l));
+        assertEquals(6, profile.getActiveRunners(6000l * MS));
+        assertEquals(8, profile.getActiveRunners(7000l * MS));
+        assertEquals(8, profile.getActiveRunners(8000l * MS));
+        assertEquals(4, profile.getActiveRunners(12000l * MS));
+        assertEquals(0, profile.getActiveRunners(16000l * MS));
+    }
+
+
+    public void testInvalidPhases() {
+        LoadProfile profile = new LoadProfile();
+        try {
+            profile.rampTo(-1, 1000l);
+            fail("negative runner count accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            profile.hold(0l);
+            fail("zero time accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            profile.stepTo(4, 0, 1000l);
+            fail("zero step size accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0l, profile.getDuration());
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * @(#)RoundBarrierTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Checks that a run in rounds stops at the first failed round, reports
+ * that round's index and seed, and replays from them.
+ *
+ * @since 5.0.0
+ */
+public class RoundBarrierTest extends TestCase {
+    private static final long SEED = 12345l;
+
+
+    public void testStopsAtTheFailedRound() throws Throwable {
+        RecordingReset reset = new RecordingReset();
+        RoundRunner runners[] = {
+                new RoundRunner(3l, 0l), new RoundRunner(-1l, 0l)};
+        MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(runners);
+        mttr.setRounds(10l, reset);
+        mttr.setRoundSeed(SEED);
+        try {
+            mttr.runTestRunnables(30000l);
+            fail("failed round was not reported");
+        } catch (RoundFailedError e) {
+            assertEquals(3l, e.getRound());
+            assertEquals(10l, e.getRoundCount());
+            assertEquals(reset.getSeed(3), e.getSeed());
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        // no round was reset or run past the failed one.
+        assertEquals(4, reset.rounds.size());
+        assertEquals(4, runners[0].seeds.size());
+        assertTrue(runners[1].seeds.size() <= 4);
+    }
+
+
+    public void testRunnersSeeTheResetRoundAndSeed() throws Throwable {
+        RecordingReset reset = new RecordingReset();
+        RoundRunner runners[] = {
+                new RoundRunner(-1l, 0l), new RoundRunner(-1l, 0l)};
+        RunReport report = runRounds(runners, reset, 5l, SEED, -1l);
+        assertEquals(5l, report.getRoundCount());
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(new Long(i), reset.rounds.get(i));
+            for (int j = 0; j < runners.length; ++j) {
+                assertEquals(new Long(i), runners[j].rounds.get(i));
+                assertEquals(reset.seeds.get(i), runners[j].seeds.get(i));
+            }
+        }
+        assertEquals(SEED, reset.getSeed(0));
+    }
+
+
+    public void testFailedRoundReplaysFromItsSeedAndIndex()
+            throws Throwable {
+        // find the seeds of a passing run, and fail a run on one of them.
+        RecordingReset passing = new RecordingReset();
+        runRounds(new RoundRunner[]{new RoundRunner(-1l, 0l)}, passing,
+                10l, SEED, -1l);
+        long badSeed = passing.getSeed(6);
+
+        RoundFailedError failure = null;
+        try {
+            runRounds(new RoundRunner[]{new RoundRunner(-1l, badSeed)},
+                    new RecordingReset(), 10l, SEED, -1l);
+            fail("failed round was not reported");
+        } catch (RoundFailedError e) {
+            failure = e;
+        }
+        assertEquals(6l, failure.getRound());
+        assertEquals(badSeed, failure.getSeed());
+
+        // the replay fails in its first round, with the same index.
+        RecordingReset replayed = new RecordingReset();
+        RoundRunner replay = new RoundRunner(-1l, badSeed);
+        try {
+            runRounds(new RoundRunner[]{replay}, replayed, 10l,
+                    failure.getSeed(), failure.getRound());
+            fail("replayed round did not fail");
+        } catch (RoundFailedError e) {
+            assertEquals(6l, e.getRound());
+            assertEquals(badSeed, e.getSeed());
+        }
+        assertEquals(1, replayed.rounds.size());
+        assertEquals(new Long(6l), replayed.rounds.get(0));
+        assertEquals(new Long(6l), replay.rounds.get(0));
+    }
+
+
+    public void testReplayContinuesTheSeedSequence() throws Throwable {
+        RecordingReset passing = new RecordingReset();
+        runRounds(new RoundRunner[]{new RoundRunner(-1l, 0l)}, passing,
+                10l, SEED, -1l);
+
+        RecordingReset replayed = new RecordingReset();
+        RunReport report = runRounds(new RoundRunner[]{
+                new RoundRunner(-1l, 0l)}, replayed, 6l,
+                passing.getSeed(4), 4l);
+        assertEquals(6l, report.getRoundCount());
+        for (int i = 0; i < 6; ++i) {
+            assertEquals(passing.rounds.get(i + 4), replayed.rounds.get(i));
+            assertEquals(passing.seeds.get(i + 4), replayed.seeds.get(i));
+        }
+    }
+
+
+    /**
+     * @param firstRound the index to replay from, or -1 to only set the
+     *                   seed.
+     */
+    private static RunReport runRounds(RoundRunner runners[],
+                                       RoundReset reset, long rounds,
+                                       long seed, long firstRound)
+            throws Throwable {
+        MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(runners);
+        mttr.setRounds(rounds, reset);
+        if (firstRound < 0l) {
+            mttr.setRoundSeed(seed);
+        } else {
+            mttr.setRoundSeed(seed, firstRound);
+        }
+        return mttr.runTestRunnables(30000l);
+    }
+
+
+    /**
+     * Records each round's index and seed, as the runners will see them.
+     */
+    private static class RecordingReset implements RoundReset {
+        final List rounds = new ArrayList();
+        final List seeds = new ArrayList();
+
+        public void resetRound(long round, long seed) {
+            this.rounds.add(new Long(round));
+            this.seeds.add(new Long(seed));
+        }
+
+        long getSeed(int index) {
+            return ((Long) this.seeds.get(index)).longValue();
+        }
+    }
+
+
+    /**
+     * Records the round and seed it sees, and fails in a given round or
+     * on a given seed.
+     */
+    private static class RoundRunner extends TestRunnable {
+        final List rounds = new ArrayList();
+        final List seeds = new ArrayList();
+        private final long failRound;
+        private final long failSeed;
+
+        RoundRunner(long failRound, long failSeed) {
+            this.failRound = failRound;
+            this.failSeed = failSeed;
+        }
+
+        public void runTest() {
+            this.rounds.add(new Long(getRound()));
+            this.seeds.add(new Long(getRoundSeed()));
+            if (getRound() == this.failRound ||
+                    (this.failSeed != 0l && getRoundSeed() == this.failSeed)) {
+                fail("failed in round " + getRound());
+            }
+        }
+    }
+}
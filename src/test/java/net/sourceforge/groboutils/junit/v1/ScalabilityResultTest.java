@@ -0,0 +1,137 @@
+/*
+ * @(#)ScalabilityResultTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Fits the Universal Scalability Law to made-up throughput, so that the
+ * coefficients are known.
+ *
+ * @since 5.0.0
+ */
+public class ScalabilityResultTest extends TestCase {
+    private static final double EPSILON = 1e-9;
+
+
+    public void testExactCurveIsRecovered() {
+        ScalabilityResult result = fit(new int[]{1, 2, 4, 8, 16},
+                1000.0, 0.05, 0.001);
+        assertEquals(1000.0, result.getLambda(), EPSILON);
+        assertEquals(0.05, result.getSigma(), EPSILON);
+        assertEquals(0.001, result.getKappa(), EPSILON);
+        assertEquals(Math.sqrt(0.95 / 0.001),
+                result.getPeakRunnerCount(), EPSILON);
+        assertEquals(result.getThroughput(3),
+                result.getPredictedThroughput(8), 1e-6);
+    }
+
+
+    public void testContentionOnlyNeverPeaks() {
+        // a maximum which isn't a power of two, as the sweep measures it.
+        ScalabilityResult result = fit(ScalabilitySweep.getLevels(6),
+                500.0, 0.2, 0.0);
+        assertEquals(0.2, result.getSigma(), EPSILON);
+        assertEquals(0.0, result.getKappa(), EPSILON);
+        assertEquals(Double.POSITIVE_INFINITY,
+                result.getPeakRunnerCount(), 0.0);
+    }
+
+
+    public void testSingleLevelFitsNothing() {
+        ScalabilityResult result = fit(new int[]{1}, 250.0, 0.0, 0.0);
+        assertEquals(250.0, result.getLambda(), EPSILON);
+        assertEquals(0.0, result.getSigma(), 0.0);
+        assertEquals(0.0, result.getKappa(), 0.0);
+        assertEquals(1.0, result.getEfficiency(0), EPSILON);
+        result.assertMinEfficiency(1.0 - EPSILON);
+    }
+
+
+    public void testSuperlinearScalingClampsBothCoefficients() {
+        ScalabilityResult result = new ScalabilityResult(
+                new int[]{1, 2, 4}, new RunReport[3],
+                new double[]{100.0, 250.0, 600.0});
+        assertEquals(0.0, result.getSigma(), 0.0);
+        assertEquals(0.0, result.getKappa(), 0.0);
+        assertTrue(result.getEfficiency(2) > 1.0);
+    }
+
+
+    public void testNegativeSigmaIsRefittedWithKappaOnly() {
+        ScalabilityResult result = fit(new int[]{1, 2, 4, 8},
+                1000.0, -0.02, 0.02);
+        assertEquals(0.0, result.getSigma(), 0.0);
+        assertTrue(String.valueOf(result.getKappa()),
+                result.getKappa() > 0.0);
+    }
+
+
+    public void testNegativeKappaIsRefittedWithSigmaOnly() {
+        ScalabilityResult result = fit(new int[]{1, 2, 4, 8},
+                1000.0, 0.3, -0.005);
+        assertEquals(0.0, result.getKappa(), 0.0);
+        assertTrue(String.valueOf(result.getSigma()),
+                result.getSigma() > 0.0);
+    }
+
+
+    public void testLevelWithoutThroughputIsLeftOutOfTheFit() {
+        int counts[] = {1, 2, 4, 8};
+        double throughput[] = curve(counts, 1000.0, 0.05, 0.001);
+        throughput[2] = 0.0;
+        ScalabilityResult result = new ScalabilityResult(counts,
+                new RunReport[counts.length], throughput);
+        assertEquals(0.05, result.getSigma(), EPSILON);
+        assertEquals(0.001, result.getKappa(), EPSILON);
+        try {
+            result.assertMinEfficiency(0.5);
+            fail("level without throughput passed");
+        } catch (AssertionError e) {
+            // expected
+        }
+    }
+
+
+    private static ScalabilityResult fit(int counts[], double lambda,
+                                         double sigma, double kappa) {
+        return new ScalabilityResult(counts, new RunReport[counts.length],
+                curve(counts, lambda, sigma, kappa));
+    }
+
+
+    private static double[] curve(int counts[], double lambda,
+                                  double sigma, double kappa) {
+        double ret[] = new double[counts.length];
+        for (int i = 0; i < counts.length; ++i) {
+            double n = counts[i];
+            ret[i] = lambda * n /
+                    (1.0 + sigma * (n - 1.0) + kappa * n * (n - 1.0));
+        }
+        return ret;
+    }
+}
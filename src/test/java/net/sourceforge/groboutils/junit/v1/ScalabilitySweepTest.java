@@ -0,0 +1,61 @@
+/*
+ * @(#)ScalabilitySweepTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks the runner counts a sweep measures.
+ *
+ * @since 5.0.0
+ */
+public class ScalabilitySweepTest extends TestCase {
+    public void testSingleRunner() {
+        assertLevels(new int[]{1}, 1);
+    }
+
+
+    public void testPowerOfTwoMaximum() {
+        assertLevels(new int[]{1, 2}, 2);
+        assertLevels(new int[]{1, 2, 4, 8}, 8);
+    }
+
+
+    public void testOtherMaximumComesAfterLargestPowerOfTwo() {
+        assertLevels(new int[]{1, 2, 3}, 3);
+        assertLevels(new int[]{1, 2, 4, 6}, 6);
+        assertLevels(new int[]{1, 2, 4, 8, 9}, 9);
+    }
+
+
+    private static void assertLevels(int expected[], int max) {
+        int actual[] = ScalabilitySweep.getLevels(max);
+        assertTrue(Arrays.toString(actual), Arrays.equals(expected, actual));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * @(#)SplitMix64Test.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks the generator against <tt>java.util.SplittableRandom</tt>, and
+ * the bounds of its derived values.
+ *
+ * @since 5.0.0
+ */
+public class SplitMix64Test extends TestCase {
+    public void testSameSequenceAsSplittableRandom() {
+        // new SplittableRandom( seed ).nextLong(), three times.
+        assertSequence(0l, new long[]{0xE220A8397B1DCDAFL,
+                0x6E789E6AA1B965F4L, 0x06C45D188009454FL});
+        assertSequence(42l, new long[]{0xBDD732262FEB6E95L,
+                0x28EFE333B266F103L, 0x47526757130F9F52L});
+    }
+
+
+    public void testSetSeedRestartsTheSequence() {
+        SplitMix64 random = new SplitMix64(7l);
+        long first = random.nextLong();
+        random.nextLong();
+        random.setSeed(7l);
+        assertEquals(first, random.nextLong());
+    }
+
+
+    public void testBoundOfOneIsAlwaysZero() {
+        SplitMix64 random = new SplitMix64(1l);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(0, random.nextInt(1));
+        }
+    }
+
+
+    public void testNonPositiveBoundIsRejected() {
+        SplitMix64 random = new SplitMix64(1l);
+        try {
+            random.nextInt(0);
+            fail("zero bound accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            random.nextInt(-5);
+            fail("negative bound accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+
+    public void testIntsStayWithinTheBoundAndCoverIt() {
+        SplitMix64 random = new SplitMix64(3l);
+        int counts[] = new int[3];
+        for (int i = 0; i < 30000; ++i) {
+            ++counts[random.nextInt(3)];
+        }
+        for (int i = 0; i < counts.length; ++i) {
+            assertTrue(String.valueOf(counts[i]),
+                    counts[i] > 9000 && counts[i] < 11000);
+        }
+        for (int i = 0; i < 1000; ++i) {
+            int value = random.nextInt(Integer.MAX_VALUE);
+            assertTrue(String.valueOf(value), value >= 0);
+        }
+    }
+
+
+    public void testDoublesStayWithinTheUnitRange() {
+        SplitMix64 random = new SplitMix64(5l);
+        for (int i = 0; i < 1000; ++i) {
+            double value = random.nextDouble();
+            assertTrue(String.valueOf(value), value >= 0.0 && value < 1.0);
+        }
+    }
+
+
+    private static void assertSequence(long seed, long expected[]) {
+        SplitMix64 random = new SplitMix64(seed);
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(Long.toHexString(expected[i]), expected[i],
+                    random.nextLong());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * @(#)StartGateTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Checks that a simultaneous start holds every runner and monitor until
+ * the last one arrives, and that a gate which never fills, or whose
+ * waiters are interrupted, does not hang the run.
+ *
+ * @since 5.0.0
+ */
+public class StartGateTest extends TestCase {
+    public void testGateOpensOnlyOnceAllArrived() throws Exception {
+        final StartGate gate = new StartGate(2);
+        assertFalse(gate.awaitReady(1000000l));
+        Thread waiter = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    gate.arriveAndAwait();
+                } catch (InterruptedException e) {
+                    // ends the thread
+                }
+            }
+        });
+        waiter.setDaemon(true);
+        waiter.start();
+        assertFalse(gate.awaitReady(50000000l));
+        Thread.sleep(50l);
+        assertTrue("released before the gate opened", waiter.isAlive());
+
+        gate.open();
+        waiter.join(10000l);
+        assertFalse("not released by the open gate", waiter.isAlive());
+    }
+
+
+    public void testInterruptedWaiterLeavesTheGate() throws Exception {
+        final StartGate gate = new StartGate(2);
+        final boolean interrupted[] = {false};
+        Thread waiter = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    gate.arriveAndAwait();
+                } catch (InterruptedException e) {
+                    interrupted[0] = true;
+                }
+            }
+        });
+        waiter.setDaemon(true);
+        waiter.start();
+        Thread.sleep(50l);
+        waiter.interrupt();
+        waiter.join(10000l);
+        assertFalse(waiter.isAlive());
+        assertTrue(interrupted[0]);
+    }
+
+
+    public void testEveryThreadWaitsForTheLastArrival() throws Throwable {
+        StampRunner runners[] = {
+                new StampRunner(), new StampRunner(), new StampRunner()};
+        StampRunner monitors[] = {new StampRunner()};
+        // the last thread created, a runner, arrives late.
+        LateFactory factory = new LateFactory(4, 300l);
+        MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(
+                runners, monitors);
+        mttr.setThreadFactory(factory);
+        mttr.setSimultaneousStart(true);
+        mttr.runTestRunnables(30000l);
+
+        assertTrue(factory.lateArrivalNanos != 0l);
+        for (int i = 0; i < runners.length; ++i) {
+            assertStartedAfter(factory.lateArrivalNanos, runners[i]);
+        }
+        assertStartedAfter(factory.lateArrivalNanos, monitors[0]);
+    }
+
+
+    public void testIncompleteGateTimesOutTheRun() throws Throwable {
+        StampRunner runners[] = {new StampRunner(), new StampRunner()};
+        MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(runners);
+        mttr.setThreadFactory(new LateFactory(2, 1500l));
+        mttr.setSimultaneousStart(true);
+        long start = System.currentTimeMillis();
+        try {
+            mttr.runTestRunnables(300l);
+            fail("the late runner did not time out the run");
+        } catch (AssertionError e) {
+            assertTrue(e.getMessage(),
+                    e.getMessage().indexOf("did not finish") >= 0);
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000l);
+    }
+
+
+    public void testInterruptedRunnerDoesNotHoldUpTheRun() throws Throwable {
+        StampRunner runners[] = {
+                new StampRunner(), new StampRunner(), new StampRunner()};
+        LateFactory factory = new LateFactory(3, 500l);
+        MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(runners);
+        mttr.setThreadFactory(factory);
+        mttr.setSimultaneousStart(true);
+        Interrupter interrupter = new Interrupter(factory, 0, 100l);
+        interrupter.start();
+        mttr.runTestRunnables(30000l);
+        interrupter.join();
+
+        // the interrupted runner left the gate without running its test.
+        assertEquals(0l, runners[0].startNanos);
+        assertTrue(runners[1].startNanos != 0l);
+        assertTrue(runners[2].startNanos != 0l);
+    }
+
+
+    private static void assertStartedAfter(long nanos, StampRunner r) {
+        assertTrue("started " + (nanos - r.startNanos) +
+                "ns before the last arrival", r.startNanos - nanos >= 0l);
+    }
+
+
+    /**
+     * Records when its test started.
+     */
+    private static class StampRunner extends TestRunnable {
+        volatile long startNanos = 0l;
+
+        public void runTest() {
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+
+    /**
+     * Creates daemon threads, the last of which sleeps before running
+     * its runnable.
+     */
+    private static class LateFactory implements ThreadFactory {
+        final Thread threads[];
+        private final long delayMillis;
+        private int created = 0;
+        volatile long lateArrivalNanos = 0l;
+
+        LateFactory(int count, long delayMillis) {
+            this.threads = new Thread[count];
+            this.delayMillis = delayMillis;
+        }
+
+        public synchronized Thread newThread(final Runnable r) {
+            Thread t;
+            if (this.created == this.threads.length - 1) {
+                t = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            Thread.sleep(LateFactory.this.delayMillis);
+                        } catch (InterruptedException e) {
+                            // run it anyway
+                        }
+                        LateFactory.this.lateArrivalNanos =
+                                System.nanoTime();
+                        r.run();
+                    }
+                });
+            } else {
+                t = new Thread(r);
+            }
+            t.setDaemon(true);
+            this.threads[this.created++] = t;
+            return t;
+        }
+
+        synchronized Thread getThread(int index) {
+            return this.threads[index];
+        }
+    }
+
+
+    /**
+     * Interrupts one of a factory's threads after a delay, while it
+     * waits at the gate.
+     */
+    private static class Interrupter extends Thread {
+        private final LateFactory factory;
+        private final int index;
+        private final long delayMillis;
+
+        Interrupter(LateFactory factory, int index, long delayMillis) {
+            this.factory = factory;
+            this.index = index;
+            this.delayMillis = delayMillis;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                Thread.sleep(this.delayMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            this.factory.getThread(this.index).interrupt();
+        }
+    }
+}
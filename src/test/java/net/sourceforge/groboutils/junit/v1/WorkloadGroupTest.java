@@ -0,0 +1,116 @@
+/*
+ * @(#)WorkloadGroupTest.java
+ *
+ * Part of the GroboUtils package at:
+ * http://groboutils.sourceforge.net
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL
+ *  THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ */
+
+package net.sourceforge.groboutils.junit.v1;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks that operations are picked in proportion to their weights, up
+ * to the edges between them.
+ *
+ * @since 5.0.0
+ */
+public class WorkloadGroupTest extends TestCase {
+    private static final WorkloadOperation NOTHING = new WorkloadOperation() {
+        public void execute(SplitMix64 random) {
+            // nothing to do
+        }
+    };
+
+
+    public void testEveryPickMapsToItsWeightRange() {
+        // weights 1, 2 and 3 split the picks 0 to 5 as 0 | 1 2 | 3 4 5.
+        WorkloadGroup group = createGroup(new int[]{1, 2, 3});
+        int expected[] = {0, 1, 1, 2, 2, 2};
+        boolean seen[] = new boolean[expected.length];
+        for (long seed = 0l; seed < 1000l; ++seed) {
+            int pick = new SplitMix64(seed).nextInt(6);
+            seen[pick] = true;
+            assertEquals("pick " + pick, expected[pick],
+                    group.chooseOperation(new SplitMix64(seed)));
+        }
+        for (int i = 0; i < seen.length; ++i) {
+            assertTrue("pick " + i + " never made", seen[i]);
+        }
+    }
+
+
+    public void testSingleOperationIsAlwaysPicked() {
+        WorkloadGroup group = createGroup(new int[]{5});
+        SplitMix64 random = new SplitMix64(9l);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(0, group.chooseOperation(random));
+        }
+    }
+
+
+    public void testPicksFollowTheWeights() {
+        WorkloadGroup group = createGroup(new int[]{90, 10});
+        SplitMix64 random = new SplitMix64(11l);
+        int counts[] = new int[2];
+        for (int i = 0; i < 10000; ++i) {
+            ++counts[group.chooseOperation(random)];
+        }
+        assertTrue(String.valueOf(counts[1]),
+                counts[1] > 800 && counts[1] < 1200);
+    }
+
+
+    public void testInvalidMixes() {
+        WorkloadGroup group = new WorkloadGroup("g", 1);
+        try {
+            group.addOperation("op", 0, NOTHING);
+            fail("zero weight accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            group.freeze();
+            fail("group without operations frozen");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        group.addOperation("a", Integer.MAX_VALUE, NOTHING);
+        group.addOperation("b", 1, NOTHING);
+        try {
+            group.freeze();
+            fail("overflowing weights accepted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+
+    private static WorkloadGroup createGroup(int weights[]) {
+        WorkloadGroup group = new WorkloadGroup("g", 1);
+        for (int i = 0; i < weights.length; ++i) {
+            group.addOperation("op" + i, weights[i], NOTHING);
+        }
+        group.freeze();
+        return group;
+    }
+}